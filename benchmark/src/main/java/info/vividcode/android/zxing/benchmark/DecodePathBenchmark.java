@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import info.vividcode.android.zxing.decode.AdaptiveMultiFormatReader;
+import info.vividcode.android.zxing.decode.ByteBufferLuminanceSource;
+import info.vividcode.android.zxing.decode.FormatHitRates;
+import info.vividcode.android.zxing.decode.ReusableHybridBinarizer;
+import info.vividcode.android.zxing.decode.ReusableYUVLuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages of decoding a preview frame as {@code DecodeEngine} does: re-pointing the luminance
+ * source of the framing rect at the frame, binarizing it, and reading it. The whole path with
+ * ZXing's own classes, which allocate for every frame, is the baseline. Reading the luminance of
+ * the framing rect is measured both from an array and from a padded direct buffer, as an
+ * {@code ImageReader} gives.
+ *
+ * @author NOBUOKA Yu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class DecodePathBenchmark {
+
+  /** Preview sizes which CameraConfigurationManager chooses on common devices. */
+  @Param({ "640x480", "1280x720", "1920x1080" })
+  public String previewSize;
+
+  @Param({ "QR_CODE", "CODE_128" })
+  public String format;
+
+  /** 90 for a portrait display, which reads the frame through a rotated view. */
+  @Param({ "0", "90" })
+  public int rotation;
+
+  private byte[] frame;
+  private int frameWidth;
+  private int frameHeight;
+  private int[] framingRect;
+  private Map<DecodeHintType,Object> hints;
+  private ReusableYUVLuminanceSource source;
+  private ByteBuffer plane;
+  private int planeRowStride;
+  private ByteBufferLuminanceSource planeSource;
+  private ReusableHybridBinarizer binarizer;
+  private AdaptiveMultiFormatReader adaptiveReader;
+  private MultiFormatReader reader;
+
+  @Setup
+  public void setUp() throws Exception {
+    String[] size = previewSize.split("x");
+    frameWidth = Integer.parseInt(size[0]);
+    frameHeight = Integer.parseInt(size[1]);
+    BarcodeFormat barcodeFormat = BarcodeFormat.valueOf(format);
+    // A 1D code of the URL would be wider than the framing rect of a portrait display.
+    String contents = barcodeFormat == BarcodeFormat.QR_CODE ?
+        "https://example.com/parcel/0123456789" : "PARCEL-0123456789";
+    frame = SyntheticFrames.create(barcodeFormat, contents, frameWidth, frameHeight, rotation, 42L);
+    framingRect = SyntheticFrames.framingRect(frameWidth, frameHeight);
+
+    hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singleton(barcodeFormat));
+    source = new ReusableYUVLuminanceSource(framingRect[2], framingRect[3], rotation);
+    binarizer = new ReusableHybridBinarizer(source);
+    // Rows padded to a multiple of 64 bytes, as camera HALs commonly align them.
+    planeRowStride = (frameWidth + 63) / 64 * 64 + 64;
+    plane = ByteBuffer.allocateDirect(planeRowStride * frameHeight);
+    for (int y = 0; y < frameHeight; y++) {
+      plane.position(y * planeRowStride);
+      plane.put(frame, y * frameWidth, frameWidth);
+    }
+    planeSource = new ByteBufferLuminanceSource(framingRect[2], framingRect[3]);
+    adaptiveReader = new AdaptiveMultiFormatReader(hints, new FormatHitRates(),
+        AdaptiveMultiFormatReader.DEFAULT_DEMOTED_READER_INTERVAL);
+    reader = new MultiFormatReader();
+    reader.setHints(hints);
+
+    // Fail early rather than measure a path which finds nothing.
+    if (decode() == null) {
+      throw new IllegalStateException("The synthetic frame doesn't decode: " + previewSize +
+          " " + format + " " + rotation);
+    }
+  }
+
+  /** As {@code DecodeEngine} re-points its source at each frame. */
+  @Benchmark
+  public ReusableYUVLuminanceSource buildLuminanceSource() {
+    return source.reset(frame, frameWidth, frameHeight, framingRect[0], framingRect[1]);
+  }
+
+  /** The luminance of the framing rect read from the array. */
+  @Benchmark
+  public byte[] readMatrix() {
+    return buildLuminanceSource().getMatrix();
+  }
+
+  /**
+   * The luminance of the framing rect read from the direct buffer with bulk gets, unrotated, as
+   * {@code DecodeEngine} reads it once per frame.
+   */
+  @Benchmark
+  public byte[] readMatrixFromPlane() {
+    return planeSource.reset(plane, planeRowStride, 1, frameWidth, frameHeight, framingRect[0],
+        framingRect[1]).getMatrix();
+  }
+
+  @Benchmark
+  public BitMatrix binarize() throws NotFoundException {
+    buildLuminanceSource();
+    binarizer.reset();
+    return binarizer.getBlackMatrix();
+  }
+
+  /** The reading path of {@code DecodeEngine}, without the checks which may skip a frame. */
+  @Benchmark
+  public Result decode() {
+    buildLuminanceSource();
+    binarizer.reset();
+    adaptiveReader.beginFrame();
+    try {
+      return adaptiveReader.decodeWithState(new BinaryBitmap(binarizer));
+    } catch (NotFoundException e) {
+      return null;
+    } finally {
+      adaptiveReader.reset();
+    }
+  }
+
+  /**
+   * The whole path with a new {@code PlanarYUVLuminanceSource} and {@code HybridBinarizer}. They
+   * can't read a frame rotated, so this is comparable with {@link #decode()} only at rotation 0.
+   */
+  @Benchmark
+  public Result decodeWithZXingClasses() {
+    PlanarYUVLuminanceSource planarSource = new PlanarYUVLuminanceSource(frame, frameWidth,
+        frameHeight, framingRect[0], framingRect[1], framingRect[2], framingRect[3], false);
+    try {
+      return reader.decodeWithState(new BinaryBitmap(new HybridBinarizer(planarSource)));
+    } catch (NotFoundException e) {
+      return null;
+    } finally {
+      reader.reset();
+    }
+  }
+
+}
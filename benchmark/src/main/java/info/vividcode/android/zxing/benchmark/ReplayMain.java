@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import info.vividcode.android.zxing.decode.FrameRecording;
+import info.vividcode.android.zxing.decode.FrameReplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays a recording of preview frames through the decode path, and prints the outcome of each
+ * frame and the latencies of the stages.
+ *
+ * <pre>
+ * ReplayMain [--pyramid] [--formats=QR_CODE,CODE_128,...] recording.bin
+ * </pre>
+ *
+ * @author NOBUOKA Yu
+ */
+public final class ReplayMain {
+
+  private ReplayMain() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean pyramidDecodeMode = false;
+    Set<BarcodeFormat> formats = null;
+    File file = null;
+    for (String arg : args) {
+      if (arg.equals("--pyramid")) {
+        pyramidDecodeMode = true;
+      } else if (arg.startsWith("--formats=")) {
+        formats = EnumSet.noneOf(BarcodeFormat.class);
+        for (String format : arg.substring("--formats=".length()).split(",")) {
+          formats.add(BarcodeFormat.valueOf(format.trim()));
+        }
+      } else {
+        file = new File(arg);
+      }
+    }
+    if (file == null) {
+      System.err.println("Usage: ReplayMain [--pyramid] [--formats=QR_CODE,...] recording.bin");
+      System.exit(2);
+    }
+
+    Map<DecodeHintType,Object> hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+    if (formats != null) {
+      hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+    }
+    FrameReplayer replayer = new FrameReplayer(hints, pyramidDecodeMode);
+    FrameRecording recording = new FrameRecording(file);
+    final long[] firstTimestamp = { Long.MIN_VALUE };
+    final int[] frameCount = { 0 };
+    int found;
+    try {
+      found = replayer.replay(recording, new FrameReplayer.Listener() {
+        @Override
+        public void onFrame(FrameRecording recording, Result result) {
+          frameCount[0]++;
+          if (firstTimestamp[0] == Long.MIN_VALUE) {
+            firstTimestamp[0] = recording.getTimestampNanos();
+          }
+          if (result != null) {
+            long ms = (recording.getTimestampNanos() - firstTimestamp[0]) / 1000000L;
+            System.out.println("#" + recording.getFrameIndex() + " +" + ms + "ms " +
+                result.getBarcodeFormat() + " " + result.getText());
+          }
+        }
+      });
+    } finally {
+      recording.close();
+    }
+    System.out.println("Frames: " + frameCount[0] + ", with barcode: " + found +
+        ", skipped for low quality: " + replayer.getFrameQualityGate().getSkippedFrameCount());
+    System.out.println("Latencies: " + replayer.getDecodeLatencies());
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Random;
+
+/**
+ * Builds NV21 preview frames with a barcode in the middle, lit unevenly and with sensor noise, as
+ * a camera would deliver them.
+ *
+ * @author NOBUOKA Yu
+ */
+final class SyntheticFrames {
+
+  // As CameraManager#getFramingRect.
+  private static final int MIN_FRAME_WIDTH = 240;
+  private static final int MIN_FRAME_HEIGHT = 240;
+  private static final int MAX_FRAME_WIDTH = 1200;
+  private static final int MAX_FRAME_HEIGHT = 675;
+
+  private static final int NOISE = 12;
+
+  private SyntheticFrames() {
+  }
+
+  /**
+   * @return The framing rect of a landscape screen of the size of the preview, as
+   *         {@code {left, top, width, height}}.
+   */
+  static int[] framingRect(int frameWidth, int frameHeight) {
+    int width = findDesiredDimensionInRange(frameWidth, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
+    int height = findDesiredDimensionInRange(frameHeight, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
+    return new int[] { (frameWidth - width) / 2, (frameHeight - height) / 2, width, height };
+  }
+
+  /**
+   * Encodes {@code contents} and draws it in the middle of a frame. A 2D code is as high as half
+   * of the framing rect, and a 1D code is as wide as three quarters of it.
+   *
+   * @param rotation The rotation of the display, in degrees. With 90 or 270 the code is drawn
+   *                 rotated, as the camera sees a code which is upright on a portrait display.
+   */
+  static byte[] create(BarcodeFormat format, String contents, int frameWidth, int frameHeight,
+                       int rotation, long seed) throws WriterException {
+    int[] rect = framingRect(frameWidth, frameHeight);
+    boolean transposed = rotation % 180 != 0;
+    int rectWidth = transposed ? rect[3] : rect[2];
+    int rectHeight = transposed ? rect[2] : rect[3];
+    boolean twoD = format == BarcodeFormat.QR_CODE || format == BarcodeFormat.DATA_MATRIX ||
+        format == BarcodeFormat.AZTEC || format == BarcodeFormat.PDF_417;
+    int codeWidth = twoD ? rectHeight / 2 : rectWidth * 3 / 4;
+    int codeHeight = twoD ? rectHeight / 2 : rectHeight / 3;
+    BitMatrix code = new MultiFormatWriter().encode(contents, format, codeWidth, codeHeight);
+    int drawnWidth = transposed ? code.getHeight() : code.getWidth();
+    int drawnHeight = transposed ? code.getWidth() : code.getHeight();
+
+    Random random = new Random(seed);
+    byte[] frame = new byte[frameWidth * frameHeight * 3 / 2];
+    // The chroma planes are never read, but a camera fills them.
+    random.nextBytes(frame);
+    int codeLeft = (frameWidth - drawnWidth) / 2;
+    int codeTop = (frameHeight - drawnHeight) / 2;
+    for (int y = 0; y < frameHeight; y++) {
+      for (int x = 0; x < frameWidth; x++) {
+        int light = 110 + 110 * x / frameWidth;
+        int cx = x - codeLeft;
+        int cy = y - codeTop;
+        boolean black = cx >= 0 && cy >= 0 && cx < drawnWidth && cy < drawnHeight &&
+            (transposed ? code.get(cy, drawnWidth - 1 - cx) : code.get(cx, cy));
+        int value = (black ? light / 4 : light) + random.nextInt(2 * NOISE + 1) - NOISE;
+        frame[y * frameWidth + x] = (byte) Math.max(0, Math.min(255, value));
+      }
+    }
+    return frame;
+  }
+
+  private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
+    int dim = 5 * resolution / 8; // Target 5/8 of each dimension
+    if (dim < hardMin) {
+      return hardMin;
+    }
+    if (dim > hardMax) {
+      return hardMax;
+    }
+    return dim;
+  }
+
+}
@@ -243,4 +243,138 @@ public class CaptureActivityIntentsTest extends InstrumentationTestCase {
     }
   }
 
+  public void test_getDecodeWorkerCount() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setDecodeWorkerCount(intent, 4);
+      assertEquals(4, CaptureActivityIntents.getDecodeWorkerCountOrDefaultValue(intent));
+    }
+    { // In case that count is not specified, it returns default value.
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(1, CaptureActivityIntents.getDecodeWorkerCountOrDefaultValue(intent));
+      assertEquals(1, CaptureActivityIntents.getDecodeWorkerCountOrDefaultValue(null));
+    }
+    { // Non-positive count is rejected.
+      Intent intent = new Intent("DUMMY_ACTION");
+      try {
+        CaptureActivityIntents.setDecodeWorkerCount(intent, 0);
+        fail("IllegalArgumentException is expected");
+      } catch (IllegalArgumentException expected) {
+        // ok
+      }
+    }
+  }
+
+  public void test_getFrameChangeThresholds() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setUnchangedFrameThreshold(intent, 5.0f);
+      CaptureActivityIntents.setMotionThreshold(intent, 0.0f);
+      assertEquals(5.0f, CaptureActivityIntents.getUnchangedFrameThresholdOrDefaultValue(intent));
+      assertEquals(0.0f, CaptureActivityIntents.getMotionThresholdOrDefaultValue(intent));
+    }
+    { // In case that thresholds are not specified, it returns default values.
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(2.0f, CaptureActivityIntents.getUnchangedFrameThresholdOrDefaultValue(intent));
+      assertEquals(40.0f, CaptureActivityIntents.getMotionThresholdOrDefaultValue(intent));
+      assertEquals(2.0f, CaptureActivityIntents.getUnchangedFrameThresholdOrDefaultValue(null));
+      assertEquals(40.0f, CaptureActivityIntents.getMotionThresholdOrDefaultValue(null));
+    }
+    { // Negative threshold is rejected.
+      Intent intent = new Intent("DUMMY_ACTION");
+      try {
+        CaptureActivityIntents.setMotionThreshold(intent, -1.0f);
+        fail("IllegalArgumentException is expected");
+      } catch (IllegalArgumentException expected) {
+        // ok
+      }
+    }
+  }
+
+  public void test_getPyramidDecodeMode() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setPyramidDecodeModeEnabled(intent);
+      assertEquals(true, CaptureActivityIntents.getPyramidDecodeMode(intent));
+    }
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(false, CaptureActivityIntents.getPyramidDecodeMode(intent));
+    }
+    {
+      assertEquals(false, CaptureActivityIntents.getPyramidDecodeMode(null));
+    }
+  }
+
+  public void test_getContinuousScanMode() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setContinuousScanModeEnabled(intent);
+      CaptureActivityIntents.setDuplicateSuppressionWindowInMs(intent, 500L);
+      assertEquals(true, CaptureActivityIntents.getContinuousScanMode(intent));
+      assertEquals(500L, CaptureActivityIntents.getDuplicateSuppressionWindowInMsOrDefaultValue(intent));
+    }
+    { // In case that nothing is specified, it returns default values.
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(false, CaptureActivityIntents.getContinuousScanMode(intent));
+      assertEquals(3000L, CaptureActivityIntents.getDuplicateSuppressionWindowInMsOrDefaultValue(intent));
+      assertEquals(false, CaptureActivityIntents.getContinuousScanMode(null));
+      assertEquals(3000L, CaptureActivityIntents.getDuplicateSuppressionWindowInMsOrDefaultValue(null));
+    }
+    { // Negative window is rejected.
+      Intent intent = new Intent("DUMMY_ACTION");
+      try {
+        CaptureActivityIntents.setDuplicateSuppressionWindowInMs(intent, -1L);
+        fail("IllegalArgumentException is expected");
+      } catch (IllegalArgumentException expected) {
+        // ok
+      }
+    }
+  }
+
+  public void test_getMultipleResultMode() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setMultipleResultModeEnabled(intent);
+      assertEquals(true, CaptureActivityIntents.getMultipleResultMode(intent));
+    }
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(false, CaptureActivityIntents.getMultipleResultMode(intent));
+    }
+    {
+      assertEquals(false, CaptureActivityIntents.getMultipleResultMode(null));
+    }
+  }
+
+  public void test_getScanMetricsInResult() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setScanMetricsInResultEnabled(intent);
+      assertEquals(true, CaptureActivityIntents.getScanMetricsInResult(intent));
+    }
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(false, CaptureActivityIntents.getScanMetricsInResult(intent));
+    }
+    {
+      assertEquals(false, CaptureActivityIntents.getScanMetricsInResult(null));
+    }
+  }
+
+  public void test_getCamera2() {
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      CaptureActivityIntents.setCamera2Enabled(intent);
+      assertEquals(true, CaptureActivityIntents.getCamera2(intent));
+    }
+    {
+      Intent intent = new Intent("DUMMY_ACTION");
+      assertEquals(false, CaptureActivityIntents.getCamera2(intent));
+    }
+    {
+      assertEquals(false, CaptureActivityIntents.getCamera2(null));
+    }
+  }
+
 }
@@ -0,0 +1,52 @@
+package info.vividcode.android.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import junit.framework.TestCase;
+
+public class DuplicateResultFilterTest extends TestCase {
+
+  private static Result result(String text, BarcodeFormat format) {
+    return new Result(text, null, null, format);
+  }
+
+  public void test_suppressesWithinWindow() {
+    DuplicateResultFilter filter = new DuplicateResultFilter(1000L, 8);
+    assertFalse(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 0L));
+    assertTrue(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 500L));
+    // Same contents in another format is another barcode.
+    assertFalse(filter.isDuplicate(result("A", BarcodeFormat.CODE_128), 600L));
+    // Each read restarts the window.
+    assertTrue(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 1400L));
+    assertFalse(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 2400L));
+  }
+
+  public void test_expiredEntriesAreRemoved() {
+    DuplicateResultFilter filter = new DuplicateResultFilter(1000L, 8);
+    filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 0L);
+    filter.isDuplicate(result("B", BarcodeFormat.QR_CODE), 100L);
+    filter.isDuplicate(result("C", BarcodeFormat.QR_CODE), 1050L);
+    assertEquals(2, filter.size());
+    filter.isDuplicate(result("C", BarcodeFormat.QR_CODE), 2000L);
+    assertEquals(1, filter.size());
+  }
+
+  public void test_boundedSize() {
+    DuplicateResultFilter filter = new DuplicateResultFilter(1000L, 2);
+    filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 0L);
+    filter.isDuplicate(result("B", BarcodeFormat.QR_CODE), 1L);
+    filter.isDuplicate(result("C", BarcodeFormat.QR_CODE), 2L);
+    assertEquals(2, filter.size());
+    // The least recently seen one has been evicted.
+    assertFalse(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 3L));
+    assertTrue(filter.isDuplicate(result("C", BarcodeFormat.QR_CODE), 4L));
+  }
+
+  public void test_zeroWindowDisablesSuppression() {
+    DuplicateResultFilter filter = new DuplicateResultFilter(0L, 8);
+    assertFalse(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 0L));
+    assertFalse(filter.isDuplicate(result("A", BarcodeFormat.QR_CODE), 0L));
+  }
+
+}
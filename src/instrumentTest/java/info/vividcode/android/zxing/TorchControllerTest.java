@@ -0,0 +1,141 @@
+package info.vividcode.android.zxing;
+
+import junit.framework.TestCase;
+
+public class TorchControllerTest extends TestCase {
+
+  private static final long SENSOR_INTERVAL_MS = 100L;
+
+  public void test_flickeringLightDoesNotSwitch() {
+    TorchController controller = new TorchController();
+    // Fluorescent tubes which keep failing: the sensor swings across both thresholds.
+    int switches = 0;
+    for (long t = 0L; t < 60000L; t += SENSOR_INTERVAL_MS) {
+      float lux = (t / SENSOR_INTERVAL_MS) % 2 == 0 ? 600.0f : 20.0f;
+      if (controller.onLux(lux, t)) {
+        switches++;
+      }
+    }
+    assertEquals(0, switches);
+    assertFalse(controller.isTorchOn());
+  }
+
+  public void test_briefShadowDoesNotSwitch() {
+    TorchController controller = new TorchController();
+    assertFalse(controller.onLux(500.0f, 0L));
+    assertFalse(controller.onLux(10.0f, 1000L));
+    assertFalse(controller.onTick(1100L));
+    assertFalse(controller.onLux(500.0f, 1200L));
+    for (long t = 1250L; t < 5000L; t += 250L) {
+      assertFalse(controller.onTick(t));
+    }
+    assertFalse(controller.isTorchOn());
+  }
+
+  public void test_goingDarkSwitchesOnOnce() {
+    TorchController controller = new TorchController();
+    assertFalse(controller.onLux(300.0f, 0L));
+    // The sensor reports only changes, so the average moves on with ticks.
+    assertFalse(controller.onLux(5.0f, 1000L));
+    long switchedAt = -1L;
+    for (long t = 1250L; t < 10000L; t += 250L) {
+      if (controller.onTick(t)) {
+        assertEquals(-1L, switchedAt);
+        switchedAt = t;
+      }
+    }
+    assertTrue(controller.isTorchOn());
+    assertTrue(switchedAt > 1000L);
+    assertTrue(switchedAt <= 1000L + 4 * TorchController.TIME_CONSTANT_MS);
+  }
+
+  public void test_startingInTheDarkSwitchesOnAtOnce() {
+    TorchController controller = new TorchController();
+    assertTrue(controller.onLux(3.0f, 0L));
+    assertTrue(controller.isTorchOn());
+  }
+
+  public void test_decisionMadeWhileCameraIsClosedIsAppliedOnOpen() {
+    TorchController controller = new TorchController();
+    // The switch is asked for before the camera has opened, and is lost.
+    assertTrue(controller.onLux(3.0f, 0L));
+    for (long t = 250L; t < 2000L; t += 250L) {
+      assertFalse(controller.onTick(t));
+    }
+    assertTrue(controller.onCameraOpened());
+    assertTrue(controller.isTorchOn());
+
+    // Nothing to switch on a camera opened in the light.
+    TorchController bright = new TorchController();
+    assertFalse(bright.onLux(800.0f, 0L));
+    assertFalse(bright.onCameraOpened());
+  }
+
+  public void test_manualSwitchIsKeptUntilLightChanges() {
+    TorchController controller = new TorchController();
+    assertFalse(controller.onLux(800.0f, 0L));
+    controller.onManualSwitch(true, 1000L);
+    for (long t = 1000L; t < 20000L; t += SENSOR_INTERVAL_MS) {
+      assertFalse(controller.onLux(800.0f, t));
+    }
+    assertTrue(controller.isTorchOn());
+
+    // The room goes dark and light again, so the torch follows the light once more.
+    assertFalse(controller.onLux(3.0f, 20000L));
+    int switches = 0;
+    for (long t = 20000L; t < 30000L; t += SENSOR_INTERVAL_MS) {
+      if (controller.onLux(t < 25000L ? 3.0f : 800.0f, t)) {
+        switches++;
+      }
+    }
+    assertEquals(1, switches);
+    assertFalse(controller.isTorchOn());
+  }
+
+  public void test_manualSwitchBeforeFirstReadingIsKept() {
+    TorchController controller = new TorchController();
+    controller.onManualSwitch(true, 0L);
+    assertFalse(controller.onLux(800.0f, 100L));
+    assertFalse(controller.onTick(10000L));
+    assertTrue(controller.onCameraOpened());
+  }
+
+  public void test_betweenThresholdsKeepsState() {
+    TorchController controller = new TorchController();
+    assertTrue(controller.onLux(3.0f, 0L));
+    for (long t = 0L; t < 20000L; t += SENSOR_INTERVAL_MS) {
+      assertFalse(controller.onLux(200.0f, t + 5000L));
+    }
+    assertTrue(controller.isTorchOn());
+  }
+
+  public void test_slowSquareWaveSwitchesAtMostOncePerDwell() {
+    TorchController controller = new TorchController();
+    long duration = 60000L;
+    int switches = 0;
+    long lastSwitch = Long.MIN_VALUE / 2;
+    // Light which goes on and off every two seconds, with readings every 100 ms.
+    for (long t = 0L; t < duration; t += SENSOR_INTERVAL_MS) {
+      float lux = (t / 2000L) % 2 == 0 ? 1000.0f : 0.0f;
+      if (controller.onLux(lux, t)) {
+        assertTrue(t - lastSwitch >= TorchController.MIN_DWELL_MS);
+        lastSwitch = t;
+        switches++;
+      }
+    }
+    assertTrue(switches > 0);
+    assertTrue(switches <= duration / TorchController.MIN_DWELL_MS + 1);
+  }
+
+  public void test_goingLightAgainSwitchesOffAfterDwell() {
+    TorchController controller = new TorchController();
+    assertTrue(controller.onLux(3.0f, 0L));
+    // Too soon after switching on.
+    assertFalse(controller.onLux(2000.0f, 100L));
+    assertFalse(controller.onTick(2000L));
+    assertTrue(controller.onTick(TorchController.MIN_DWELL_MS));
+    assertFalse(controller.isTorchOn());
+    assertTrue(controller.getAverageLux() >= TorchController.BRIGHT_ENOUGH_LUX);
+  }
+
+}
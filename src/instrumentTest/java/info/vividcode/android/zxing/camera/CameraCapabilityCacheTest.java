@@ -0,0 +1,132 @@
+package info.vividcode.android.zxing.camera;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+public class CameraCapabilityCacheTest extends TestCase {
+
+  private static final String FINGERPRINT = "vendor/product/device:4.4/KRT16M/1:user/release-keys";
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("camera-capabilities", "");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  public void test_writtenCapabilitiesAreRead() throws IOException {
+    CameraCapabilityCache cache = new CameraCapabilityCache(dir, FINGERPRINT);
+    CameraCapabilityCache.Capabilities capabilities =
+        new CameraCapabilityCache.Capabilities(1280, 720, "continuous-picture", "torch", "off",
+            false);
+    assertNull(cache.read(0, 1280, 720));
+
+    cache.write(0, 1280, 720, capabilities);
+    assertEquals(capabilities, new CameraCapabilityCache(dir, FINGERPRINT).read(0, 1280, 720));
+    assertNull(cache.read(1, 1280, 720));
+
+    CameraCapabilityCache.Capabilities safeMode =
+        new CameraCapabilityCache.Capabilities(640, 480, null, null, null, true);
+    cache.write(0, 1280, 720, safeMode);
+    assertEquals(safeMode, cache.read(0, 1280, 720));
+
+    cache.remove(0);
+    assertNull(cache.read(0, 1280, 720));
+  }
+
+  public void test_capabilitiesAreOnlyForTheBuildAndScreen() throws IOException {
+    CameraCapabilityCache cache = new CameraCapabilityCache(dir, FINGERPRINT);
+    cache.write(0, 1280, 720, new CameraCapabilityCache.Capabilities(1280, 720, "auto", null,
+        null, false));
+    assertNull(new CameraCapabilityCache(dir, FINGERPRINT + "2").read(0, 1280, 720));
+    assertNull(cache.read(0, 720, 1280));
+  }
+
+  public void test_queuedWritesAreDroppedByLaterRemoval() throws Exception {
+    CameraCapabilityCache cache = new CameraCapabilityCache(dir, FINGERPRINT);
+    CameraCapabilityCache.Capabilities capabilities =
+        new CameraCapabilityCache.Capabilities(1280, 720, "auto", null, null, false);
+    cache.writeLater(0, 1280, 720, capabilities);
+    assertEquals(capabilities, cache.readQueued(0, 1280, 720));
+
+    // The revalidation is still choosing when the configuration is forgotten.
+    final CountDownLatch choosing = new CountDownLatch(1);
+    final CountDownLatch forgotten = new CountDownLatch(1);
+    cache.revalidateLater(0, 1280, 720, capabilities, new CameraCapabilityCache.Chooser() {
+      @Override
+      public CameraCapabilityCache.Capabilities choose() {
+        choosing.countDown();
+        try {
+          forgotten.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return new CameraCapabilityCache.Capabilities(640, 480, "auto", null, null, false);
+      }
+    });
+    choosing.await();
+    cache.writeLater(0, 1280, 720, capabilities);
+    cache.removeLater(0);
+    forgotten.countDown();
+    assertNull(cache.readQueued(0, 1280, 720));
+
+    // Writes queued after the removal are kept.
+    cache.writeLater(0, 1280, 720, capabilities);
+    assertEquals(capabilities, cache.readQueued(0, 1280, 720));
+  }
+
+  public void test_removalKeepsWritesForOtherCameras() throws Exception {
+    CameraCapabilityCache cache = new CameraCapabilityCache(dir, FINGERPRINT);
+    CameraCapabilityCache.Capabilities capabilities =
+        new CameraCapabilityCache.Capabilities(1280, 720, "auto", null, null, false);
+    cache.writeLater(1, 1280, 720, capabilities);
+    cache.writeLater(0, 1280, 720, capabilities);
+    cache.removeLater(0);
+    assertNull(cache.readQueued(0, 1280, 720));
+    assertEquals(capabilities, cache.readQueued(1, 1280, 720));
+  }
+
+  public void test_staleCapabilitiesAreReplaced() throws Exception {
+    CameraCapabilityCache cache = new CameraCapabilityCache(dir, FINGERPRINT);
+    CameraCapabilityCache.Capabilities cached =
+        new CameraCapabilityCache.Capabilities(1280, 720, "auto", null, null, false);
+    final CameraCapabilityCache.Capabilities chosen =
+        new CameraCapabilityCache.Capabilities(1920, 1080, "auto", null, null, false);
+    cache.write(0, 1920, 1080, cached);
+    cache.revalidateLater(0, 1920, 1080, cached, new CameraCapabilityCache.Chooser() {
+      @Override
+      public CameraCapabilityCache.Capabilities choose() {
+        return chosen;
+      }
+    });
+    assertEquals(chosen, cache.readQueued(0, 1920, 1080));
+  }
+
+  public void test_truncatedFileIsReported() throws IOException {
+    CameraCapabilityCache cache = new CameraCapabilityCache(dir, FINGERPRINT);
+    FileOutputStream out = new FileOutputStream(new File(dir, "camera-capabilities-0"));
+    out.write(new byte[] { 0, 0, 0 });
+    out.close();
+    try {
+      cache.read(0, 1280, 720);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+}
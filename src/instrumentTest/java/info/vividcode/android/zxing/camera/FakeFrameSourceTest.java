@@ -0,0 +1,117 @@
+package info.vividcode.android.zxing.camera;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class FakeFrameSourceTest extends TestCase {
+
+  private static final int WIDTH = 4;
+  private static final int HEIGHT = 2;
+
+  private final byte[] first = new byte[WIDTH * HEIGHT * 3 / 2];
+  private final byte[] second = new byte[WIDTH * HEIGHT * 3 / 2];
+
+  public void test_framesAreDeliveredOnlyWhenRequested() throws Exception {
+    FakeFrameSource source = newSource();
+    PreviewFrameMailbox mailbox = new PreviewFrameMailbox(1);
+    assertFalse(source.deliverNextFrame());
+
+    source.open();
+    source.startPreview();
+    assertFalse(source.deliverNextFrame());
+
+    source.requestFrames(mailbox);
+    assertTrue(source.deliverNextFrame());
+    CameraFrame frame = mailbox.take(0);
+    assertSame(first, frame.getData());
+    assertNull(frame.getLuminance());
+    assertEquals(WIDTH, frame.getWidth());
+    assertEquals(HEIGHT, frame.getHeight());
+    assertEquals(WIDTH, frame.getRowStride());
+    assertEquals(1, frame.getPixelStride());
+    source.releaseFrame(frame);
+
+    source.cancelFrames();
+    assertFalse(source.deliverNextFrame());
+    assertEquals(0, source.getOutstandingFrameCount());
+  }
+
+  public void test_replacedFrameIsReleased() throws Exception {
+    FakeFrameSource source = newSource();
+    PreviewFrameMailbox mailbox = new PreviewFrameMailbox(1);
+    source.open();
+    source.startPreview();
+    source.requestFrames(mailbox);
+
+    assertTrue(source.deliverNextFrame());
+    assertTrue(source.deliverNextFrame());
+    assertEquals(1, source.getReleasedFrameCount());
+    assertEquals(1, mailbox.getDroppedFrameCount());
+
+    // Decoders always get the freshest frame.
+    CameraFrame frame = mailbox.take(0);
+    assertSame(second, frame.getData());
+    CameraFrame cleared = mailbox.clear();
+    assertNull(cleared);
+    source.releaseFrame(frame);
+    assertEquals(0, source.getOutstandingFrameCount());
+  }
+
+  public void test_framesPostedBeforeDiscardAreStale() throws Exception {
+    FakeFrameSource source = newSource();
+    PreviewFrameMailbox mailbox = new PreviewFrameMailbox(1);
+    source.open();
+    source.startPreview();
+    source.requestFrames(mailbox);
+
+    assertTrue(source.deliverNextFrame());
+    int generation = mailbox.getGeneration();
+    // Discarded after being posted, before the decoder gets to take it.
+    CameraFrame waiting = mailbox.discard();
+    assertNotNull(waiting);
+    assertEquals(generation, waiting.getGeneration());
+    assertFalse(generation == mailbox.getGeneration());
+    source.releaseFrame(waiting);
+
+    assertTrue(source.deliverNextFrame());
+    CameraFrame frame = mailbox.take(0);
+    assertEquals(mailbox.getGeneration(), frame.getGeneration());
+    source.releaseFrame(frame);
+  }
+
+  public void test_firstPostIsTimed() throws Exception {
+    FakeFrameSource source = newSource();
+    PreviewFrameMailbox mailbox = new PreviewFrameMailbox(1);
+    source.open();
+    source.startPreview();
+    source.requestFrames(mailbox);
+    assertEquals(0L, mailbox.getFirstPostNanos());
+
+    long before = System.nanoTime();
+    assertTrue(source.deliverNextFrame());
+    long firstPost = mailbox.getFirstPostNanos();
+    assertTrue(firstPost - before >= 0L);
+    assertTrue(source.deliverNextFrame());
+    assertEquals(firstPost, mailbox.getFirstPostNanos());
+  }
+
+  public void test_sizesAreKnownOnlyWhileOpen() throws Exception {
+    FakeFrameSource source = newSource();
+    assertEquals(0, source.getFrameWidth());
+    source.open();
+    assertEquals(WIDTH, source.getFrameWidth());
+    assertEquals(HEIGHT, source.getFrameHeight());
+    assertEquals(HEIGHT * 100, source.getScreenWidth());
+    assertEquals(90, source.getPreviewRotation());
+    source.close();
+    assertFalse(source.isOpen());
+    assertEquals(0, source.getScreenHeight());
+  }
+
+  private FakeFrameSource newSource() {
+    return new FakeFrameSource(Arrays.asList(first, second), WIDTH, HEIGHT, HEIGHT * 100,
+        WIDTH * 100, 90);
+  }
+
+}
@@ -0,0 +1,91 @@
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.LuminanceSource;
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class ByteBufferLuminanceSourceTest extends TestCase {
+
+  private static final int WIDTH = 12;
+  private static final int HEIGHT = 8;
+
+  public void test_paddedRowsMatchPackedFrame() {
+    byte[] packed = packedFrame();
+    ByteBuffer plane = plane(packed, WIDTH + 5, 1, true);
+    ByteBufferLuminanceSource source = new ByteBufferLuminanceSource(6, 4)
+        .reset(plane, WIDTH + 5, 1, WIDTH, HEIGHT, 3, 2);
+    ReusableYUVLuminanceSource expected =
+        new ReusableYUVLuminanceSource(6, 4).reset(packed, WIDTH, HEIGHT, 3, 2);
+    assertSameLuminance("padded", expected, source);
+  }
+
+  public void test_interleavedPixelsMatchPackedFrame() {
+    byte[] packed = packedFrame();
+    ByteBuffer plane = plane(packed, WIDTH * 2, 2, false);
+    ByteBufferLuminanceSource source = new ByteBufferLuminanceSource(WIDTH, HEIGHT)
+        .reset(plane, WIDTH * 2, 2, WIDTH, HEIGHT, 0, 0);
+    ReusableYUVLuminanceSource expected =
+        new ReusableYUVLuminanceSource(WIDTH, HEIGHT).reset(packed, WIDTH, HEIGHT, 0, 0);
+    assertSameLuminance("interleaved", expected, source);
+  }
+
+  public void test_limitOfPlaneIsKept() {
+    ByteBuffer plane = plane(packedFrame(), WIDTH, 1, true);
+    plane.limit(WIDTH * HEIGHT);
+    ByteBufferLuminanceSource source =
+        new ByteBufferLuminanceSource(4, 4).reset(plane, WIDTH, 1, WIDTH, HEIGHT, 8, 4);
+    source.getMatrix();
+    assertEquals(WIDTH * HEIGHT, plane.limit());
+  }
+
+  public void test_cropMustFitInPlane() {
+    ByteBuffer plane = plane(packedFrame(), WIDTH, 1, true);
+    try {
+      new ByteBufferLuminanceSource(4, 4).reset(plane, WIDTH, 1, WIDTH, HEIGHT, 10, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void assertSameLuminance(String message, LuminanceSource expected,
+                                          LuminanceSource actual) {
+    assertEquals(message, expected.getWidth(), actual.getWidth());
+    assertEquals(message, expected.getHeight(), actual.getHeight());
+    int size = expected.getWidth() * expected.getHeight();
+    assertTrue(message, Arrays.equals(Arrays.copyOf(expected.getMatrix(), size),
+        Arrays.copyOf(actual.getMatrix(), size)));
+    for (int y = 0; y < expected.getHeight(); y++) {
+      assertTrue(message + " row " + y,
+          Arrays.equals(expected.getRow(y, null), actual.getRow(y, null)));
+    }
+  }
+
+  private static byte[] packedFrame() {
+    byte[] data = new byte[WIDTH * HEIGHT];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 7);
+    }
+    return data;
+  }
+
+  /**
+   * Lays out {@code packed} with padded rows or interleaved pixels, filling the gaps with noise.
+   */
+  private static ByteBuffer plane(byte[] packed, int rowStride, int pixelStride, boolean direct) {
+    int size = (HEIGHT - 1) * rowStride + (WIDTH - 1) * pixelStride + 1;
+    ByteBuffer plane = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    for (int i = 0; i < size; i++) {
+      plane.put(i, (byte) 0x5a);
+    }
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        plane.put(y * rowStride + x * pixelStride, packed[y * WIDTH + x]);
+      }
+    }
+    return plane;
+  }
+
+}
@@ -0,0 +1,255 @@
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.datamatrix.DataMatrixWriter;
+import com.google.zxing.qrcode.QRCodeWriter;
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DecodeEngineTest extends TestCase {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  private Map<DecodeHintType,Object> hints;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singleton(BarcodeFormat.QR_CODE));
+  }
+
+  public void test_framingRectIsDecoded() throws WriterException {
+    DecodeEngine engine = new DecodeEngine(newSession(false), hints, null);
+    byte[] data = frameWithQrCode("framing rect", 200, 120, 200);
+    PreviewFrame frame = new PreviewFrame().set(data, WIDTH, HEIGHT)
+        .setFramingRect(120, 90, 400, 300).setRotation(0);
+    assertEquals(DecodeEngine.Outcome.FOUND, engine.decode(frame));
+    assertEquals("framing rect", engine.getResult().getText());
+    assertNull(engine.getResults());
+    assertEquals(120, engine.getSource().getLeft());
+    assertEquals(400, engine.getSource().getCropWidth());
+
+    // Unchanged after a failure, the frame is not read again.
+    byte[] blank = new byte[WIDTH * HEIGHT * 3 / 2];
+    frame.set(blank, WIDTH, HEIGHT);
+    assertEquals(DecodeEngine.Outcome.SKIPPED, engine.decode(frame));
+    assertNull(engine.getResult());
+  }
+
+  public void test_onlyRegionIsDecoded() throws WriterException {
+    final int[] cropCount = new int[1];
+    DecodeEngine engine = new DecodeEngine(newSession(false), hints,
+        new DecodeEngine.CropListener() {
+          @Override
+          public void onCrop(ReusableYUVLuminanceSource source, int cropScale) {
+            assertEquals(160, source.getCropWidth());
+            assertEquals(1, cropScale);
+            cropCount[0]++;
+          }
+        });
+    byte[] data = frameWithQrCode("region", 140, 100, 120);
+    PreviewFrame frame = new PreviewFrame().set(data, WIDTH, HEIGHT)
+        .setFramingRect(120, 90, 400, 300).setRotation(0).setRegion(120, 90, 160, 160);
+    assertEquals(DecodeEngine.Outcome.FOUND, engine.decode(frame));
+    assertEquals(1, cropCount[0]);
+    // Points are relative to the region.
+    Result result = engine.getResult();
+    assertTrue(result.getResultPoints()[0].getX() < 160);
+
+    // The code is outside of the region.
+    data = frameWithQrCode("region", 340, 220, 120);
+    frame.set(data, WIDTH, HEIGHT).setRegion(120, 90, 160, 160);
+    assertFalse(engine.decode(frame) == DecodeEngine.Outcome.FOUND);
+    assertNull(engine.getResult());
+  }
+
+  public void test_pyramidLevelIsAttached() throws WriterException {
+    DecodeEngine engine = new DecodeEngine(newSession(true), hints, null);
+    byte[] data = frameWithQrCode("pyramid", 200, 120, 240);
+    PreviewFrame frame = new PreviewFrame().set(data, WIDTH, HEIGHT)
+        .setFramingRect(120, 90, 400, 300).setRotation(90);
+    assertEquals(DecodeEngine.Outcome.FOUND, engine.decode(frame));
+    assertEquals("pyramid", engine.getResult().getText());
+    assertNotNull(PyramidLevel.of(engine.getResult()));
+  }
+
+  public void test_planeIsDecoded() throws WriterException {
+    DecodeEngine engine = new DecodeEngine(newSession(false), hints, null);
+    byte[] data = frameWithQrCode("plane", 200, 120, 200);
+    // Rows padded as those of an ImageReader.
+    int rowStride = WIDTH + 64;
+    ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+    for (int y = 0; y < HEIGHT; y++) {
+      plane.position(y * rowStride);
+      plane.put(data, y * WIDTH, WIDTH);
+    }
+    PreviewFrame frame = new PreviewFrame().set(plane, rowStride, 1, WIDTH, HEIGHT)
+        .setFramingRect(120, 90, 400, 300).setRotation(90);
+    assertEquals(DecodeEngine.Outcome.FOUND, engine.decode(frame));
+    assertEquals("plane", engine.getResult().getText());
+    assertEquals(120, engine.getSource().getLeft());
+  }
+
+  public void test_planeRegionIsPlacedInTheFrame() throws WriterException {
+    DecodeEngine engine = new DecodeEngine(newSession(false), hints, null);
+    byte[] data = frameWithQrCode("plane region", 200, 150, 120);
+    ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+    plane.put(data, 0, WIDTH * HEIGHT);
+    PreviewFrame frame = new PreviewFrame().set(plane, WIDTH, 1, WIDTH, HEIGHT)
+        .setFramingRect(120, 90, 400, 300).setRotation(0).setRegion(180, 130, 160, 160);
+    assertEquals(DecodeEngine.Outcome.FOUND, engine.decode(frame));
+    ReusableYUVLuminanceSource source = engine.getSource();
+    assertEquals(180, source.getLeft());
+    assertEquals(130, source.getTop());
+    // Points are relative to the region, and mapped into the frame around the code.
+    for (ResultPoint point : engine.getResult().getResultPoints()) {
+      float x = source.toFrameX(point.getX(), point.getY());
+      float y = source.toFrameY(point.getX(), point.getY());
+      assertTrue(x > 200 && x < 320);
+      assertTrue(y > 150 && y < 270);
+    }
+  }
+
+  public void test_demotedReadersAreTriedAtFullResolutionInPyramidMode() {
+    hints.put(DecodeHintType.POSSIBLE_FORMATS,
+        Arrays.asList(BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX));
+    // Frames are not skipped as unchanged, so that the same frame is read each time.
+    DecodeSession session = new DecodeSession(true, 0.0f, 0.0f, new DecodeLatencies(), null);
+    for (int i = 0; i < 20; i++) {
+      session.getFormatHitRates().recordHit(BarcodeFormat.QR_CODE);
+    }
+    DecodeEngine engine = new DecodeEngine(session, hints, null);
+    // Modules of 3 pixels, which are lost when the framing rect is downsampled.
+    byte[] data = frameWithDataMatrix("small", 300, 200, 3);
+    PreviewFrame frame = new PreviewFrame().set(data, WIDTH, HEIGHT)
+        .setFramingRect(120, 90, 400, 300).setRotation(0);
+    int found = 0;
+    for (int i = 0; i < AdaptiveMultiFormatReader.DEFAULT_DEMOTED_READER_INTERVAL * 2; i++) {
+      if (engine.decode(frame) == DecodeEngine.Outcome.FOUND) {
+        assertEquals("small", engine.getResult().getText());
+        assertEquals(0, PyramidLevel.of(engine.getResult()).getLevel());
+        found++;
+      }
+    }
+    assertTrue(found > 0);
+  }
+
+  public void test_allBarcodesAreFoundInMultipleResultMode() throws Exception {
+    String[] texts = { "one", "two", "three", "one" };
+    // Left, top and module size. The codes have modules of different sizes, as the finder patterns
+    // of codes of the same size may be taken for one code. The large code on the left is too tall
+    // to search above or below it, so the others are found in sub-regions to the right of it, of
+    // which the points are translated in both directions.
+    int[][] bounds = { { 20, 100, 9 }, { 320, 60, 4 }, { 470, 200, 3 }, { 560, 380, 2 } };
+    byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+    fillBackground(data);
+    for (int i = 0; i < texts.length; i++) {
+      BitMatrix code = new QRCodeWriter().encode(texts[i], BarcodeFormat.QR_CODE, 0, 0);
+      drawCode(data, code, bounds[i][0], bounds[i][1], bounds[i][2]);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      DecodeSession session = new DecodeSession(false,
+          FrameChangeDetector.DEFAULT_UNCHANGED_THRESHOLD,
+          FrameChangeDetector.DEFAULT_MOTION_THRESHOLD, new DecodeLatencies(), executor);
+      DecodeEngine engine = new DecodeEngine(session, hints, null);
+      // The framing rect is off the origin, so that the points have to be placed in it.
+      PreviewFrame frame = new PreviewFrame().set(data, WIDTH, HEIGHT)
+          .setFramingRect(10, 10, WIDTH - 20, HEIGHT - 20).setRotation(0);
+      assertEquals(DecodeEngine.Outcome.FOUND, engine.decode(frame));
+      Result[] results = engine.getResults();
+      assertNotNull(results);
+      assertSame(engine.getResult(), results[0]);
+      // The code of the same text is reported once.
+      Set<String> found = new HashSet<String>();
+      for (Result result : results) {
+        assertTrue(result.getText(), found.add(result.getText()));
+        boolean inItsCode = false;
+        for (int i = 0; i < texts.length; i++) {
+          if (texts[i].equals(result.getText()) &&
+              pointsAreWithin(result, engine.getSource(), bounds[i][0], bounds[i][1],
+                  29 * bounds[i][2])) {
+            inItsCode = true;
+          }
+        }
+        assertTrue(result.getText(), inItsCode);
+      }
+      assertEquals(new HashSet<String>(Arrays.asList(texts)), found);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static boolean pointsAreWithin(Result result, ReusableYUVLuminanceSource source,
+                                         int left, int top, int size) {
+    for (ResultPoint point : result.getResultPoints()) {
+      float x = source.toFrameX(point.getX(), point.getY());
+      float y = source.toFrameY(point.getX(), point.getY());
+      if (x < left || y < top || x > left + size || y > top + size) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static DecodeSession newSession(boolean pyramidDecodeMode) {
+    return new DecodeSession(pyramidDecodeMode, FrameChangeDetector.DEFAULT_UNCHANGED_THRESHOLD,
+        FrameChangeDetector.DEFAULT_MOTION_THRESHOLD, new DecodeLatencies(), null);
+  }
+
+  private static byte[] frameWithQrCode(String contents, int left, int top, int size)
+      throws WriterException {
+    BitMatrix code = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, size, size);
+    return frameWithCode(code, left, top, 1);
+  }
+
+  private static byte[] frameWithDataMatrix(String contents, int left, int top, int moduleSize) {
+    BitMatrix code = new DataMatrixWriter().encode(contents, BarcodeFormat.DATA_MATRIX, 0, 0);
+    return frameWithCode(code, left, top, moduleSize);
+  }
+
+  private static byte[] frameWithCode(BitMatrix code, int left, int top, int moduleSize) {
+    byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+    fillBackground(data);
+    drawCode(data, code, left, top, moduleSize);
+    return data;
+  }
+
+  private static void fillBackground(byte[] data) {
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        // A little texture, so that the frame passes the quality gate.
+        data[y * WIDTH + x] = (byte) (200 + (x + y) % 16);
+      }
+    }
+  }
+
+  private static void drawCode(byte[] data, BitMatrix code, int left, int top, int moduleSize) {
+    int width = code.getWidth() * moduleSize;
+    int height = code.getHeight() * moduleSize;
+    for (int codeY = 0; codeY < height; codeY++) {
+      for (int codeX = 0; codeX < width; codeX++) {
+        if (code.get(codeX / moduleSize, codeY / moduleSize)) {
+          data[(top + codeY) * WIDTH + left + codeX] = (byte) 30;
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+package info.vividcode.android.zxing.decode;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+public class FrameRecordingTest extends TestCase {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    file = File.createTempFile("frames", ".bin");
+    assertTrue(file.delete());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+    super.tearDown();
+  }
+
+  public void test_framesAreReadBackAsRecorded() throws IOException {
+    byte[][] frames = { frame(64, 48, 1), frame(64, 48, 2), frame(48, 64, 3) };
+    FrameRecorder recorder = new FrameRecorder(file, 1);
+    recordAll(recorder, frames, 0);
+    recorder.close();
+    // A second session appends to the file.
+    recorder = new FrameRecorder(file, 1);
+    recordAll(recorder, frames, frames.length);
+    recorder.close();
+
+    FrameRecording recording = new FrameRecording(file);
+    byte[] luminance = null;
+    for (int i = 0; i < frames.length * 2; i++) {
+      assertTrue(recording.next());
+      byte[] frame = frames[i % frames.length];
+      int width = i % frames.length == 2 ? 48 : 64;
+      int height = frame.length * 2 / 3 / width;
+      assertEquals(i, recording.getFrameIndex());
+      assertEquals(width, recording.getWidth());
+      assertEquals(height, recording.getHeight());
+      assertEquals(1000L * i, recording.getTimestampNanos());
+      assertEquals(4, recording.getLeft());
+      assertEquals(8, recording.getTop());
+      assertEquals(32, recording.getCropWidth());
+      assertEquals(24, recording.getCropHeight());
+      assertEquals(90, recording.getRotation());
+      luminance = recording.getLuminance(luminance);
+      for (int j = 0; j < width * height; j++) {
+        assertEquals(frame[j], luminance[j]);
+      }
+    }
+    assertFalse(recording.next());
+    recording.close();
+  }
+
+  public void test_frameCutShortIsTheEnd() throws IOException {
+    byte[] frame = frame(64, 48, 1);
+    FrameRecorder recorder = new FrameRecorder(file, 1);
+    recordAll(recorder, new byte[][] { frame, frame }, 0);
+    recorder.close();
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    truncated.setLength(truncated.length() - 1);
+    truncated.close();
+
+    FrameRecording recording = new FrameRecording(file);
+    assertTrue(recording.next());
+    assertFalse(recording.next());
+    recording.close();
+  }
+
+  public void test_otherFilesAreRejected() throws IOException {
+    RandomAccessFile other = new RandomAccessFile(file, "rw");
+    other.writeLong(0L);
+    other.close();
+    try {
+      new FrameRecording(file);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static void recordAll(FrameRecorder recorder, byte[][] frames, int firstIndex) {
+    for (int i = 0; i < frames.length; i++) {
+      int width = i == 2 ? 48 : 64;
+      int height = frames[i].length * 2 / 3 / width;
+      // With one buffer, a frame is dropped until the previous one has been written.
+      while (!recorder.record(frames[i], width, height, 1000L * (firstIndex + i), 4, 8, 32, 24,
+          90)) {
+        Thread.yield();
+      }
+    }
+  }
+
+  private static byte[] frame(int width, int height, long seed) {
+    byte[] frame = new byte[width * height * 3 / 2];
+    new Random(seed).nextBytes(frame);
+    return frame;
+  }
+
+}
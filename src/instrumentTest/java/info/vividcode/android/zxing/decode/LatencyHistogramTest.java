@@ -0,0 +1,50 @@
+package info.vividcode.android.zxing.decode;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest extends TestCase {
+
+  public void test_percentilesAreCloseToTrueValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(3);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      // Log-normal around a millisecond, as decode latencies are.
+      values[i] = (long) Math.exp(random.nextGaussian() + 14.0);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    assertEquals(values.length, histogram.getCount());
+    for (double percentile : new double[] { 50.0, 95.0, 99.0 }) {
+      long expected = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+      long actual = histogram.getPercentileNanos(percentile);
+      assertTrue("p" + percentile, actual >= expected);
+      assertTrue("p" + percentile, actual <= expected * 1.13);
+    }
+    assertEquals(values[values.length - 1], histogram.getPercentileNanos(100.0));
+    assertEquals(values[values.length - 1], histogram.getMaxNanos());
+  }
+
+  public void test_outOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0L, histogram.getPercentileNanos(50.0));
+    histogram.record(-1L);
+    histogram.record(1L << 40);
+    assertEquals(1024L, histogram.getPercentileNanos(50.0));
+    assertEquals(1L << 40, histogram.getPercentileNanos(100.0));
+  }
+
+  public void test_bucketBoundaries() {
+    for (long nanos = 1L; nanos < (1L << 34); nanos = nanos * 3 + 1) {
+      int bucket = LatencyHistogram.bucketOf(nanos);
+      assertTrue(nanos < LatencyHistogram.upperBoundOf(bucket));
+      if (bucket > 0) {
+        assertTrue(nanos >= LatencyHistogram.upperBoundOf(bucket - 1));
+      }
+    }
+  }
+
+}
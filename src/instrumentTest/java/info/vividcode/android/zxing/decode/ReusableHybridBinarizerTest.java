@@ -0,0 +1,138 @@
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class ReusableHybridBinarizerTest extends TestCase {
+
+  private static final int FRAME_WIDTH = 320;
+  private static final int FRAME_HEIGHT = 240;
+
+  /**
+   * Makes an NV21 frame: a QR code over a lighting gradient, with noise. The chroma planes are
+   * filled with garbage, which must be ignored.
+   */
+  private static byte[] createQrCodeFrame(String contents, int size, int noise, long seed)
+      throws Exception {
+    BitMatrix code = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, size, size);
+    Random random = new Random(seed);
+    byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+    random.nextBytes(frame);
+    int codeLeft = (FRAME_WIDTH - size) / 2;
+    int codeTop = (FRAME_HEIGHT - size) / 2;
+    for (int y = 0; y < FRAME_HEIGHT; y++) {
+      for (int x = 0; x < FRAME_WIDTH; x++) {
+        int light = 120 + 100 * x / FRAME_WIDTH;
+        int cx = x - codeLeft;
+        int cy = y - codeTop;
+        boolean black = cx >= 0 && cy >= 0 && cx < size && cy < size && code.get(cx, cy);
+        int value = (black ? light / 4 : light) + random.nextInt(2 * noise + 1) - noise;
+        frame[y * FRAME_WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+      }
+    }
+    return frame;
+  }
+
+  private static byte[] createNoiseFrame(long seed) {
+    byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+    new Random(seed).nextBytes(frame);
+    return frame;
+  }
+
+  /** Flat areas exercise the low-dynamic-range estimate. */
+  private static byte[] createFlatFrame() {
+    byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+    for (int y = 0; y < FRAME_HEIGHT; y++) {
+      for (int x = 0; x < FRAME_WIDTH; x++) {
+        frame[y * FRAME_WIDTH + x] = (byte) ((x / 50 + y / 40) % 2 == 0 ? 30 : 200);
+      }
+    }
+    return frame;
+  }
+
+  private static void assertSameOutput(byte[][] frames, int left, int top, int width, int height)
+      throws Exception {
+    ReusableYUVLuminanceSource source = new ReusableYUVLuminanceSource(width, height);
+    ReusableHybridBinarizer binarizer = new ReusableHybridBinarizer(source);
+    for (int i = 0; i < frames.length; i++) {
+      byte[] frame = frames[i];
+      source.reset(frame, FRAME_WIDTH, FRAME_HEIGHT, left, top);
+      binarizer.reset();
+      HybridBinarizer expected = new HybridBinarizer(new PlanarYUVLuminanceSource(
+          frame, FRAME_WIDTH, FRAME_HEIGHT, left, top, width, height, false));
+
+      String message = "frame " + i + " cropped to " + width + "x" + height;
+      assertEquals(message, blackMatrixOrNull(expected), blackMatrixOrNull(binarizer));
+      for (int y = 0; y < height; y += 7) {
+        assertEquals(message + ", row " + y,
+            blackRowOrNull(expected, y, width), blackRowOrNull(binarizer, y, width));
+      }
+    }
+  }
+
+  /** The global histogram gives up on some images; both binarizers must do so alike. */
+  private static BitMatrix blackMatrixOrNull(Binarizer binarizer) {
+    try {
+      return binarizer.getBlackMatrix();
+    } catch (NotFoundException e) {
+      return null;
+    }
+  }
+
+  private static String blackRowOrNull(Binarizer binarizer, int y, int width) {
+    try {
+      return binarizer.getBlackRow(y, new BitArray(width)).toString();
+    } catch (NotFoundException e) {
+      return null;
+    }
+  }
+
+  private static byte[][] createSampleFrames() throws Exception {
+    return new byte[][] {
+        createQrCodeFrame("http://www.example.com/", 150, 10, 1L),
+        createNoiseFrame(2L),
+        createQrCodeFrame("ZXing Capture Activity", 200, 40, 3L),
+        createFlatFrame(),
+        createQrCodeFrame("0123456789", 100, 0, 4L),
+    };
+  }
+
+  public void test_getBlackMatrix_sameAsHybridBinarizer() throws Exception {
+    byte[][] frames = createSampleFrames();
+    assertSameOutput(frames, 0, 0, FRAME_WIDTH, FRAME_HEIGHT);
+    assertSameOutput(frames, 40, 30, 240, 180);
+  }
+
+  public void test_getBlackMatrix_sameAsHybridBinarizer_partialBlocks() throws Exception {
+    // Neither dimension is a multiple of the block size.
+    assertSameOutput(createSampleFrames(), 13, 7, 203, 157);
+  }
+
+  public void test_getBlackMatrix_sameAsHybridBinarizer_smallImage() throws Exception {
+    // Too small for local thresholding; falls back to the global histogram.
+    assertSameOutput(createSampleFrames(), 100, 100, 39, 60);
+  }
+
+  public void test_getBlackMatrix_reusesMatrix() throws Exception {
+    byte[][] frames = createSampleFrames();
+    ReusableYUVLuminanceSource source = new ReusableYUVLuminanceSource(FRAME_WIDTH, FRAME_HEIGHT);
+    ReusableHybridBinarizer binarizer = new ReusableHybridBinarizer(source);
+    source.reset(frames[0], FRAME_WIDTH, FRAME_HEIGHT, 0, 0);
+    BitMatrix first = binarizer.getBlackMatrix();
+    assertSame("Cached until reset", first, binarizer.getBlackMatrix());
+    source.reset(frames[1], FRAME_WIDTH, FRAME_HEIGHT, 0, 0);
+    binarizer.reset();
+    assertSame("Same matrix object for the next frame", first, binarizer.getBlackMatrix());
+  }
+
+}
@@ -25,10 +25,15 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.SystemClock;
 import info.vividcode.android.zxing.camera.CameraManager;
 
 /**
  * Detects ambient light and switches on the front light when very dark, and off again when sufficiently light.
+ * The readings are smoothed by a {@link TorchController}, so that flickering light doesn't switch it
+ * over and over. Switches made by the user go through here too, so that they are not undone, and
+ * the torch is switched when the camera, which is opened asynchronously, has opened.
  *
  * @author Sean Owen
  * @author Nikolaus Huber
@@ -36,13 +41,25 @@ import info.vividcode.android.zxing.camera.CameraManager;
  */
 final class AmbientLightManager implements SensorEventListener {
 
-  private static final float TOO_DARK_LUX = 45.0f;
-  private static final float BRIGHT_ENOUGH_LUX = 450.0f;
+  private static final long TICK_INTERVAL_MS = 250L;
 
   private final Context context;
   private CameraManager cameraManager;
   private Sensor lightSensor;
+  private TorchController torchController;
+  private Handler tickHandler;
   private final boolean mEnabled;
+  private final Runnable tick = new Runnable() {
+    @Override
+    public void run() {
+      if (lightSensor != null) {
+        if (torchController.onTick(SystemClock.elapsedRealtime())) {
+          switchTorch();
+        }
+        tickHandler.postDelayed(this, TICK_INTERVAL_MS);
+      }
+    }
+  };
 
   AmbientLightManager(Context context, boolean enabled) {
     this.context = context;
@@ -51,11 +68,15 @@ final class AmbientLightManager implements SensorEventListener {
 
   void start(CameraManager cameraManager) {
     this.cameraManager = cameraManager;
+    // A new camera starts with the torch off.
+    torchController = new TorchController();
     if (mEnabled) {
       SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
       lightSensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
       if (lightSensor != null) {
+          tickHandler = new Handler();
           sensorManager.registerListener(this, lightSensor, SensorManager.SENSOR_DELAY_NORMAL);
+          tickHandler.postDelayed(tick, TICK_INTERVAL_MS);
       }
     }
   }
@@ -64,20 +85,45 @@ final class AmbientLightManager implements SensorEventListener {
     if (lightSensor != null) {
       SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
       sensorManager.unregisterListener(this);
-      cameraManager = null;
+      tickHandler.removeCallbacks(tick);
+      tickHandler = null;
       lightSensor = null;
     }
+    cameraManager = null;
+    torchController = null;
+  }
+
+  /**
+   * Called when the camera has opened, as switches made while it was opening didn't reach it.
+   */
+  void onCameraOpened() {
+    if (torchController != null && torchController.onCameraOpened()) {
+      switchTorch();
+    }
+  }
+
+  /**
+   * Switches the torch as the user asked.
+   */
+  void setTorch(boolean on) {
+    if (torchController != null) {
+      torchController.onManualSwitch(on, SystemClock.elapsedRealtime());
+      switchTorch();
+    }
   }
 
   @Override
   public void onSensorChanged(SensorEvent sensorEvent) {
     float ambientLightLux = sensorEvent.values[0];
+    if (torchController != null &&
+        torchController.onLux(ambientLightLux, SystemClock.elapsedRealtime())) {
+      switchTorch();
+    }
+  }
+
+  private void switchTorch() {
     if (cameraManager != null) {
-      if (ambientLightLux <= TOO_DARK_LUX) {
-        cameraManager.setTorch(true);
-      } else if (ambientLightLux >= BRIGHT_ENOUGH_LUX) {
-        cameraManager.setTorch(false);
-      }
+      cameraManager.setTorch(torchController.isTorchOn());
     }
   }
 
@@ -25,7 +25,12 @@ import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
+import info.vividcode.android.zxing.camera.Camera2FrameSource;
 import info.vividcode.android.zxing.camera.CameraManager;
+import info.vividcode.android.zxing.camera.FrameSource;
+import info.vividcode.android.zxing.camera.LegacyFrameSource;
+import info.vividcode.android.zxing.decode.DecodeLatencies;
+import info.vividcode.android.zxing.decode.PyramidLevel;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -33,9 +38,11 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.SurfaceHolder;
@@ -46,7 +53,9 @@ import android.view.WindowManager;
 import android.widget.TextView;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -67,11 +76,59 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   private ViewfinderView viewfinderView;
   private TextView statusView;
   private boolean hasSurface;
+  private boolean cameraOpened;
   private Collection<BarcodeFormat> decodeFormats;
   private Map<DecodeHintType,?> decodeHints;
   private String characterSet;
+  private int decodeWorkerCount;
+  private long resultDisplayDurationMs;
+  private float unchangedFrameThreshold;
+  private float motionThreshold;
+  private boolean pyramidDecodeMode;
+  private boolean continuousScanMode;
+  private boolean multipleResultMode;
+  private boolean scanMetricsInResult;
+  private String frameRecordingFile;
+  private boolean camera2;
+  private DuplicateResultFilter duplicateResultFilter;
+  private DecodeLatencies decodeLatencies;
+  private ThumbnailBitmapPool thumbnailBitmapPool;
   private AmbientLightManager ambientLightManager;
 
+  private static volatile ContinuousScanListener continuousScanListener;
+  private static volatile DecodeLatencies latestDecodeLatencies;
+  private static volatile ScanMetricsListener scanMetricsListener;
+
+  /**
+   * Sets the listener which receives results in continuous scan mode. The listener is held
+   * statically, so set {@code null} when it is no longer needed.
+   *
+   * @param listener The listener, or {@code null}.
+   * @see CaptureActivityIntents#setContinuousScanModeEnabled(Intent)
+   */
+  public static void setContinuousScanListener(ContinuousScanListener listener) {
+    continuousScanListener = listener;
+  }
+
+  /**
+   * Sets the listener which receives the metrics of scanning sessions. The listener is held
+   * statically, so set {@code null} when it is no longer needed.
+   *
+   * @param listener The listener, or {@code null}.
+   */
+  public static void setScanMetricsListener(ScanMetricsListener listener) {
+    scanMetricsListener = listener;
+  }
+
+  /**
+   * @return The latencies of the stages of decoding in the current scanning session, or in the
+   *         last one if none is running, or {@code null} if no session has started in this
+   *         process. A session lasts from the creation of the activity until it finishes.
+   */
+  public static DecodeLatencies getLatestDecodeLatencies() {
+    return latestDecodeLatencies;
+  }
+
   ViewfinderView getViewfinderView() {
     return viewfinderView;
   }
@@ -84,6 +141,45 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     return cameraManager;
   }
 
+  long getResultDisplayDurationMs() {
+    return resultDisplayDurationMs;
+  }
+
+  float getUnchangedFrameThreshold() {
+    return unchangedFrameThreshold;
+  }
+
+  float getMotionThreshold() {
+    return motionThreshold;
+  }
+
+  boolean isPyramidDecodeMode() {
+    return pyramidDecodeMode;
+  }
+
+  boolean isContinuousScanMode() {
+    return continuousScanMode;
+  }
+
+  boolean isMultipleResultMode() {
+    return multipleResultMode;
+  }
+
+  /**
+   * @return The file to which preview frames are recorded, or {@code null}.
+   */
+  String getFrameRecordingFile() {
+    return frameRecordingFile;
+  }
+
+  DecodeLatencies getDecodeLatencies() {
+    return decodeLatencies;
+  }
+
+  ThumbnailBitmapPool getThumbnailBitmapPool() {
+    return thumbnailBitmapPool;
+  }
+
   @Override
   protected void onCreate(Bundle icicle) {
     super.onCreate(icicle);
@@ -93,6 +189,24 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     setContentView(R.layout.capture);
 
     hasSurface = false;
+    decodeWorkerCount = CaptureActivityIntents.getDecodeWorkerCountOrDefaultValue(getIntent());
+    resultDisplayDurationMs =
+        CaptureActivityIntents.getResultDisplayDurationInMsOrDefaultValue(getIntent());
+    unchangedFrameThreshold =
+        CaptureActivityIntents.getUnchangedFrameThresholdOrDefaultValue(getIntent());
+    motionThreshold = CaptureActivityIntents.getMotionThresholdOrDefaultValue(getIntent());
+    pyramidDecodeMode = CaptureActivityIntents.getPyramidDecodeMode(getIntent());
+    continuousScanMode = CaptureActivityIntents.getContinuousScanMode(getIntent());
+    multipleResultMode = CaptureActivityIntents.getMultipleResultMode(getIntent());
+    scanMetricsInResult = CaptureActivityIntents.getScanMetricsInResult(getIntent());
+    frameRecordingFile = CaptureActivityIntents.getFrameRecordingFileOrNull(getIntent());
+    camera2 = CaptureActivityIntents.getCamera2(getIntent());
+    duplicateResultFilter = new DuplicateResultFilter(
+        CaptureActivityIntents.getDuplicateSuppressionWindowInMsOrDefaultValue(getIntent()),
+        DuplicateResultFilter.DEFAULT_MAX_SIZE);
+    thumbnailBitmapPool = new ThumbnailBitmapPool();
+    decodeLatencies = new DecodeLatencies();
+    latestDecodeLatencies = decodeLatencies;
     ambientLightManager = new AmbientLightManager(this,
         CaptureActivityIntents.getFrontLightAutoMode(getIntent()));
   }
@@ -105,10 +219,31 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     // want to open the camera driver and measure the screen size if we're going to show the help on
     // first launch. That led to bugs where the scanning rectangle was the wrong size and partially
     // off screen.
-    cameraManager = new CameraManager(getApplication());
+    cameraManager = new CameraManager(createFrameSource());
+    // Opening the camera takes a while, so it is done in parallel with the layout and the surface,
+    // and the preview starts when both are ready.
+    cameraOpened = false;
+    cameraManager.openDriverAsync(new CameraManager.OpenCallback() {
+      @Override
+      public void onDriverOpened() {
+        cameraOpened = true;
+        ambientLightManager.onCameraOpened();
+        if (hasSurface) {
+          SurfaceView surfaceView = (SurfaceView) findViewById(R.id.preview_view);
+          initCamera(surfaceView.getHolder());
+        }
+      }
+
+      @Override
+      public void onDriverOpenFailed(Exception e) {
+        Log.w(TAG, "Failed to open camera", e);
+        displayFrameworkBugMessageAndExit();
+      }
+    });
 
     viewfinderView = (ViewfinderView) findViewById(R.id.viewfinder_view);
     viewfinderView.setCameraManager(cameraManager);
+    viewfinderView.setThumbnailBitmapPool(thumbnailBitmapPool);
     statusView = (TextView) findViewById(R.id.status_view);
 
     handler = null;
@@ -117,11 +252,9 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
 
     SurfaceView surfaceView = (SurfaceView) findViewById(R.id.preview_view);
     SurfaceHolder surfaceHolder = surfaceView.getHolder();
-    if (hasSurface) {
-      // The activity was paused but not stopped, so the surface still exists. Therefore
-      // surfaceCreated() won't be called, so init the camera here.
-      initCamera(surfaceHolder);
-    } else {
+    // If the activity was paused but not stopped, the surface still exists, and surfaceCreated()
+    // won't be called, so the camera is inited when it has opened.
+    if (!hasSurface) {
         // Install the callback and wait for surfaceCreated() to init the camera.
         surfaceHolder.addCallback(this);
         // deprecated setting, but required on Android versions prior to 3.0
@@ -189,10 +322,10 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
         return true;
       // Use volume up/down to turn on light
       case KeyEvent.KEYCODE_VOLUME_DOWN:
-        cameraManager.setTorch(false);
+        ambientLightManager.setTorch(false);
         return true;
       case KeyEvent.KEYCODE_VOLUME_UP:
-        cameraManager.setTorch(true);
+        ambientLightManager.setTorch(true);
         return true;
     }
     return super.onKeyDown(keyCode, event);
@@ -226,13 +359,23 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
    * @param barcode   A greyscale bitmap of the camera data which was decoded.
    */
   public void handleDecode(Result rawResult, Bitmap barcode, float scaleFactor) {
+    handleDecode(new Result[] { rawResult }, barcode, scaleFactor);
+  }
+
+  /**
+   * Like {@link #handleDecode(Result, Bitmap, float)}, but for all the barcodes found in a frame
+   * in multiple result mode.
+   */
+  void handleDecode(Result[] rawResults, Bitmap barcode, float scaleFactor) {
     boolean fromLiveScan = barcode != null;
     if (fromLiveScan) {
       // Then not from history, so we have an image to draw on
-      drawResultPoints(barcode, scaleFactor, rawResult);
+      for (Result rawResult : rawResults) {
+        drawResultPoints(barcode, scaleFactor, rawResult);
+      }
     }
 
-    handleDecodeExternally(rawResult, barcode);
+    handleDecodeExternally(rawResults, barcode);
   }
 
   /**
@@ -279,57 +422,134 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
   }
 
   // Briefly show the contents of the barcode, then handle the result outside Barcode Scanner.
-  private void handleDecodeExternally(Result rawResult, Bitmap barcode) {
+  private void handleDecodeExternally(Result[] rawResults, Bitmap barcode) {
 
     if (barcode != null) {
       viewfinderView.drawResultBitmap(barcode);
     }
 
-    long resultDurationMS = CaptureActivityIntents.getResultDisplayDurationInMsOrDefaultValue(getIntent());
+    long resultDurationMS = resultDisplayDurationMs;
     if (resultDurationMS > 0) {
-      String rawResultString = String.valueOf(rawResult);
-      if (rawResultString.length() > 32) {
-        rawResultString = rawResultString.substring(0, 32) + " ...";
-      }
-      statusView.setText(rawResultString);
+      showResultText(rawResults[0]);
     }
-      
-      // Hand back whatever action they requested - this can be changed to Intents.Scan.ACTION when
-      // the deprecated intent is retired.
-      Intent intent = new Intent(getIntent().getAction());
-      intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_WHEN_TASK_RESET);
-      intent.putExtra(Intents.Scan.RESULT, rawResult.toString());
-      intent.putExtra(Intents.Scan.RESULT_FORMAT, rawResult.getBarcodeFormat().toString());
-      byte[] rawBytes = rawResult.getRawBytes();
-      if (rawBytes != null && rawBytes.length > 0) {
-        intent.putExtra(Intents.Scan.RESULT_BYTES, rawBytes);
+
+    sendReplyMessage(R.id.return_scan_result, buildResultIntent(rawResults), resultDurationMS);
+  }
+
+  /**
+   * Barcodes have been found in continuous scan mode. Scanning goes on, and the results are passed
+   * to the listener except those which have just been found.
+   *
+   * @param rawResults The contents of the barcodes; more than one in multiple result mode.
+   */
+  void handleContinuousDecode(Result[] rawResults) {
+    long now = SystemClock.elapsedRealtime();
+    List<Result> newResults = new ArrayList<Result>(rawResults.length);
+    for (Result rawResult : rawResults) {
+      if (!duplicateResultFilter.isDuplicate(rawResult, now)) {
+        newResults.add(rawResult);
       }
-      Map<ResultMetadataType,?> metadata = rawResult.getResultMetadata();
-      if (metadata != null) {
-        if (metadata.containsKey(ResultMetadataType.UPC_EAN_EXTENSION)) {
-          intent.putExtra(Intents.Scan.RESULT_UPC_EAN_EXTENSION,
-                          metadata.get(ResultMetadataType.UPC_EAN_EXTENSION).toString());
-        }
-        Number orientation = (Number) metadata.get(ResultMetadataType.ORIENTATION);
-        if (orientation != null) {
-          intent.putExtra(Intents.Scan.RESULT_ORIENTATION, orientation.intValue());
-        }
-        String ecLevel = (String) metadata.get(ResultMetadataType.ERROR_CORRECTION_LEVEL);
-        if (ecLevel != null) {
-          intent.putExtra(Intents.Scan.RESULT_ERROR_CORRECTION_LEVEL, ecLevel);
-        }
-        @SuppressWarnings("unchecked")
-        Iterable<byte[]> byteSegments = (Iterable<byte[]>) metadata.get(ResultMetadataType.BYTE_SEGMENTS);
-        if (byteSegments != null) {
-          int i = 0;
-          for (byte[] byteSegment : byteSegments) {
-            intent.putExtra(Intents.Scan.RESULT_BYTE_SEGMENTS_PREFIX + i, byteSegment);
-            i++;
+    }
+    if (newResults.isEmpty()) {
+      return;
+    }
+    if (resultDisplayDurationMs > 0) {
+      showResultText(newResults.get(0));
+    }
+    ContinuousScanListener listener = continuousScanListener;
+    if (listener != null) {
+      listener.onScanResult(buildResultIntent(newResults.toArray(new Result[newResults.size()])));
+    }
+  }
+
+  void handleScanMetrics(ScanMetrics metrics, boolean finished) {
+    ScanMetricsListener listener = scanMetricsListener;
+    if (listener != null) {
+      listener.onScanMetrics(metrics, finished);
+    }
+  }
+
+  private void showResultText(Result rawResult) {
+    String rawResultString = String.valueOf(rawResult);
+    if (rawResultString.length() > 32) {
+      rawResultString = rawResultString.substring(0, 32) + " ...";
+    }
+    statusView.setText(rawResultString);
+  }
+
+  private Intent buildResultIntent(Result[] rawResults) {
+    // The first result is also put as a single result, for callers which expect one.
+    Intent intent = buildResultIntent(rawResults[0]);
+    if (scanMetricsInResult && handler != null) {
+      intent.putExtra(Intents.Scan.RESULT_METRICS, handler.getScanMetrics().toBundle());
+    }
+    if (multipleResultMode) {
+      intent.putExtra(Intents.Scan.RESULT_COUNT, rawResults.length);
+      for (int i = 0; i < rawResults.length; i++) {
+        Result rawResult = rawResults[i];
+        intent.putExtra(Intents.Scan.RESULT_PREFIX + i, rawResult.getText());
+        intent.putExtra(Intents.Scan.RESULT_FORMAT_PREFIX + i,
+                        rawResult.getBarcodeFormat().toString());
+        ResultPoint[] points = rawResult.getResultPoints();
+        if (points != null) {
+          List<ResultPoint> nonNullPoints = new ArrayList<ResultPoint>(points.length);
+          for (ResultPoint point : points) {
+            if (point != null) {
+              nonNullPoints.add(point);
+            }
+          }
+          float[] coordinates = new float[nonNullPoints.size() * 2];
+          for (int j = 0; j < nonNullPoints.size(); j++) {
+            coordinates[2 * j] = nonNullPoints.get(j).getX();
+            coordinates[2 * j + 1] = nonNullPoints.get(j).getY();
           }
+          intent.putExtra(Intents.Scan.RESULT_POINTS_PREFIX + i, coordinates);
         }
       }
-      sendReplyMessage(R.id.return_scan_result, intent, resultDurationMS);
+    }
+    return intent;
+  }
 
+  private Intent buildResultIntent(Result rawResult) {
+    // Hand back whatever action they requested - this can be changed to Intents.Scan.ACTION when
+    // the deprecated intent is retired.
+    Intent intent = new Intent(getIntent().getAction());
+    intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_WHEN_TASK_RESET);
+    intent.putExtra(Intents.Scan.RESULT, rawResult.toString());
+    intent.putExtra(Intents.Scan.RESULT_FORMAT, rawResult.getBarcodeFormat().toString());
+    byte[] rawBytes = rawResult.getRawBytes();
+    if (rawBytes != null && rawBytes.length > 0) {
+      intent.putExtra(Intents.Scan.RESULT_BYTES, rawBytes);
+    }
+    Map<ResultMetadataType,?> metadata = rawResult.getResultMetadata();
+    if (metadata != null) {
+      if (metadata.containsKey(ResultMetadataType.UPC_EAN_EXTENSION)) {
+        intent.putExtra(Intents.Scan.RESULT_UPC_EAN_EXTENSION,
+                        metadata.get(ResultMetadataType.UPC_EAN_EXTENSION).toString());
+      }
+      Number orientation = (Number) metadata.get(ResultMetadataType.ORIENTATION);
+      if (orientation != null) {
+        intent.putExtra(Intents.Scan.RESULT_ORIENTATION, orientation.intValue());
+      }
+      String ecLevel = (String) metadata.get(ResultMetadataType.ERROR_CORRECTION_LEVEL);
+      if (ecLevel != null) {
+        intent.putExtra(Intents.Scan.RESULT_ERROR_CORRECTION_LEVEL, ecLevel);
+      }
+      @SuppressWarnings("unchecked")
+      Iterable<byte[]> byteSegments = (Iterable<byte[]>) metadata.get(ResultMetadataType.BYTE_SEGMENTS);
+      if (byteSegments != null) {
+        int i = 0;
+        for (byte[] byteSegment : byteSegments) {
+          intent.putExtra(Intents.Scan.RESULT_BYTE_SEGMENTS_PREFIX + i, byteSegment);
+          i++;
+        }
+      }
+      PyramidLevel pyramidLevel = PyramidLevel.of(rawResult);
+      if (pyramidLevel != null) {
+        intent.putExtra(Intents.Scan.RESULT_PYRAMID_LEVEL, pyramidLevel.getLevel());
+      }
+    }
+    return intent;
   }
   
   private void sendReplyMessage(int id, Object arg, long delayMS) {
@@ -343,20 +563,33 @@ public final class CaptureActivity extends Activity implements SurfaceHolder.Cal
     }
   }
 
+  private FrameSource createFrameSource() {
+    if (camera2 && Build.VERSION.SDK_INT >= 21) {
+      return new Camera2FrameSource(getApplication());
+    }
+    return new LegacyFrameSource(getApplication());
+  }
+
+  /**
+   * Starts the preview, once both the camera has opened and the surface exists.
+   */
   private void initCamera(SurfaceHolder surfaceHolder) {
     if (surfaceHolder == null) {
       throw new IllegalStateException("No SurfaceHolder provided");
     }
-    if (cameraManager.isOpen()) {
-      Log.w(TAG, "initCamera() while already open -- late SurfaceView callback?");
+    if (!cameraOpened) {
+      // Called again when the camera has opened.
+      return;
+    }
+    if (handler != null) {
+      Log.w(TAG, "initCamera() while already previewing -- late SurfaceView callback?");
       return;
     }
     try {
-      cameraManager.openDriver(surfaceHolder);
+      cameraManager.setPreviewDisplay(surfaceHolder);
       // Creating the handler starts the preview, which can also throw a RuntimeException.
-      if (handler == null) {
-        handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet, cameraManager);
-      }
+      handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet,
+          decodeWorkerCount, cameraManager);
     } catch (IOException ioe) {
       Log.w(TAG, ioe);
       displayFrameworkBugMessageAndExit();
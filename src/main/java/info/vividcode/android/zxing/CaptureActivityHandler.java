@@ -20,11 +20,11 @@
 
 package info.vividcode.android.zxing;
 
-import android.graphics.BitmapFactory;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
 import info.vividcode.android.zxing.camera.CameraManager;
+import info.vividcode.android.zxing.decode.DecodeLatencies;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -47,9 +47,10 @@ public final class CaptureActivityHandler extends Handler {
   private static final String TAG = CaptureActivityHandler.class.getSimpleName();
 
   private final CaptureActivity activity;
-  private final DecodeThread decodeThread;
+  private final DecodeDispatcher decodeDispatcher;
   private State state;
   private final CameraManager cameraManager;
+  private final boolean continuousScanMode;
 
   private enum State {
     PREVIEW,
@@ -61,41 +62,65 @@ public final class CaptureActivityHandler extends Handler {
                          Collection<BarcodeFormat> decodeFormats,
                          Map<DecodeHintType,?> baseHints,
                          String characterSet,
+                         int decodeWorkerCount,
                          CameraManager cameraManager) {
     this.activity = activity;
-    decodeThread = new DecodeThread(activity, decodeFormats, baseHints, characterSet,
-        new ViewfinderResultPointCallback(activity.getViewfinderView()));
-    decodeThread.start();
+    decodeDispatcher = new DecodeDispatcher(activity, decodeFormats, baseHints, characterSet,
+        new ViewfinderResultPointCallback(activity.getViewfinderView()), decodeWorkerCount);
     state = State.SUCCESS;
+    continuousScanMode = activity.isContinuousScanMode();
 
     // Start ourselves capturing previews and decoding.
     this.cameraManager = cameraManager;
+    // One buffer for each worker and one for the mailbox, plus one for the camera to fill.
+    cameraManager.setPreviewBufferCount(decodeWorkerCount + 2);
     cameraManager.startPreview();
     restartPreviewAndDecode();
   }
 
   @Override
   public void handleMessage(Message message) {
+    if (message.what == R.id.decode_succeeded || message.what == R.id.decode_failed) {
+      // arg2 is the low bits of the time the message was sent; the difference wraps around.
+      decodeDispatcher.getDecodeLatencies().record(DecodeLatencies.Stage.MAIN_THREAD_HOP,
+          (int) System.nanoTime() - message.arg2);
+    }
     if (message.what == R.id.decode_succeeded) {
+        if (state != State.PREVIEW || decodeDispatcher.isStale(message.arg1)) {
+          // Another worker has already won.
+          Log.d(TAG, "Discarding stale decode result");
+          return;
+        }
+        // Several results come at once in multiple result mode.
+        Result[] rawResults = message.obj instanceof Result[] ?
+            (Result[]) message.obj : new Result[] { (Result) message.obj };
+        decodeDispatcher.getScanMetricsRecorder().recordResults(rawResults.length);
+        activity.handleScanMetrics(getScanMetrics(), false);
+        if (continuousScanMode) {
+          // Keep scanning. As for a failure, another frame is needed only with one-shot callbacks.
+          cameraManager.requestPreviewFrame(decodeDispatcher.getMailbox());
+          activity.handleContinuousDecode(rawResults);
+          return;
+        }
         Log.d(TAG, "Got decode succeeded message");
         state = State.SUCCESS;
+        cameraManager.cancelPreviewFrames();
+        decodeDispatcher.discardInFlight();
         Bundle bundle = message.getData();
         Bitmap barcode = null;
         float scaleFactor = 1.0f;
         if (bundle != null) {
-          byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-          if (compressedBitmap != null) {
-            barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-            // Mutable copy:
-            barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
-          }
+          // Mutable, and owned by us from now on.
+          barcode = bundle.getParcelable(DecodeThread.BARCODE_BITMAP);
           scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);          
         }
-        activity.handleDecode((Result) message.obj, barcode, scaleFactor);
+        activity.handleDecode(rawResults, barcode, scaleFactor);
     } else if (message.what == R.id.decode_failed) {
-        // We're decoding as fast as possible, so when one decode fails, start another.
-        state = State.PREVIEW;
-        cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+        // We're decoding as fast as possible, so when one decode fails, start another. This only
+        // matters with one-shot preview callbacks; otherwise frames keep coming anyway.
+        if (state == State.PREVIEW) {
+          cameraManager.requestPreviewFrame(decodeDispatcher.getMailbox());
+        }
     } else if (message.what == R.id.return_scan_result) {
         Log.d(TAG, "Got return scan result message");
         activity.setResult(Activity.RESULT_OK, (Intent) message.obj);
@@ -106,24 +131,26 @@ public final class CaptureActivityHandler extends Handler {
   public void quitSynchronously() {
     state = State.DONE;
     cameraManager.stopPreview();
-    Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
-    quit.sendToTarget();
-    try {
-      // Wait at most half a second; should be enough time, and onPause() will timeout quickly
-      decodeThread.join(500L);
-    } catch (InterruptedException e) {
-      // continue
-    }
+    // Wait at most half a second; should be enough time, and onPause() will timeout quickly
+    decodeDispatcher.quitSynchronously(500L);
+    activity.handleScanMetrics(getScanMetrics(), true);
 
     // Be absolutely sure we don't send any queued up messages
     removeMessages(R.id.decode_succeeded);
     removeMessages(R.id.decode_failed);
   }
 
+  /**
+   * @return The metrics of the session, which lasts as long as this handler.
+   */
+  ScanMetrics getScanMetrics() {
+    return decodeDispatcher.getScanMetricsRecorder().snapshot();
+  }
+
   private void restartPreviewAndDecode() {
     if (state == State.SUCCESS) {
       state = State.PREVIEW;
-      cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+      cameraManager.requestPreviewFrame(decodeDispatcher.getMailbox());
       activity.drawViewfinder();
     }
   }
@@ -20,6 +20,7 @@ import android.content.Intent;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
+import info.vividcode.android.zxing.decode.FrameChangeDetector;
 
 import java.util.Collection;
 
@@ -27,6 +28,18 @@ public class CaptureActivityIntents {
   private static final long DEFAULT_INTENT_RESULT_DURATION_MS = 1500L;
 
   private static final String FRONT_LIGHT_AUTO_MODE = "FRONT_LIGHT_AUTO_MODE";
+  private static final String DECODE_WORKER_COUNT = "DECODE_WORKER_COUNT";
+  private static final int DEFAULT_DECODE_WORKER_COUNT = 1;
+  private static final String UNCHANGED_FRAME_THRESHOLD = "UNCHANGED_FRAME_THRESHOLD";
+  private static final String MOTION_THRESHOLD = "MOTION_THRESHOLD";
+  private static final String PYRAMID_DECODE_MODE = "PYRAMID_DECODE_MODE";
+  private static final String CONTINUOUS_SCAN_MODE = "CONTINUOUS_SCAN_MODE";
+  private static final String DUPLICATE_SUPPRESSION_WINDOW_MS = "DUPLICATE_SUPPRESSION_WINDOW_MS";
+  private static final long DEFAULT_DUPLICATE_SUPPRESSION_WINDOW_MS = 3000L;
+  private static final String MULTIPLE_RESULT_MODE = "MULTIPLE_RESULT_MODE";
+  private static final String SCAN_METRICS_IN_RESULT = "SCAN_METRICS_IN_RESULT";
+  private static final String FRAME_RECORDING_FILE = "FRAME_RECORDING_FILE";
+  private static final String CAMERA2 = "CAMERA2";
 
   /**
    * Set barcode formats to scan for onto {@code Intent}.
@@ -136,6 +149,216 @@ public class CaptureActivityIntents {
     return (intent != null && intent.getBooleanExtra(FRONT_LIGHT_AUTO_MODE, false));
   }
 
+  /**
+   * Set the number of threads which decode preview frames in parallel.
+   * @param intent Target intent.
+   * @param count Number of decode threads. It must be positive.
+   */
+  public static void setDecodeWorkerCount(Intent intent, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("count must be positive: " + count);
+    }
+    intent.putExtra(DECODE_WORKER_COUNT, count);
+  }
+
+  /**
+   * Get the number of threads which decode preview frames in parallel.
+   * @param intent Target intent. It can be {@code null}.
+   * @return Number of decode threads retrieved from {@code intent} or default value.
+   */
+  public static int getDecodeWorkerCountOrDefaultValue(Intent intent) {
+    if (intent == null) return DEFAULT_DECODE_WORKER_COUNT;
+    int count = intent.getIntExtra(DECODE_WORKER_COUNT, DEFAULT_DECODE_WORKER_COUNT);
+    return (count > 0 ? count : DEFAULT_DECODE_WORKER_COUNT);
+  }
+
+  /**
+   * Set the threshold below which a frame is regarded as unchanged from a frame which failed to
+   * decode, and is skipped. The difference of frames is measured as the mean absolute difference
+   * of downsampled luminance, from 0 to 255.
+   * @param intent Target intent.
+   * @param threshold Threshold of difference. Zero disables skipping. It must not be negative.
+   */
+  public static void setUnchangedFrameThreshold(Intent intent, float threshold) {
+    if (threshold < 0.0f) {
+      throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+    }
+    intent.putExtra(UNCHANGED_FRAME_THRESHOLD, threshold);
+  }
+
+  /**
+   * Get the threshold below which a frame is regarded as unchanged.
+   * @param intent Target intent. It can be {@code null}.
+   * @return Threshold retrieved from {@code intent} or default value.
+   * @see #setUnchangedFrameThreshold(Intent, float)
+   */
+  public static float getUnchangedFrameThresholdOrDefaultValue(Intent intent) {
+    if (intent == null) return FrameChangeDetector.DEFAULT_UNCHANGED_THRESHOLD;
+    return intent.getFloatExtra(UNCHANGED_FRAME_THRESHOLD,
+        FrameChangeDetector.DEFAULT_UNCHANGED_THRESHOLD);
+  }
+
+  /**
+   * Set the threshold above which a frame is regarded as blurred by motion, and is deferred. The
+   * difference from the previous frame is measured as for
+   * {@link #setUnchangedFrameThreshold(Intent, float)}.
+   * @param intent Target intent.
+   * @param threshold Threshold of difference. Zero disables deferring. It must not be negative.
+   */
+  public static void setMotionThreshold(Intent intent, float threshold) {
+    if (threshold < 0.0f) {
+      throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+    }
+    intent.putExtra(MOTION_THRESHOLD, threshold);
+  }
+
+  /**
+   * Get the threshold above which a frame is regarded as blurred by motion.
+   * @param intent Target intent. It can be {@code null}.
+   * @return Threshold retrieved from {@code intent} or default value.
+   * @see #setMotionThreshold(Intent, float)
+   */
+  public static float getMotionThresholdOrDefaultValue(Intent intent) {
+    if (intent == null) return FrameChangeDetector.DEFAULT_MOTION_THRESHOLD;
+    return intent.getFloatExtra(MOTION_THRESHOLD, FrameChangeDetector.DEFAULT_MOTION_THRESHOLD);
+  }
+
+  /**
+   * Set pyramid decode mode true. In this mode, each frame is first decoded at a downsampled
+   * resolution, and at the full resolution only if that fails. It is faster for large barcodes.
+   * @param intent Target intent.
+   */
+  public static void setPyramidDecodeModeEnabled(Intent intent) {
+    intent.putExtra(PYRAMID_DECODE_MODE, true);
+  }
+
+  /**
+   * Get pyramid decode mode.
+   * @param intent Target intent.
+   */
+  public static boolean getPyramidDecodeMode(Intent intent) {
+    return (intent != null && intent.getBooleanExtra(PYRAMID_DECODE_MODE, false));
+  }
+
+  /**
+   * Set continuous scan mode true. In this mode, the activity keeps scanning after a barcode is
+   * found, and each result is passed to the listener set by
+   * {@link CaptureActivity#setContinuousScanListener(ContinuousScanListener)} instead of being
+   * returned as the result of the activity.
+   * @param intent Target intent.
+   */
+  public static void setContinuousScanModeEnabled(Intent intent) {
+    intent.putExtra(CONTINUOUS_SCAN_MODE, true);
+  }
+
+  /**
+   * Get continuous scan mode.
+   * @param intent Target intent.
+   */
+  public static boolean getContinuousScanMode(Intent intent) {
+    return (intent != null && intent.getBooleanExtra(CONTINUOUS_SCAN_MODE, false));
+  }
+
+  /**
+   * Set the window within which repeated reads of the same contents and format are suppressed in
+   * continuous scan mode. Each read restarts the window.
+   * @param intent Target intent.
+   * @param window Window in milliseconds. Zero disables suppression. It must not be negative.
+   */
+  public static void setDuplicateSuppressionWindowInMs(Intent intent, long window) {
+    if (window < 0L) {
+      throw new IllegalArgumentException("window must not be negative: " + window);
+    }
+    intent.putExtra(DUPLICATE_SUPPRESSION_WINDOW_MS, window);
+  }
+
+  /**
+   * Get the window within which repeated reads are suppressed in continuous scan mode.
+   * @param intent Target intent. It can be {@code null}.
+   * @return Window in milliseconds retrieved from {@code intent} or default value.
+   * @see #setDuplicateSuppressionWindowInMs(Intent, long)
+   */
+  public static long getDuplicateSuppressionWindowInMsOrDefaultValue(Intent intent) {
+    if (intent == null) return DEFAULT_DUPLICATE_SUPPRESSION_WINDOW_MS;
+    return intent.getLongExtra(DUPLICATE_SUPPRESSION_WINDOW_MS,
+        DEFAULT_DUPLICATE_SUPPRESSION_WINDOW_MS);
+  }
+
+  /**
+   * Set multiple result mode true. In this mode, all barcodes in a frame are returned at once, with
+   * their positions. See {@link Intents.Scan#RESULT_COUNT} for the result.
+   * @param intent Target intent.
+   */
+  public static void setMultipleResultModeEnabled(Intent intent) {
+    intent.putExtra(MULTIPLE_RESULT_MODE, true);
+  }
+
+  /**
+   * Get multiple result mode.
+   * @param intent Target intent.
+   */
+  public static boolean getMultipleResultMode(Intent intent) {
+    return (intent != null && intent.getBooleanExtra(MULTIPLE_RESULT_MODE, false));
+  }
+
+  /**
+   * Set the metrics of the scanning session to be put into the result, under
+   * {@link Intents.Scan#RESULT_METRICS}.
+   * @param intent Target intent.
+   */
+  public static void setScanMetricsInResultEnabled(Intent intent) {
+    intent.putExtra(SCAN_METRICS_IN_RESULT, true);
+  }
+
+  /**
+   * Get whether the metrics of the scanning session are put into the result.
+   * @param intent Target intent.
+   */
+  public static boolean getScanMetricsInResult(Intent intent) {
+    return (intent != null && intent.getBooleanExtra(SCAN_METRICS_IN_RESULT, false));
+  }
+
+  /**
+   * Set the file to which preview frames are appended while scanning, for debugging. The file can
+   * be replayed off the device with {@link info.vividcode.android.zxing.decode.FrameReplayer}.
+   * Recording costs a copy of each decoded frame, and the file grows by its Y plane.
+   * @param intent Target intent.
+   * @param path Path of the file, which the activity must be able to write to.
+   */
+  public static void setFrameRecordingFile(Intent intent, String path) {
+    intent.putExtra(FRAME_RECORDING_FILE, path);
+  }
+
+  /**
+   * Get the file to which preview frames are appended while scanning.
+   * @param intent Target intent. It can be {@code null}.
+   * @return Path of the file if specified, or {@code null} otherwise.
+   * @see #setFrameRecordingFile(Intent, String)
+   */
+  public static String getFrameRecordingFileOrNull(Intent intent) {
+    if (intent == null) return null;
+    return intent.getStringExtra(FRAME_RECORDING_FILE);
+  }
+
+  /**
+   * Set preview frames to be taken with the {@code android.hardware.camera2} API, on which the Y
+   * plane of each frame is decoded without being copied out of the camera. It is used only on API
+   * level 21 and above; the legacy camera API is used otherwise.
+   * @param intent Target intent.
+   */
+  public static void setCamera2Enabled(Intent intent) {
+    intent.putExtra(CAMERA2, true);
+  }
+
+  /**
+   * Get whether preview frames are taken with the {@code android.hardware.camera2} API if
+   * available.
+   * @param intent Target intent.
+   */
+  public static boolean getCamera2(Intent intent) {
+    return (intent != null && intent.getBooleanExtra(CAMERA2, false));
+  }
+
   /**
    * Set prompt message onto {@code Intent}.
    * @param intent Target intent.
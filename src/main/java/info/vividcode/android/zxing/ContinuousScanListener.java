@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import android.content.Intent;
+
+/**
+ * Receives results of {@link CaptureActivity} in continuous scan mode, in which the activity keeps
+ * scanning instead of finishing with the first result.
+ *
+ * @see CaptureActivity#setContinuousScanListener(ContinuousScanListener)
+ * @see CaptureActivityIntents#setContinuousScanModeEnabled(Intent)
+ */
+public interface ContinuousScanListener {
+
+  /**
+   * Called on the main thread for each barcode which is not a duplicate of a recent one.
+   *
+   * @param data The result, with the same extras as the result of a single scan, such as
+   *             {@link Intents.Scan#RESULT} and {@link Intents.Scan#RESULT_FORMAT}.
+   */
+  void onScanResult(Intent data);
+
+}
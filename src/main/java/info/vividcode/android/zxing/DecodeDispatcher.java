@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ResultPointCallback;
+import info.vividcode.android.zxing.camera.CameraFrame;
+import info.vividcode.android.zxing.camera.PreviewFrameMailbox;
+import info.vividcode.android.zxing.decode.DecodeLatencies;
+import info.vividcode.android.zxing.decode.DecodeSession;
+import info.vividcode.android.zxing.decode.FrameQualityGate;
+import info.vividcode.android.zxing.decode.FrameRecorder;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns a pool of {@link DecodeThread}s and the mailbox from which they take preview frames.
+ * Whichever worker is free takes the latest frame, and each worker has its own
+ * {@link info.vividcode.android.zxing.decode.DecodeEngine} and hints, so frames are decoded in
+ * parallel. The engines share one {@link DecodeSession}, from which they learn which formats are
+ * being scanned. In multiple result mode, the sub-regions around a barcode are searched on another
+ * pool, which all workers share.
+ *
+ * @author NOBUOKA Yu
+ */
+final class DecodeDispatcher {
+
+  private static final String TAG = DecodeDispatcher.class.getSimpleName();
+  private static final int MAX_SUB_REGION_THREADS = 4;
+
+  private final CaptureActivity activity;
+  private final DecodeThread[] workers;
+  private final PreviewFrameMailbox mailbox;
+  private final DecodeSession decodeSession;
+  private final DecodeLatencies decodeLatencies;
+  private final ScanMetricsRecorder scanMetricsRecorder;
+  private final ExecutorService subRegionExecutor;
+  private final FrameRecorder frameRecorder;
+
+  DecodeDispatcher(CaptureActivity activity,
+                   Collection<BarcodeFormat> decodeFormats,
+                   Map<DecodeHintType,?> baseHints,
+                   String characterSet,
+                   ResultPointCallback resultPointCallback,
+                   int workerCount) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+    }
+    this.activity = activity;
+    mailbox = new PreviewFrameMailbox(workerCount);
+    scanMetricsRecorder =
+        new ScanMetricsRecorder(mailbox, activity.getCameraManager().getOpenRequestNanos());
+    decodeLatencies = activity.getDecodeLatencies();
+    subRegionExecutor = activity.isMultipleResultMode() ? createSubRegionExecutor() : null;
+    decodeSession = new DecodeSession(activity.isPyramidDecodeMode(),
+        activity.getUnchangedFrameThreshold(), activity.getMotionThreshold(), decodeLatencies,
+        subRegionExecutor);
+    frameRecorder = createFrameRecorder(activity.getFrameRecordingFile());
+    workers = new DecodeThread[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new DecodeThread(activity, this, i, decodeFormats, baseHints, characterSet,
+          resultPointCallback);
+      workers[i].start();
+    }
+    Log.i(TAG, "Started " + workerCount + " decode worker(s)");
+  }
+
+  /**
+   * @return The mailbox which preview frames for the workers must be posted to.
+   */
+  PreviewFrameMailbox getMailbox() {
+    return mailbox;
+  }
+
+  /**
+   * @return The session which the decode engines of all workers share.
+   */
+  DecodeSession getDecodeSession() {
+    return decodeSession;
+  }
+
+  /**
+   * @return The recorder of the metrics of the session, which lasts as long as this object.
+   */
+  ScanMetricsRecorder getScanMetricsRecorder() {
+    return scanMetricsRecorder;
+  }
+
+  /**
+   * @return The latencies of the session, which all workers and the main thread record into.
+   */
+  DecodeLatencies getDecodeLatencies() {
+    return decodeLatencies;
+  }
+
+  /**
+   * @return The recorder of the frames which the workers take, or {@code null} if frames are not
+   *         recorded.
+   */
+  FrameRecorder getFrameRecorder() {
+    return frameRecorder;
+  }
+
+  private static FrameRecorder createFrameRecorder(String path) {
+    if (path == null) {
+      return null;
+    }
+    try {
+      return new FrameRecorder(new File(path), FrameRecorder.DEFAULT_BUFFER_COUNT);
+    } catch (IOException e) {
+      // Recording is for debugging, so scanning goes on without it.
+      Log.w(TAG, "Can't record frames to " + path, e);
+      return null;
+    }
+  }
+
+  private static ExecutorService createSubRegionExecutor() {
+    int threadCount = Math.min(MAX_SUB_REGION_THREADS, Runtime.getRuntime().availableProcessors());
+    return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      private final AtomicInteger threadIndex = new AtomicInteger();
+      @Override
+      public Thread newThread(Runnable r) {
+        return new Thread(r, "SubRegionDecodeThread-" + threadIndex.getAndIncrement());
+      }
+    });
+  }
+
+  /**
+   * @param frameGeneration The generation in which a frame was posted.
+   * @return Whether results of the frame are stale, as it was posted before a discard.
+   * @see CameraFrame#getGeneration()
+   */
+  boolean isStale(int frameGeneration) {
+    return frameGeneration != mailbox.getGeneration();
+  }
+
+  /**
+   * Makes all frames which are being decoded now stale, and drops the frame waiting in the
+   * mailbox. Workers don't bother to make thumbnails for stale frames, and results of stale
+   * frames must be discarded.
+   */
+  void discardInFlight() {
+    CameraFrame waiting = mailbox.discard();
+    if (waiting != null) {
+      activity.getCameraManager().releasePreviewFrame(waiting);
+    }
+  }
+
+  /**
+   * Stops all workers and waits for them.
+   *
+   * @param timeoutMs The maximum time to wait for all workers in total.
+   */
+  void quitSynchronously(long timeoutMs) {
+    discardInFlight();
+    mailbox.close();
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    for (DecodeThread worker : workers) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0L) {
+        Log.w(TAG, "Timed out while waiting for decode workers");
+        break;
+      }
+      try {
+        worker.join(remaining);
+      } catch (InterruptedException e) {
+        // continue
+      }
+    }
+    if (subRegionExecutor != null) {
+      // Searches which are still running are finished, as a worker may be waiting for them.
+      subRegionExecutor.shutdown();
+    }
+    if (frameRecorder != null) {
+      try {
+        frameRecorder.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to record frames", e);
+      }
+      Log.i(TAG, "Frames recorded: " + frameRecorder.getRecordedFrameCount() +
+          ", dropped: " + frameRecorder.getDroppedFrameCount());
+    }
+    Log.i(TAG, "Frames dropped in favor of newer ones: " + mailbox.getDroppedFrameCount());
+    FrameQualityGate frameQualityGate = decodeSession.getFrameQualityGate();
+    Log.i(TAG, "Frames decoded: " + frameQualityGate.getDecodedFrameCount() +
+        ", skipped for low quality: " + frameQualityGate.getSkippedFrameCount());
+    Log.i(TAG, "Learned format order: " + decodeSession.getFormatHitRates().getFormatOrder());
+    Log.i(TAG, "Latencies: " + decodeLatencies);
+    Log.i(TAG, "Metrics: " + scanMetricsRecorder.snapshot());
+  }
+
+}
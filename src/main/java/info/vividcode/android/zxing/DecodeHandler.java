@@ -21,101 +21,157 @@
 package info.vividcode.android.zxing;
 
 import android.graphics.Bitmap;
-import com.google.zxing.BinaryBitmap;
+import android.graphics.Rect;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import info.vividcode.android.zxing.camera.CameraFrame;
+import info.vividcode.android.zxing.camera.CameraManager;
+import info.vividcode.android.zxing.decode.DecodeEngine;
+import info.vividcode.android.zxing.decode.DecodeLatencies;
+import info.vividcode.android.zxing.decode.PreviewFrame;
+import info.vividcode.android.zxing.decode.ReusableYUVLuminanceSource;
 
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.ShortBuffer;
 import java.util.Map;
 
-final class DecodeHandler extends Handler {
+/**
+ * Decodes preview frames taken by a {@link DecodeThread} with a {@link DecodeEngine}, and reports
+ * the outcome to the handler of {@link CaptureActivity}. This is the Android side of decoding: it
+ * gives the engine the framing rect and the region of interest of {@link CameraManager}, renders
+ * the thumbnail, and sends the results as {@link Message}s. Each instance is confined to its
+ * thread.
+ */
+final class DecodeHandler {
 
   private static final String TAG = DecodeHandler.class.getSimpleName();
 
   private final CaptureActivity activity;
-  private final MultiFormatReader multiFormatReader;
-  private boolean running = true;
+  private final DecodeDispatcher dispatcher;
+  private final DecodeEngine engine;
+  private final RegionResultPointCallback resultPointCallback;
+  private final DecodeLatencies latencies;
+  private final PreviewFrame frame = new PreviewFrame();
+  private final Rect region = new Rect();
+  private final boolean thumbnailNeeded;
+  private ShortBuffer thumbnailPixels;
 
-  DecodeHandler(CaptureActivity activity, Map<DecodeHintType,Object> hints) {
-    multiFormatReader = new MultiFormatReader();
-    multiFormatReader.setHints(hints);
+  DecodeHandler(CaptureActivity activity, DecodeDispatcher dispatcher,
+                Map<DecodeHintType,Object> hints,
+                final RegionResultPointCallback resultPointCallback) {
     this.activity = activity;
-  }
-
-  @Override
-  public void handleMessage(Message message) {
-    if (!running) {
-      return;
-    }
-    if (message.what == R.id.decode) {
-        decode((byte[]) message.obj, message.arg1, message.arg2);
-    } else if (message.what == R.id.quit) {
-        running = false;
-        Looper.myLooper().quit();
-    }
+    this.dispatcher = dispatcher;
+    this.resultPointCallback = resultPointCallback;
+    latencies = dispatcher.getDecodeLatencies();
+    engine = new DecodeEngine(dispatcher.getDecodeSession(), hints,
+        new DecodeEngine.CropListener() {
+          @Override
+          public void onCrop(ReusableYUVLuminanceSource source, int cropScale) {
+            resultPointCallback.setCrop(source, cropScale);
+          }
+        });
+    // The thumbnail is shown only while the result is displayed, which continuous scan mode
+    // doesn't do.
+    thumbnailNeeded = activity.getResultDisplayDurationMs() > 0L && !activity.isContinuousScanMode();
   }
 
   /**
-   * Decode the data within the viewfinder rectangle, and time how long it took. For efficiency,
-   * reuse the same reader objects from one decode to the next.
+   * Decode the data within the viewfinder rectangle, and time how long it took.
    *
-   * @param data   The YUV preview frame.
-   * @param width  The width of the preview frame.
-   * @param height The height of the preview frame.
+   * @param cameraFrame The frame taken from the mailbox, which is released here.
+   * @param generation The generation of {@link DecodeDispatcher} in which the frame was posted.
    */
-  private void decode(byte[] data, int width, int height) {
+  void decode(CameraFrame cameraFrame, int generation) {
     long start = System.currentTimeMillis();
-    Result rawResult = null;
-    PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data, width, height);
-    if (source != null) {
-      BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-      try {
-        rawResult = multiFormatReader.decodeWithState(bitmap);
-      } catch (ReaderException re) {
-        // continue
-      } finally {
-        multiFormatReader.reset();
+    CameraManager cameraManager = activity.getCameraManager();
+    Rect framingRect = cameraManager.getFramingRectInPreview();
+    DecodeEngine.Outcome outcome = DecodeEngine.Outcome.SKIPPED;
+    if (framingRect != null) {
+      if (cameraFrame.getData() != null) {
+        frame.set(cameraFrame.getData(), cameraFrame.getWidth(), cameraFrame.getHeight());
+      } else {
+        // The Y plane is read as it is, without being copied out whole.
+        frame.set(cameraFrame.getLuminance(), cameraFrame.getRowStride(),
+            cameraFrame.getPixelStride(), cameraFrame.getWidth(), cameraFrame.getHeight());
+      }
+      frame.setFramingRect(framingRect.left, framingRect.top, framingRect.width(),
+          framingRect.height())
+          .setRotation(cameraManager.getPreviewRotation());
+      // The engine decodes the whole framing rect in multiple result mode.
+      if (!activity.isMultipleResultMode() &&
+          cameraManager.getRegionOfInterestTracker().nextRegion(framingRect, region)) {
+        frame.setRegion(region.left, region.top, region.width(), region.height());
       }
+      resultPointCallback.setFramingRect(framingRect);
+      outcome = engine.decode(frame);
+    }
+    if (outcome != DecodeEngine.Outcome.SKIPPED) {
+      dispatcher.getScanMetricsRecorder().recordFrameDecoded(
+          outcome == DecodeEngine.Outcome.FOUND);
     }
+    Result rawResult = engine.getResult();
+    Result[] rawResults = engine.getResults();
 
     Handler handler = activity.getHandler();
+    if (rawResult != null && dispatcher.isStale(generation)) {
+      // Too late; another worker has won.
+      rawResult = null;
+    }
     if (rawResult != null) {
+      ReusableYUVLuminanceSource source = engine.getSource();
+      cameraManager.getRegionOfInterestTracker().addResultPoints(rawResult.getResultPoints(), source);
       // Don't log the barcode contents for security.
       long end = System.currentTimeMillis();
       Log.d(TAG, "Found barcode in " + (end - start) + " ms");
+      Bundle bundle = null;
+      if (handler != null && thumbnailNeeded) {
+        long thumbnailStart = System.nanoTime();
+        bundle = new Bundle();
+        bundleThumbnail(source, bundle);
+        latencies.record(DecodeLatencies.Stage.THUMBNAIL, System.nanoTime() - thumbnailStart);
+      }
+      // The preview data is not referred to from here on, so its buffer can be reused.
+      cameraManager.releasePreviewFrame(cameraFrame);
       if (handler != null) {
-        Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
-        Bundle bundle = new Bundle();
-        bundleThumbnail(source, bundle);        
+        Message message = Message.obtain(handler, R.id.decode_succeeded, generation, sendTime(),
+            rawResults != null ? rawResults : rawResult);
         message.setData(bundle);
         message.sendToTarget();
       }
     } else {
+      cameraManager.releasePreviewFrame(cameraFrame);
       if (handler != null) {
-        Message message = Message.obtain(handler, R.id.decode_failed);
+        Message message = Message.obtain(handler, R.id.decode_failed, generation, sendTime());
         message.sendToTarget();
       }
     }
   }
 
-  private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
-    int[] pixels = source.renderThumbnail();
+  /**
+   * @return The low bits of {@link System#nanoTime()}, which are enough for the main thread to
+   *         measure a delay of up to two seconds without allocating anything.
+   * @see CaptureActivityHandler#handleMessage(Message)
+   */
+  static int sendTime() {
+    return (int) System.nanoTime();
+  }
+
+  private void bundleThumbnail(ReusableYUVLuminanceSource source, Bundle bundle) {
     int width = source.getThumbnailWidth();
     int height = source.getThumbnailHeight();
-    Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
-    ByteArrayOutputStream out = new ByteArrayOutputStream();    
-    bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
-    bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
+    if (thumbnailPixels == null || thumbnailPixels.capacity() != width * height) {
+      thumbnailPixels = ShortBuffer.allocate(width * height);
+    }
+    source.renderThumbnail(thumbnailPixels.array());
+    thumbnailPixels.rewind();
+    Bitmap bitmap = activity.getThumbnailBitmapPool().acquire(width, height);
+    bitmap.copyPixelsFromBuffer(thumbnailPixels);
+    // Not parceled within the process, so the bitmap itself is handed over.
+    bundle.putParcelable(DecodeThread.BARCODE_BITMAP, bitmap);
     bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
   }
 
@@ -24,18 +24,24 @@ import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.ResultPointCallback;
 
-import android.os.Handler;
-import android.os.Looper;
+import info.vividcode.android.zxing.camera.CameraFrame;
+import info.vividcode.android.zxing.camera.CameraManager;
+import info.vividcode.android.zxing.camera.PreviewFrameMailbox;
+import info.vividcode.android.zxing.decode.DecodeLatencies;
+import info.vividcode.android.zxing.decode.FrameRecorder;
+
+import android.graphics.Rect;
 import android.util.Log;
 
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
 
 /**
- * This thread does all the heavy lifting of decoding the images.
+ * This thread does all the heavy lifting of decoding the images. There may be several of these
+ * working in parallel, each one taking the latest frame from the mailbox of
+ * {@link DecodeDispatcher} whenever it is free.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -45,18 +51,23 @@ final class DecodeThread extends Thread {
   public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
 
   private final CaptureActivity activity;
+  private final DecodeDispatcher dispatcher;
+  private final int workerIndex;
   private final Map<DecodeHintType,Object> hints;
-  private Handler handler;
-  private final CountDownLatch handlerInitLatch;
+  private final RegionResultPointCallback regionResultPointCallback;
 
   DecodeThread(CaptureActivity activity,
+               DecodeDispatcher dispatcher,
+               int workerIndex,
                Collection<BarcodeFormat> decodeFormats,
                Map<DecodeHintType,?> baseHints,
                String characterSet,
                ResultPointCallback resultPointCallback) {
 
+    super("DecodeThread-" + workerIndex);
     this.activity = activity;
-    handlerInitLatch = new CountDownLatch(1);
+    this.dispatcher = dispatcher;
+    this.workerIndex = workerIndex;
 
     hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
     if (baseHints != null) {
@@ -75,25 +86,54 @@ final class DecodeThread extends Thread {
     if (characterSet != null) {
       hints.put(DecodeHintType.CHARACTER_SET, characterSet);
     }
-    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+    // Candidate points are relative to the crop each worker decodes, so each has its own callback.
+    regionResultPointCallback = new RegionResultPointCallback(
+        activity.getCameraManager().getRegionOfInterestTracker(), resultPointCallback);
+    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, regionResultPointCallback);
     Log.i("DecodeThread", "Hints: " + hints);
   }
 
-  Handler getHandler() {
-    try {
-      handlerInitLatch.await();
-    } catch (InterruptedException ie) {
-      // continue?
+  @Override
+  public void run() {
+    DecodeHandler handler = new DecodeHandler(activity, dispatcher, hints,
+        regionResultPointCallback);
+    PreviewFrameMailbox mailbox = dispatcher.getMailbox();
+    DecodeLatencies latencies = dispatcher.getDecodeLatencies();
+    FrameRecorder recorder = dispatcher.getFrameRecorder();
+    CameraFrame frame;
+    long waitStart = System.nanoTime();
+    while ((frame = mailbox.take(workerIndex)) != null) {
+      long takenTime = System.nanoTime();
+      latencies.record(DecodeLatencies.Stage.FRAME_WAIT, takenTime - waitStart);
+      if (recorder != null) {
+        record(recorder, frame, takenTime);
+      }
+      // The generation in which the frame was posted, as the mailbox may be discarded while it is
+      // being taken.
+      handler.decode(frame, frame.getGeneration());
+      waitStart = System.nanoTime();
     }
-    return handler;
   }
 
-  @Override
-  public void run() {
-    Looper.prepare();
-    handler = new DecodeHandler(activity, hints);
-    handlerInitLatch.countDown();
-    Looper.loop();
+  /**
+   * Records a frame as it is about to be decoded, with the framing rect and the rotation which it
+   * is decoded at.
+   */
+  private void record(FrameRecorder recorder, CameraFrame frame, long takenTime) {
+    CameraManager cameraManager = activity.getCameraManager();
+    Rect framingRect = cameraManager.getFramingRectInPreview();
+    if (framingRect == null) {
+      return;
+    }
+    if (frame.getData() != null) {
+      recorder.record(frame.getData(), frame.getWidth(), frame.getHeight(), takenTime,
+          framingRect.left, framingRect.top, framingRect.width(), framingRect.height(),
+          cameraManager.getPreviewRotation());
+    } else {
+      recorder.record(frame.getLuminance(), frame.getRowStride(), frame.getPixelStride(),
+          frame.getWidth(), frame.getHeight(), takenTime, framingRect.left, framingRect.top,
+          framingRect.width(), framingRect.height(), cameraManager.getPreviewRotation());
+    }
   }
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import com.google.zxing.Result;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Suppresses repeated reads of a barcode in continuous scan mode. A result is a duplicate if a
+ * result of the same contents and format has been seen within the window. Each read of a barcode
+ * restarts its window, so a barcode which stays in front of the camera is reported only once.
+ *
+ * Seen results are kept in a bounded LRU cache. As the least recently seen entry comes first,
+ * expired entries are dropped from the head of the cache.
+ *
+ * @author NOBUOKA Yu
+ */
+final class DuplicateResultFilter {
+
+  static final int DEFAULT_MAX_SIZE = 64;
+
+  private final long windowMs;
+  private final LinkedHashMap<String,Long> lastSeenTimes;
+
+  /**
+   * @param windowMs The window in milliseconds. Zero disables suppression.
+   * @param maxSize The maximum number of barcodes to remember.
+   */
+  DuplicateResultFilter(long windowMs, final int maxSize) {
+    this.windowMs = windowMs;
+    lastSeenTimes = new LinkedHashMap<String,Long>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,Long> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Records a read of a result.
+   *
+   * @param result The result which has been read.
+   * @param now The current time in milliseconds, from a monotonic clock.
+   * @return {@code true} if the result should be suppressed.
+   */
+  boolean isDuplicate(Result result, long now) {
+    if (windowMs <= 0L) {
+      return false;
+    }
+    removeExpired(now);
+    // Format names contain no colon, so the key is unambiguous.
+    String key = result.getBarcodeFormat().name() + ':' + result.getText();
+    Long lastSeen = lastSeenTimes.put(key, now);
+    return lastSeen != null;
+  }
+
+  /**
+   * Forgets all results.
+   */
+  void clear() {
+    lastSeenTimes.clear();
+  }
+
+  int size() {
+    return lastSeenTimes.size();
+  }
+
+  private void removeExpired(long now) {
+    Iterator<Long> it = lastSeenTimes.values().iterator();
+    while (it.hasNext()) {
+      if (now - it.next() < windowMs) {
+        break;
+      }
+      it.remove();
+    }
+  }
+
+}
@@ -146,6 +146,49 @@ public final class Intents {
      */
     public static final String RESULT_BYTE_SEGMENTS_PREFIX = "SCAN_RESULT_BYTE_SEGMENTS_";
 
+    /**
+     * Key for the pyramid level at which the barcode was decoded, if pyramid decode mode is enabled.
+     * Level 0 is the full resolution, and level n is downsampled by 2^n.
+     * Call {@link android.content.Intent#getIntExtra(String, int)} with {@link #RESULT_PYRAMID_LEVEL}.
+     */
+    public static final String RESULT_PYRAMID_LEVEL = "SCAN_RESULT_PYRAMID_LEVEL";
+
+    /**
+     * Key for the number of barcodes found in a frame, if multiple result mode is enabled. The first
+     * one is also under the keys for a single result, such as {@link #RESULT}.
+     * Call {@link android.content.Intent#getIntExtra(String, int)} with {@link #RESULT_COUNT}.
+     */
+    public static final String RESULT_COUNT = "SCAN_RESULT_COUNT";
+
+    /**
+     * Prefix for keys that map to the contents of each barcode found in multiple result mode, under a
+     * series of keys formed by adding 0, 1, 2, ... to this prefix, up to {@link #RESULT_COUNT}.
+     * Call {@link android.content.Intent#getStringExtra(String)} with these keys.
+     */
+    public static final String RESULT_PREFIX = "SCAN_RESULT_";
+
+    /**
+     * Prefix for keys that map to the format of each barcode found in multiple result mode.
+     * Call {@link android.content.Intent#getStringExtra(String)} with these keys.
+     */
+    public static final String RESULT_FORMAT_PREFIX = "SCAN_RESULT_FORMAT_";
+
+    /**
+     * Prefix for keys that map to the position of each barcode found in multiple result mode: its
+     * result points as x and y coordinates in turn, in preview pixels relative to the scanning
+     * rectangle, which is upright as on the display.
+     * Call {@link android.content.Intent#getFloatArrayExtra(String)} with these keys.
+     */
+    public static final String RESULT_POINTS_PREFIX = "SCAN_RESULT_POINTS_";
+
+    /**
+     * Key for the metrics of the scanning session up to the result, if requested by
+     * {@link info.vividcode.android.zxing.CaptureActivityIntents#setScanMetricsInResultEnabled}.
+     * Call {@link android.content.Intent#getBundleExtra(String)} with {@link #RESULT_METRICS}, and
+     * {@link info.vividcode.android.zxing.ScanMetrics#fromBundle} to read it.
+     */
+    public static final String RESULT_METRICS = "SCAN_RESULT_METRICS";
+
     private Scan() {
     }
   }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import android.graphics.Rect;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import info.vividcode.android.zxing.camera.RegionOfInterestTracker;
+import info.vividcode.android.zxing.decode.FrameRotation;
+import info.vividcode.android.zxing.decode.ReusableYUVLuminanceSource;
+
+/**
+ * Receives candidate points of one decode thread, which are relative to the crop being decoded.
+ * They are reported to the {@link RegionOfInterestTracker} in preview frame coordinates, and to
+ * the viewfinder relative to the framing rect and upright as on the display, as it expects.
+ *
+ * @author NOBUOKA Yu
+ */
+final class RegionResultPointCallback implements ResultPointCallback {
+
+  private final RegionOfInterestTracker tracker;
+  private final ResultPointCallback viewfinderCallback;
+  private ReusableYUVLuminanceSource source;
+  private int cropScale = 1;
+  private final Rect framingRect = new Rect();
+  private boolean cropIsFramingRect;
+
+  RegionResultPointCallback(RegionOfInterestTracker tracker,
+                            ResultPointCallback viewfinderCallback) {
+    this.tracker = tracker;
+    this.viewfinderCallback = viewfinderCallback;
+  }
+
+  /**
+   * Sets the framing rect of the frame which is about to be decoded.
+   */
+  void setFramingRect(Rect framingRect) {
+    this.framingRect.set(framingRect);
+  }
+
+  /**
+   * Sets where the crop which is about to be decoded lies in the preview frame.
+   *
+   * @param source The source of the crop. A downsampled crop covers the same rectangle.
+   * @param cropScale The number of frame pixels per pixel of the crop, which is more than one if
+   *                  the crop has been downsampled.
+   * @see info.vividcode.android.zxing.decode.DecodeEngine.CropListener
+   */
+  void setCrop(ReusableYUVLuminanceSource source, int cropScale) {
+    this.source = source;
+    this.cropScale = cropScale;
+    cropIsFramingRect = cropScale == 1 && source.getLeft() == framingRect.left &&
+        source.getTop() == framingRect.top && source.getCropWidth() == framingRect.width() &&
+        source.getCropHeight() == framingRect.height();
+  }
+
+  @Override
+  public void foundPossibleResultPoint(ResultPoint point) {
+    float sourceX = point.getX() * cropScale;
+    float sourceY = point.getY() * cropScale;
+    float x = source.toFrameX(sourceX, sourceY);
+    float y = source.toFrameY(sourceX, sourceY);
+    tracker.addCandidatePoint(x, y);
+    if (viewfinderCallback != null) {
+      if (cropIsFramingRect) {
+        viewfinderCallback.foundPossibleResultPoint(point);
+      } else {
+        // Relative to the framing rect, rotated as the source is.
+        x -= framingRect.left;
+        y -= framingRect.top;
+        int width = framingRect.width();
+        int height = framingRect.height();
+        int rotation = source.getRotation();
+        viewfinderCallback.foundPossibleResultPoint(new ResultPoint(
+            FrameRotation.fromFrameX(x, y, width, height, rotation),
+            FrameRotation.fromFrameY(x, y, width, height, rotation)));
+      }
+    }
+  }
+
+}
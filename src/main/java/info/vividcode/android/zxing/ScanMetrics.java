@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import android.os.Bundle;
+
+/**
+ * A snapshot of the throughput of a scanning session, which lasts while the camera preview runs:
+ * from when the activity starts scanning until it finishes or is paused.
+ *
+ * @author NOBUOKA Yu
+ * @see CaptureActivity#setScanMetricsListener(ScanMetricsListener)
+ */
+public final class ScanMetrics {
+
+  private static final String FRAMES_DELIVERED = "FRAMES_DELIVERED";
+  private static final String FRAMES_DROPPED = "FRAMES_DROPPED";
+  private static final String FRAMES_DECODED = "FRAMES_DECODED";
+  private static final String FRAMES_WITH_BARCODE = "FRAMES_WITH_BARCODE";
+  private static final String RESULT_COUNT = "RESULT_COUNT";
+  private static final String ELAPSED_MS = "ELAPSED_MS";
+  private static final String TIME_TO_FIRST_RESULT_MS = "TIME_TO_FIRST_RESULT_MS";
+  private static final String TIME_TO_FIRST_PREVIEW_FRAME_MS = "TIME_TO_FIRST_PREVIEW_FRAME_MS";
+
+  private final long framesDelivered;
+  private final long framesDropped;
+  private final long framesDecoded;
+  private final long framesWithBarcode;
+  private final long resultCount;
+  private final long elapsedMs;
+  private final long timeToFirstResultMs;
+  private final long timeToFirstPreviewFrameMs;
+
+  ScanMetrics(long framesDelivered, long framesDropped, long framesDecoded,
+              long framesWithBarcode, long resultCount, long elapsedMs, long timeToFirstResultMs,
+              long timeToFirstPreviewFrameMs) {
+    this.framesDelivered = framesDelivered;
+    this.framesDropped = framesDropped;
+    this.framesDecoded = framesDecoded;
+    this.framesWithBarcode = framesWithBarcode;
+    this.resultCount = resultCount;
+    this.elapsedMs = elapsedMs;
+    this.timeToFirstResultMs = timeToFirstResultMs;
+    this.timeToFirstPreviewFrameMs = timeToFirstPreviewFrameMs;
+  }
+
+  /**
+   * @return The number of preview frames which the camera has delivered.
+   */
+  public long getFramesDelivered() {
+    return framesDelivered;
+  }
+
+  /**
+   * @return The number of frames which were replaced by newer ones before a decoder took them.
+   */
+  public long getFramesDropped() {
+    return framesDropped;
+  }
+
+  /**
+   * @return The number of frames which the readers have looked at. Frames which were skipped as
+   *         unchanged, moving or of low quality are not counted.
+   */
+  public long getFramesDecoded() {
+    return framesDecoded;
+  }
+
+  /**
+   * @return The number of decoded frames in which a barcode was found.
+   */
+  public long getFramesWithBarcode() {
+    return framesWithBarcode;
+  }
+
+  /**
+   * @return The number of results which have been reported. Results of frames which lost to
+   *         another decode thread are not counted.
+   */
+  public long getResultCount() {
+    return resultCount;
+  }
+
+  /**
+   * @return The time since the session started, in milliseconds.
+   */
+  public long getElapsedMs() {
+    return elapsedMs;
+  }
+
+  /**
+   * @return The time from the start of the session to the first result in milliseconds, or -1 if
+   *         there has been no result.
+   */
+  public long getTimeToFirstResultMs() {
+    return timeToFirstResultMs;
+  }
+
+  /**
+   * @return The time from when the camera was asked to open to when the first preview frame was
+   *         delivered in milliseconds, or -1 if no frame has been delivered. This includes opening
+   *         and configuring the camera, and waiting for the preview surface.
+   */
+  public long getTimeToFirstPreviewFrameMs() {
+    return timeToFirstPreviewFrameMs;
+  }
+
+  /**
+   * @return The ratio of decoded frames in which a barcode was found, or 0 if no frame was decoded.
+   */
+  public float getDecodeSuccessRate() {
+    return framesDecoded == 0L ? 0.0f : (float) framesWithBarcode / framesDecoded;
+  }
+
+  /**
+   * @return The number of frames decoded per second.
+   */
+  public float getEffectiveFps() {
+    return elapsedMs == 0L ? 0.0f : framesDecoded * 1000.0f / elapsedMs;
+  }
+
+  /**
+   * @return The metrics as a bundle, as put under {@link Intents.Scan#RESULT_METRICS}.
+   */
+  public Bundle toBundle() {
+    Bundle bundle = new Bundle();
+    bundle.putLong(FRAMES_DELIVERED, framesDelivered);
+    bundle.putLong(FRAMES_DROPPED, framesDropped);
+    bundle.putLong(FRAMES_DECODED, framesDecoded);
+    bundle.putLong(FRAMES_WITH_BARCODE, framesWithBarcode);
+    bundle.putLong(RESULT_COUNT, resultCount);
+    bundle.putLong(ELAPSED_MS, elapsedMs);
+    bundle.putLong(TIME_TO_FIRST_RESULT_MS, timeToFirstResultMs);
+    bundle.putLong(TIME_TO_FIRST_PREVIEW_FRAME_MS, timeToFirstPreviewFrameMs);
+    return bundle;
+  }
+
+  /**
+   * @param bundle A bundle made by {@link #toBundle()}, such as the one under
+   *               {@link Intents.Scan#RESULT_METRICS}. It can be {@code null}.
+   * @return The metrics, or {@code null} if {@code bundle} is {@code null}.
+   */
+  public static ScanMetrics fromBundle(Bundle bundle) {
+    if (bundle == null) {
+      return null;
+    }
+    return new ScanMetrics(
+        bundle.getLong(FRAMES_DELIVERED),
+        bundle.getLong(FRAMES_DROPPED),
+        bundle.getLong(FRAMES_DECODED),
+        bundle.getLong(FRAMES_WITH_BARCODE),
+        bundle.getLong(RESULT_COUNT),
+        bundle.getLong(ELAPSED_MS),
+        bundle.getLong(TIME_TO_FIRST_RESULT_MS, -1L),
+        bundle.getLong(TIME_TO_FIRST_PREVIEW_FRAME_MS, -1L));
+  }
+
+  @Override
+  public String toString() {
+    return "ScanMetrics(delivered=" + framesDelivered + ", dropped=" + framesDropped +
+        ", decoded=" + framesDecoded + ", withBarcode=" + framesWithBarcode +
+        ", results=" + resultCount + ", elapsedMs=" + elapsedMs +
+        ", timeToFirstResultMs=" + timeToFirstResultMs +
+        ", timeToFirstPreviewFrameMs=" + timeToFirstPreviewFrameMs + ", fps=" + getEffectiveFps() + ")";
+  }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+/**
+ * Receives the metrics of scanning sessions of {@link CaptureActivity}.
+ *
+ * @see CaptureActivity#setScanMetricsListener(ScanMetricsListener)
+ */
+public interface ScanMetricsListener {
+
+  /**
+   * Called on the main thread whenever a result is reported, and once more when the session ends.
+   *
+   * @param metrics The metrics of the session so far.
+   * @param finished {@code true} if the session has ended.
+   */
+  void onScanMetrics(ScanMetrics metrics, boolean finished);
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import info.vividcode.android.zxing.camera.PreviewFrameMailbox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the frames and results of a scanning session with atomic counters, which the preview
+ * callback, the decode threads and the main thread update concurrently. Delivered and dropped
+ * frames are counted by the {@link PreviewFrameMailbox} which the preview callback posts to.
+ *
+ * @author NOBUOKA Yu
+ */
+final class ScanMetricsRecorder {
+
+  private static final long NO_RESULT = -1L;
+
+  private final PreviewFrameMailbox mailbox;
+  private final long openRequestNanos;
+  private final long startNanos;
+  private final AtomicLong framesDecoded = new AtomicLong();
+  private final AtomicLong framesWithBarcode = new AtomicLong();
+  private final AtomicLong resultCount = new AtomicLong();
+  private final AtomicLong firstResultNanos = new AtomicLong(NO_RESULT);
+
+  /**
+   * @param openRequestNanos The value of {@link System#nanoTime()} when the camera was asked to
+   *                         open, or 0 if it is not known.
+   */
+  ScanMetricsRecorder(PreviewFrameMailbox mailbox, long openRequestNanos) {
+    this.mailbox = mailbox;
+    this.openRequestNanos = openRequestNanos;
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Called by a decode thread for each frame which the readers have looked at.
+   */
+  void recordFrameDecoded(boolean barcodeFound) {
+    framesDecoded.incrementAndGet();
+    if (barcodeFound) {
+      framesWithBarcode.incrementAndGet();
+    }
+  }
+
+  /**
+   * Called by the main thread for each reported frame with results.
+   *
+   * @param count The number of results in the frame.
+   */
+  void recordResults(int count) {
+    resultCount.addAndGet(count);
+    firstResultNanos.compareAndSet(NO_RESULT, System.nanoTime() - startNanos);
+  }
+
+  ScanMetrics snapshot() {
+    long firstResult = firstResultNanos.get();
+    long firstFrame = mailbox.getFirstPostNanos();
+    return new ScanMetrics(
+        mailbox.getPostedFrameCount(),
+        mailbox.getDroppedFrameCount(),
+        framesDecoded.get(),
+        framesWithBarcode.get(),
+        resultCount.get(),
+        (System.nanoTime() - startNanos) / 1000000L,
+        firstResult == NO_RESULT ? NO_RESULT : firstResult / 1000000L,
+        firstFrame == 0L || openRequestNanos == 0L ?
+            NO_RESULT : (firstFrame - openRequestNanos) / 1000000L);
+  }
+
+}
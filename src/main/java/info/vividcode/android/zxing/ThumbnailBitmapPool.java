@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps mutable {@link Bitmap.Config#RGB_565} bitmaps for result thumbnails, so that a new bitmap
+ * is not allocated for every decoded barcode.
+ *
+ * @author NOBUOKA Yu
+ */
+final class ThumbnailBitmapPool {
+
+  private static final int MAX_POOLED_BITMAPS = 2;
+
+  private final List<Bitmap> bitmaps = new ArrayList<Bitmap>(MAX_POOLED_BITMAPS);
+
+  /**
+   * @return A mutable bitmap of the given size. Its contents are undefined.
+   */
+  synchronized Bitmap acquire(int width, int height) {
+    for (int i = bitmaps.size() - 1; i >= 0; i--) {
+      Bitmap bitmap = bitmaps.get(i);
+      if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+        bitmaps.remove(i);
+        return bitmap;
+      }
+    }
+    return Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+  }
+
+  /**
+   * Gives back a bitmap which is no longer displayed. It is recycled if the pool is full.
+   */
+  synchronized void release(Bitmap bitmap) {
+    if (bitmap.isRecycled()) {
+      return;
+    }
+    if (bitmaps.size() < MAX_POOLED_BITMAPS && bitmap.isMutable() &&
+        bitmap.getConfig() == Bitmap.Config.RGB_565) {
+      bitmaps.add(bitmap);
+    } else {
+      bitmap.recycle();
+    }
+  }
+
+}
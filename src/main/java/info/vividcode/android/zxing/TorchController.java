@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing;
+
+/**
+ * Decides when to switch the torch from readings of the ambient light. The readings are smoothed
+ * with an exponential moving average over time, so that flickering light doesn't reach the
+ * thresholds; the torch goes on when the average is very dark and off when it is sufficiently
+ * light, and stays as it is in between. Once switched, the torch is not switched again for a while.
+ *
+ * Light sensors report only when the reading changes, so a reading is taken to hold until the next
+ * one, and {@link #onTick(long)} lets the average move on between readings.
+ *
+ * The decision is kept while the camera is closed, and {@link #onCameraOpened()} tells whether the
+ * new camera needs to be switched to it. A switch made by the user is kept until the light moves
+ * into another band (too dark, in between, or bright enough) from the one it was switched in.
+ *
+ * @author NOBUOKA Yu
+ */
+final class TorchController {
+
+  static final float TOO_DARK_LUX = 45.0f;
+  static final float BRIGHT_ENOUGH_LUX = 450.0f;
+  // The time in which the average moves about two thirds of the way to a new reading.
+  static final long TIME_CONSTANT_MS = 500L;
+  static final long MIN_DWELL_MS = 3000L;
+
+  private static final int BAND_UNKNOWN = -1;
+  private static final int BAND_DARK = 0;
+  private static final int BAND_BETWEEN = 1;
+  private static final int BAND_BRIGHT = 2;
+
+  private boolean hasReading;
+  private float heldLux;
+  private float averageLux;
+  private long lastUpdateTime;
+  private boolean torchOn;
+  private boolean switched;
+  private long lastSwitchTime;
+  // Whether the torch was last switched by the user, and the band of the light at the time.
+  private boolean manual;
+  private int manualBand;
+
+  /**
+   * Takes a reading of the light sensor.
+   *
+   * @param lux The ambient light in lux.
+   * @param now The current time in milliseconds, from a monotonic clock.
+   * @return {@code true} if the torch should be switched to {@link #isTorchOn()}.
+   */
+  boolean onLux(float lux, long now) {
+    if (hasReading) {
+      advance(now);
+    } else {
+      hasReading = true;
+      averageLux = lux;
+    }
+    heldLux = lux;
+    lastUpdateTime = now;
+    return decide(now);
+  }
+
+  /**
+   * Lets the average move on toward the last reading, which still holds.
+   *
+   * @param now The current time in milliseconds, from a monotonic clock.
+   * @return {@code true} if the torch should be switched to {@link #isTorchOn()}.
+   */
+  boolean onTick(long now) {
+    if (!hasReading) {
+      return false;
+    }
+    advance(now);
+    lastUpdateTime = now;
+    return decide(now);
+  }
+
+  /**
+   * Takes a switch made by the user, which is not undone until the light changes.
+   *
+   * @param on Whether the user switched the torch on.
+   * @param now The current time in milliseconds, from a monotonic clock.
+   */
+  void onManualSwitch(boolean on, long now) {
+    torchOn = on;
+    manual = true;
+    manualBand = hasReading ? bandOf(averageLux) : BAND_UNKNOWN;
+    switched = true;
+    lastSwitchTime = now;
+  }
+
+  /**
+   * A new camera starts with the torch off, and switches asked for while it was opening are lost.
+   *
+   * @return {@code true} if the new camera should be switched to {@link #isTorchOn()}.
+   */
+  boolean onCameraOpened() {
+    return torchOn;
+  }
+
+  /**
+   * @return Whether the torch should be on. It is assumed to be off until switched.
+   */
+  boolean isTorchOn() {
+    return torchOn;
+  }
+
+  float getAverageLux() {
+    return averageLux;
+  }
+
+  private void advance(long now) {
+    long elapsed = now - lastUpdateTime;
+    if (elapsed > 0L) {
+      // Exact for a reading which held since the last update, however irregular the updates are.
+      float weight = (float) Math.exp(-(double) elapsed / TIME_CONSTANT_MS);
+      averageLux = heldLux + (averageLux - heldLux) * weight;
+    }
+  }
+
+  private static int bandOf(float lux) {
+    if (lux <= TOO_DARK_LUX) {
+      return BAND_DARK;
+    } else if (lux >= BRIGHT_ENOUGH_LUX) {
+      return BAND_BRIGHT;
+    } else {
+      return BAND_BETWEEN;
+    }
+  }
+
+  private boolean decide(long now) {
+    int band = bandOf(averageLux);
+    if (manual) {
+      if (manualBand == BAND_UNKNOWN) {
+        // Switched before the first reading, which is taken as the light it was switched in.
+        manualBand = band;
+      }
+      if (band == manualBand) {
+        return false;
+      }
+      manual = false;
+    }
+    if (switched && now - lastSwitchTime < MIN_DWELL_MS) {
+      return false;
+    }
+    boolean on;
+    if (band == BAND_DARK) {
+      on = true;
+    } else if (band == BAND_BRIGHT) {
+      on = false;
+    } else {
+      return false;
+    }
+    if (on == torchOn) {
+      return false;
+    }
+    torchOn = on;
+    switched = true;
+    lastSwitchTime = now;
+    return true;
+  }
+
+}
@@ -22,6 +22,7 @@ package info.vividcode.android.zxing;
 
 import com.google.zxing.ResultPoint;
 import info.vividcode.android.zxing.camera.CameraManager;
+import info.vividcode.android.zxing.decode.FrameRotation;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -50,6 +51,7 @@ public final class ViewfinderView extends View {
   private static final int POINT_SIZE = 6;
 
   private CameraManager cameraManager;
+  private ThumbnailBitmapPool thumbnailBitmapPool;
   private final Paint paint;
   private Bitmap resultBitmap;
   private final int maskColor;
@@ -80,6 +82,10 @@ public final class ViewfinderView extends View {
     this.cameraManager = cameraManager;
   }
 
+  void setThumbnailBitmapPool(ThumbnailBitmapPool thumbnailBitmapPool) {
+    this.thumbnailBitmapPool = thumbnailBitmapPool;
+  }
+
   @Override
   public void onDraw(Canvas canvas) {
     if (cameraManager == null) {
@@ -113,8 +119,12 @@ public final class ViewfinderView extends View {
       int middle = frame.height() / 2 + frame.top;
       canvas.drawRect(frame.left + 2, middle - 1, frame.right - 1, middle + 2, paint);
       
-      float scaleX = frame.width() / (float) previewFrame.width();
-      float scaleY = frame.height() / (float) previewFrame.height();
+      // Points are upright as on the display, even if preview frames are rotated.
+      boolean transposed = FrameRotation.isTransposed(cameraManager.getPreviewRotation());
+      int previewWidth = transposed ? previewFrame.height() : previewFrame.width();
+      int previewHeight = transposed ? previewFrame.width() : previewFrame.height();
+      float scaleX = frame.width() / (float) previewWidth;
+      float scaleY = frame.height() / (float) previewHeight;
 
       List<ResultPoint> currentPossible = possibleResultPoints;
       List<ResultPoint> currentLast = lastPossibleResultPoints;
@@ -162,7 +172,11 @@ public final class ViewfinderView extends View {
     Bitmap resultBitmap = this.resultBitmap;
     this.resultBitmap = null;
     if (resultBitmap != null) {
-      resultBitmap.recycle();
+      if (thumbnailBitmapPool != null) {
+        thumbnailBitmapPool.release(resultBitmap);
+      } else {
+        resultBitmap.recycle();
+      }
     }
     invalidate();
   }
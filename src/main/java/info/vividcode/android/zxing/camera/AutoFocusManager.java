@@ -46,9 +46,11 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
   private final Camera camera;
   private AsyncTask<?,?,?> outstandingTask;
 
-  AutoFocusManager(Camera camera) {
+  /**
+   * @param currentFocusMode The focus mode which the camera is in.
+   */
+  AutoFocusManager(Camera camera, String currentFocusMode) {
     this.camera = camera;
-    String currentFocusMode = camera.getParameters().getFocusMode();
     useAutoFocus = FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
     Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + useAutoFocus);
     start();
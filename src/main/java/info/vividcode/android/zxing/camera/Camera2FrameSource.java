@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Display;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FrameSource} on {@code android.hardware.camera2}, for API level 21 and above. Frames
+ * are read from an {@link ImageReader} in {@code YUV_420_888}, and only the Y plane of each image
+ * is handed to the mailbox, as it is, without being copied into an array. The image goes back to
+ * the reader when the frame is released.
+ *
+ * The camera is driven on a thread of its own, so that its callbacks don't wait for the main
+ * thread.
+ *
+ * @author NOBUOKA Yu
+ */
+@TargetApi(21)
+public final class Camera2FrameSource implements FrameSource {
+
+  private static final String TAG = Camera2FrameSource.class.getSimpleName();
+
+  private static final long OPEN_TIMEOUT_MS = 3000L;
+  private static final int DEFAULT_MAX_IMAGES = 3;
+  private static final int MIN_PREVIEW_PIXELS = 480 * 320; // normal screen
+  // YUV outputs go up to the full sensor size, which is far more than decoding needs.
+  private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+  private static final double MAX_ASPECT_DISTORTION = 0.15;
+
+  private final Context context;
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private CameraDevice device;
+  private CameraCaptureSession session;
+  private ImageReader imageReader;
+  private SurfaceHolder surfaceHolder;
+  private Size previewSize;
+  private int screenWidth;
+  private int screenHeight;
+  private int previewRotation;
+  private int maxImages = DEFAULT_MAX_IMAGES;
+  private boolean previewing;
+  private boolean torch;
+  // Written by the thread which requests frames, read by the camera thread.
+  private volatile PreviewFrameMailbox mailbox;
+  // Frames which are not out, so that no frame is allocated per image.
+  private final List<CameraFrame> freeFrames = new ArrayList<CameraFrame>();
+  // Images which are out in frames. The planes of an image are freed when its reader is closed, so
+  // readers are retired and closed only once no image is out.
+  private int outstandingImages;
+  private final List<ImageReader> retiredReaders = new ArrayList<ImageReader>();
+
+  public Camera2FrameSource(Context context) {
+    this.context = context;
+  }
+
+  @Override
+  public synchronized void open() throws IOException {
+    if (device != null) {
+      return;
+    }
+    cameraThread = new HandlerThread(TAG);
+    cameraThread.start();
+    cameraHandler = new Handler(cameraThread.getLooper());
+
+    android.hardware.camera2.CameraManager cameraService =
+        (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    try {
+      String cameraId = findCameraId(cameraService);
+      if (cameraId == null) {
+        throw new IOException("No camera");
+      }
+      CameraCharacteristics characteristics = cameraService.getCameraCharacteristics(cameraId);
+      initFromCharacteristics(characteristics);
+      device = openDevice(cameraService, cameraId);
+    } catch (CameraAccessException e) {
+      close();
+      throw new IOException(e.getMessage());
+    } catch (SecurityException e) {
+      close();
+      throw new IOException(e.getMessage());
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  @Override
+  public synchronized void setPreviewDisplay(SurfaceHolder holder) {
+    surfaceHolder = holder;
+    if (previewSize != null) {
+      // Let the surface be sized as the frames, as the legacy camera does.
+      holder.setFixedSize(previewSize.getWidth(), previewSize.getHeight());
+    }
+  }
+
+  private static String findCameraId(android.hardware.camera2.CameraManager cameraService)
+      throws CameraAccessException {
+    String[] cameraIds = cameraService.getCameraIdList();
+    for (String cameraId : cameraIds) {
+      Integer facing = cameraService.getCameraCharacteristics(cameraId)
+          .get(CameraCharacteristics.LENS_FACING);
+      if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+        return cameraId;
+      }
+    }
+    // Use the first camera if no camera faces back.
+    return cameraIds.length > 0 ? cameraIds[0] : null;
+  }
+
+  private void initFromCharacteristics(CameraCharacteristics characteristics) throws IOException {
+    WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    Display display = manager.getDefaultDisplay();
+    Point screenResolution = new Point();
+    display.getSize(screenResolution);
+    screenWidth = screenResolution.x;
+    screenHeight = screenResolution.y;
+
+    int displayRotation;
+    switch (display.getRotation()) {
+      case Surface.ROTATION_90:
+        displayRotation = 90;
+        break;
+      case Surface.ROTATION_180:
+        displayRotation = 180;
+        break;
+      case Surface.ROTATION_270:
+        displayRotation = 270;
+        break;
+      default:
+        displayRotation = 0;
+        break;
+    }
+    Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+    int orientation = sensorOrientation == null ? 0 : sensorOrientation;
+    Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+    if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT) {
+      previewRotation = (orientation + displayRotation) % 360;
+    } else {
+      previewRotation = (orientation - displayRotation + 360) % 360;
+    }
+    Log.i(TAG, "Preview rotation: " + previewRotation);
+
+    StreamConfigurationMap map =
+        characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    Size[] sizes = map == null ? null : map.getOutputSizes(ImageFormat.YUV_420_888);
+    if (sizes == null || sizes.length == 0) {
+      throw new IOException("No YUV output");
+    }
+    boolean transposed = previewRotation == 90 || previewRotation == 270;
+    previewSize = findBestPreviewSize(sizes, transposed ? screenHeight : screenWidth,
+        transposed ? screenWidth : screenHeight);
+    Log.i(TAG, "Camera resolution: " + previewSize);
+  }
+
+  /**
+   * Chooses a size as {@code CameraConfigurationManager} does: one which matches the screen if
+   * any, or else the largest one of which the aspect ratio is close to that of the screen.
+   */
+  private static Size findBestPreviewSize(Size[] sizes, int screenWidthInSensor,
+                                          int screenHeightInSensor) {
+    double screenAspectRatio = (double) screenWidthInSensor / (double) screenHeightInSensor;
+    Size largest = null;
+    for (Size size : sizes) {
+      int realWidth = size.getWidth();
+      int realHeight = size.getHeight();
+      int pixels = realWidth * realHeight;
+      if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
+        continue;
+      }
+      boolean isCandidatePortrait = realWidth < realHeight;
+      int maybeFlippedWidth = isCandidatePortrait ? realHeight : realWidth;
+      int maybeFlippedHeight = isCandidatePortrait ? realWidth : realHeight;
+      double aspectRatio = (double) maybeFlippedWidth / (double) maybeFlippedHeight;
+      if (Math.abs(aspectRatio - screenAspectRatio) > MAX_ASPECT_DISTORTION) {
+        continue;
+      }
+      if (maybeFlippedWidth == screenWidthInSensor && maybeFlippedHeight == screenHeightInSensor) {
+        return size;
+      }
+      if (largest == null || pixels > largest.getWidth() * largest.getHeight()) {
+        largest = size;
+      }
+    }
+    // If there is nothing at all suitable, use the first size.
+    return largest != null ? largest : sizes[0];
+  }
+
+  private CameraDevice openDevice(android.hardware.camera2.CameraManager cameraService,
+                                  String cameraId) throws CameraAccessException, IOException {
+    final CountDownLatch opened = new CountDownLatch(1);
+    // Both guarded by openedDevice. Set if this gives up waiting, so that a camera which opens
+    // later is closed rather than kept from other apps.
+    final CameraDevice[] openedDevice = new CameraDevice[1];
+    final boolean[] cancelled = new boolean[1];
+    cameraService.openCamera(cameraId, new CameraDevice.StateCallback() {
+      @Override
+      public void onOpened(CameraDevice camera) {
+        synchronized (openedDevice) {
+          if (cancelled[0]) {
+            camera.close();
+          } else {
+            openedDevice[0] = camera;
+          }
+        }
+        opened.countDown();
+      }
+
+      @Override
+      public void onDisconnected(CameraDevice camera) {
+        camera.close();
+        opened.countDown();
+      }
+
+      @Override
+      public void onError(CameraDevice camera, int error) {
+        Log.w(TAG, "Camera error: " + error);
+        camera.close();
+        opened.countDown();
+      }
+    }, cameraHandler);
+    String failure = null;
+    try {
+      if (!opened.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        failure = "Timed out while opening the camera";
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = "Interrupted while opening the camera";
+    }
+    if (failure != null) {
+      synchronized (openedDevice) {
+        cancelled[0] = true;
+        // It may have opened just after the wait ended.
+        if (openedDevice[0] != null) {
+          openedDevice[0].close();
+          openedDevice[0] = null;
+        }
+      }
+      throw new IOException(failure);
+    }
+    if (openedDevice[0] == null) {
+      throw new IOException("Failed to open the camera");
+    }
+    return openedDevice[0];
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return device != null;
+  }
+
+  /**
+   * The image reader is closed once the frames which are still out have been released, as a
+   * decoder which is slow to stop may still be reading one.
+   */
+  @Override
+  public synchronized void close() {
+    stopPreview();
+    if (device != null) {
+      device.close();
+      device = null;
+    }
+    if (imageReader != null) {
+      retireReader(imageReader);
+      imageReader = null;
+    }
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
+  }
+
+  @Override
+  public synchronized void startPreview() {
+    if (device == null || surfaceHolder == null || previewing) {
+      return;
+    }
+    if (imageReader != null && imageReader.getMaxImages() != maxImages) {
+      retireReader(imageReader);
+      imageReader = null;
+    }
+    if (imageReader == null) {
+      imageReader = ImageReader.newInstance(previewSize.getWidth(), previewSize.getHeight(),
+          ImageFormat.YUV_420_888, maxImages);
+      imageReader.setOnImageAvailableListener(imageListener, cameraHandler);
+    }
+    try {
+      device.createCaptureSession(
+          Arrays.asList(surfaceHolder.getSurface(), imageReader.getSurface()),
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(CameraCaptureSession configuredSession) {
+              onSessionConfigured(configuredSession);
+            }
+
+            @Override
+            public void onConfigureFailed(CameraCaptureSession configuredSession) {
+              Log.w(TAG, "Failed to configure the capture session");
+            }
+          }, cameraHandler);
+      previewing = true;
+    } catch (CameraAccessException e) {
+      Log.w(TAG, "Failed to start the preview", e);
+    }
+  }
+
+  private synchronized void onSessionConfigured(CameraCaptureSession configuredSession) {
+    if (!previewing || device == null) {
+      // Stopped before the session was ready.
+      configuredSession.close();
+      return;
+    }
+    session = configuredSession;
+    updateRepeatingRequest();
+  }
+
+  private void updateRepeatingRequest() {
+    if (session == null) {
+      return;
+    }
+    try {
+      CaptureRequest.Builder builder = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+      builder.addTarget(surfaceHolder.getSurface());
+      builder.addTarget(imageReader.getSurface());
+      builder.set(CaptureRequest.CONTROL_AF_MODE,
+          CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+      builder.set(CaptureRequest.FLASH_MODE,
+          torch ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF);
+      session.setRepeatingRequest(builder.build(), null, cameraHandler);
+    } catch (CameraAccessException e) {
+      Log.w(TAG, "Failed to set the repeating request", e);
+    }
+  }
+
+  @Override
+  public synchronized void stopPreview() {
+    if (!previewing) {
+      return;
+    }
+    if (session != null) {
+      session.close();
+      session = null;
+    }
+    mailbox = null;
+    previewing = false;
+  }
+
+  /**
+   * Frames are posted until cancelled, so a single call is enough.
+   */
+  @Override
+  public synchronized void requestFrames(PreviewFrameMailbox mailbox) {
+    if (previewing) {
+      this.mailbox = mailbox;
+    }
+  }
+
+  @Override
+  public synchronized void cancelFrames() {
+    mailbox = null;
+  }
+
+  @Override
+  public synchronized void releaseFrame(CameraFrame frame) {
+    Object owner = frame.getOwner();
+    if (owner instanceof Image) {
+      ((Image) owner).close();
+      outstandingImages--;
+      if (outstandingImages == 0) {
+        closeRetiredReaders();
+      }
+    }
+    frame.setLuminance(null, 0, 0, 0, 0, 0L, null);
+    freeFrames.add(frame);
+  }
+
+  /**
+   * Stops taking images from a reader, and closes it now if no image is out, or else when the
+   * last one is released.
+   */
+  private void retireReader(ImageReader reader) {
+    reader.setOnImageAvailableListener(null, null);
+    retiredReaders.add(reader);
+    if (outstandingImages == 0) {
+      closeRetiredReaders();
+    }
+  }
+
+  private void closeRetiredReaders() {
+    for (ImageReader reader : retiredReaders) {
+      reader.close();
+    }
+    retiredReaders.clear();
+  }
+
+  /**
+   * Called on the camera thread. The image is taken under the lock, so that its reader is not
+   * retired in the meantime.
+   */
+  private synchronized void onImageAvailable(ImageReader reader) {
+    if (reader != imageReader) {
+      // An image which was on its way when the reader was retired.
+      return;
+    }
+    Image image;
+    try {
+      image = reader.acquireLatestImage();
+    } catch (IllegalStateException e) {
+      // All images are out; the decoders didn't keep up, so this one is dropped.
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+    PreviewFrameMailbox theMailbox = mailbox;
+    if (theMailbox == null) {
+      // Nobody wants this frame; hand the image straight back to the reader.
+      image.close();
+      return;
+    }
+    outstandingImages++;
+    Image.Plane plane = image.getPlanes()[0];
+    CameraFrame frame = obtainFrame().setLuminance(plane.getBuffer(), plane.getRowStride(),
+        plane.getPixelStride(), image.getWidth(), image.getHeight(), System.nanoTime(), image);
+    CameraFrame replaced = theMailbox.post(frame);
+    if (replaced != null) {
+      // The decoders didn't keep up; the replaced frame will never be decoded.
+      releaseFrame(replaced);
+    }
+  }
+
+  private synchronized CameraFrame obtainFrame() {
+    int last = freeFrames.size() - 1;
+    return last >= 0 ? freeFrames.remove(last) : new CameraFrame();
+  }
+
+  /**
+   * Sets the number of images of the reader.
+   */
+  @Override
+  public synchronized void setFrameBufferCount(int count) {
+    maxImages = count;
+  }
+
+  @Override
+  public synchronized void setTorch(boolean on) {
+    if (on != torch) {
+      torch = on;
+      updateRepeatingRequest();
+    }
+  }
+
+  @Override
+  public synchronized int getFrameWidth() {
+    return previewSize == null ? 0 : previewSize.getWidth();
+  }
+
+  @Override
+  public synchronized int getFrameHeight() {
+    return previewSize == null ? 0 : previewSize.getHeight();
+  }
+
+  @Override
+  public synchronized int getScreenWidth() {
+    return screenWidth;
+  }
+
+  @Override
+  public synchronized int getScreenHeight() {
+    return screenHeight;
+  }
+
+  @Override
+  public synchronized int getPreviewRotation() {
+    return previewRotation;
+  }
+
+  private final ImageReader.OnImageAvailableListener imageListener =
+      new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+          Camera2FrameSource.this.onImageAvailable(reader);
+        }
+      };
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the configuration which {@link CameraConfigurationManager} chose for a camera in a small
+ * file per camera, so that later launches can apply it without parsing and sorting the supported
+ * values of the camera again. A file is used only by the build of the system which wrote it, and
+ * only for the screen size it was chosen for.
+ *
+ * The methods which end in {@code Queued} or {@code Later} run on a single background thread
+ * shared by all caches, in the order in which they are called, so that a write and a removal never
+ * overtake each other. A removal also drops the writes for the same camera queued before it,
+ * which are of a configuration that was just found to be wrong.
+ *
+ * @author NOBUOKA Yu
+ */
+final class CameraCapabilityCache {
+
+  // Bump this when the format of the file or the way of choosing the configuration changes.
+  private static final int VERSION = 1;
+  private static final String FILE_PREFIX = "camera-capabilities-";
+  private static final String TAG = CameraCapabilityCache.class.getSimpleName();
+
+  private static final ExecutorService IO_EXECUTOR =
+      Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, TAG);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  // Removals per file, so that a queued write can tell whether its file was removed after it was
+  // queued. Guarded by the class.
+  private static final Map<File,Integer> GENERATIONS = new HashMap<File,Integer>();
+
+  private final File dir;
+  private final String buildFingerprint;
+
+  /**
+   * @param dir The directory to keep the files in, such as the cache directory of the app.
+   * @param buildFingerprint The fingerprint of the build of the system, which the files are only
+   *                         valid for.
+   */
+  CameraCapabilityCache(File dir, String buildFingerprint) {
+    this.dir = dir;
+    this.buildFingerprint = buildFingerprint == null ? "" : buildFingerprint;
+  }
+
+  /**
+   * @return The configuration written for the camera and the screen size, or {@code null} if
+   *         there is none, or if it was written by another version or for another build.
+   * @throws IOException Indicates the file is broken.
+   */
+  synchronized Capabilities read(int cameraIndex, int screenWidthInSensor,
+                                 int screenHeightInSensor) throws IOException {
+    DataInputStream in;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileOf(cameraIndex))));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    try {
+      if (in.readInt() != VERSION || !buildFingerprint.equals(in.readUTF()) ||
+          in.readInt() != cameraIndex ||
+          in.readInt() != screenWidthInSensor || in.readInt() != screenHeightInSensor) {
+        return null;
+      }
+      return new Capabilities(in.readInt(), in.readInt(), readNullableUTF(in),
+          readNullableUTF(in), readNullableUTF(in), in.readBoolean());
+    } catch (EOFException e) {
+      throw new IOException("Truncated camera capabilities");
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the configuration for the camera and the screen size, replacing the one written before.
+   * The file is replaced at once, so that a broken file is never read.
+   */
+  synchronized void write(int cameraIndex, int screenWidthInSensor, int screenHeightInSensor,
+                          Capabilities capabilities) throws IOException {
+    File file = fileOf(cameraIndex);
+    File tempFile = new File(dir, file.getName() + ".tmp");
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+    try {
+      out.writeInt(VERSION);
+      out.writeUTF(buildFingerprint);
+      out.writeInt(cameraIndex);
+      out.writeInt(screenWidthInSensor);
+      out.writeInt(screenHeightInSensor);
+      out.writeInt(capabilities.previewWidth);
+      out.writeInt(capabilities.previewHeight);
+      writeNullableUTF(out, capabilities.focusMode);
+      writeNullableUTF(out, capabilities.torchOnFlashMode);
+      writeNullableUTF(out, capabilities.torchOffFlashMode);
+      out.writeBoolean(capabilities.safeMode);
+    } finally {
+      out.close();
+    }
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      throw new IOException("Failed to rename " + tempFile);
+    }
+  }
+
+  /**
+   * Deletes the configuration for the camera, such as when the camera rejected it.
+   */
+  synchronized void remove(int cameraIndex) {
+    fileOf(cameraIndex).delete();
+  }
+
+  /**
+   * Reads as {@link #read(int, int, int)} does, after the writes and removals queued before.
+   */
+  Capabilities readQueued(final int cameraIndex, final int screenWidthInSensor,
+                          final int screenHeightInSensor) throws IOException {
+    Future<Capabilities> future = IO_EXECUTOR.submit(new Callable<Capabilities>() {
+      @Override
+      public Capabilities call() throws IOException {
+        return read(cameraIndex, screenWidthInSensor, screenHeightInSensor);
+      }
+    });
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Queues a write as {@link #write(int, int, int, Capabilities)} does. It is dropped if a
+   * removal is queued before it runs.
+   */
+  void writeLater(final int cameraIndex, final int screenWidthInSensor,
+                  final int screenHeightInSensor, final Capabilities capabilities) {
+    final int queuedGeneration = currentGeneration(cameraIndex);
+    IO_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (queuedGeneration == currentGeneration(cameraIndex)) {
+          writeOrWarn(cameraIndex, screenWidthInSensor, screenHeightInSensor, capabilities);
+        }
+      }
+    });
+  }
+
+  /**
+   * Queues a check of a configuration which was read from the file: it is chosen again on the
+   * background thread, and the file is replaced if the choice differs. Nothing is written if a
+   * removal is queued before the check is done.
+   *
+   * @param cached The configuration which was read.
+   * @param chooser Chooses the configuration again.
+   */
+  void revalidateLater(final int cameraIndex, final int screenWidthInSensor,
+                       final int screenHeightInSensor, final Capabilities cached,
+                       final Chooser chooser) {
+    final int queuedGeneration = currentGeneration(cameraIndex);
+    IO_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        Capabilities chosen = chooser.choose();
+        if (!chosen.equals(cached) && queuedGeneration == currentGeneration(cameraIndex)) {
+          writeOrWarn(cameraIndex, screenWidthInSensor, screenHeightInSensor, chosen);
+        }
+      }
+    });
+  }
+
+  /**
+   * Queues a removal as {@link #remove(int)} does, dropping the writes for the camera queued
+   * before it.
+   */
+  void removeLater(final int cameraIndex) {
+    File file = fileOf(cameraIndex);
+    synchronized (CameraCapabilityCache.class) {
+      GENERATIONS.put(file, currentGeneration(cameraIndex) + 1);
+    }
+    IO_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        remove(cameraIndex);
+      }
+    });
+  }
+
+  private int currentGeneration(int cameraIndex) {
+    synchronized (CameraCapabilityCache.class) {
+      Integer generation = GENERATIONS.get(fileOf(cameraIndex));
+      return generation == null ? 0 : generation;
+    }
+  }
+
+  private void writeOrWarn(int cameraIndex, int screenWidthInSensor, int screenHeightInSensor,
+                           Capabilities capabilities) {
+    try {
+      write(cameraIndex, screenWidthInSensor, screenHeightInSensor, capabilities);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to cache camera configuration", e);
+    }
+  }
+
+  private File fileOf(int cameraIndex) {
+    return new File(dir, FILE_PREFIX + cameraIndex);
+  }
+
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  /**
+   * Chooses the configuration of a camera again, on the background thread.
+   */
+  interface Chooser {
+    Capabilities choose();
+  }
+
+  /**
+   * The configuration chosen for a camera.
+   */
+  static final class Capabilities {
+
+    final int previewWidth;
+    final int previewHeight;
+    final String focusMode;
+    final String torchOnFlashMode;
+    final String torchOffFlashMode;
+    final boolean safeMode;
+
+    /**
+     * @param focusMode The focus mode to set, or {@code null} to leave it.
+     * @param torchOnFlashMode The flash mode which turns the torch on, or {@code null} if there is
+     *                         no torch.
+     * @param torchOffFlashMode The flash mode which turns the torch off, or {@code null}.
+     * @param safeMode Whether the camera rejected the full configuration, so that only the
+     *                 minimal safe-mode one is set.
+     */
+    Capabilities(int previewWidth, int previewHeight, String focusMode, String torchOnFlashMode,
+                 String torchOffFlashMode, boolean safeMode) {
+      this.previewWidth = previewWidth;
+      this.previewHeight = previewHeight;
+      this.focusMode = focusMode;
+      this.torchOnFlashMode = torchOnFlashMode;
+      this.torchOffFlashMode = torchOffFlashMode;
+      this.safeMode = safeMode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Capabilities)) {
+        return false;
+      }
+      Capabilities other = (Capabilities) o;
+      return previewWidth == other.previewWidth && previewHeight == other.previewHeight &&
+          equal(focusMode, other.focusMode) && equal(torchOnFlashMode, other.torchOnFlashMode) &&
+          equal(torchOffFlashMode, other.torchOffFlashMode) && safeMode == other.safeMode;
+    }
+
+    @Override
+    public int hashCode() {
+      return previewWidth * 31 + previewHeight;
+    }
+
+    @Override
+    public String toString() {
+      return "Capabilities(preview=" + previewWidth + 'x' + previewHeight +
+          ", focusMode=" + focusMode + ", torchOn=" + torchOnFlashMode +
+          ", torchOff=" + torchOffFlashMode + ", safeMode=" + safeMode + ")";
+    }
+
+    private static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+
+  }
+
+}
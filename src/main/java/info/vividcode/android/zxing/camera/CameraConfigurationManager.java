@@ -22,13 +22,17 @@ package info.vividcode.android.zxing.camera;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.hardware.Camera;
 import android.os.Build;
 import android.util.Log;
+import info.vividcode.android.zxing.camera.open.OpenCameraInterface;
 import android.view.Display;
+import android.view.Surface;
 import android.view.WindowManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -40,6 +44,10 @@ import java.util.List;
 /**
  * A class which deals with reading, parsing, and setting the camera parameters which are used to
  * configure the camera hardware.
+ *
+ * The configuration chosen for a camera is kept in a {@link CameraCapabilityCache}, and later
+ * launches set it as it is, checking it against the parameters of the camera on the background
+ * thread of the cache.
  */
 final class CameraConfigurationManager {
 
@@ -52,8 +60,21 @@ final class CameraConfigurationManager {
   private static final double MAX_ASPECT_DISTORTION = 0.15;
 
   private final Context context;
+  private CameraCapabilityCache capabilityCache;
+  private int cameraIndex;
+  // The screen resolution in the orientation of the sensor, which the preview size is chosen for.
+  private Point screenResolutionInSensor;
+  // The configuration which is set, or null until it is read from the cache or chosen.
+  private CameraCapabilityCache.Capabilities capabilities;
   private Point screenResolution;
   private Point cameraResolution;
+  private int previewFormat = ImageFormat.NV21;
+  // Clockwise rotation of preview frames which makes them upright on the display.
+  private int previewRotation;
+  // Rotation given to Camera#setDisplayOrientation(int); differs from the above for front cameras.
+  private int displayOrientation;
+  // The parameters read back after the camera was last configured, or null.
+  private Camera.Parameters configuredParameters;
 
   CameraConfigurationManager(Context context) {
     this.context = context;
@@ -61,19 +82,131 @@ final class CameraConfigurationManager {
 
   /**
    * Reads, one time, values from the camera that are needed by the app.
+   *
+   * @param cameraIndex Index of the camera from
+   *                    {@link info.vividcode.android.zxing.camera.open.OpenCameraInterface#findCameraIndex()}.
    */
-  void initFromCameraParameters(Camera camera) {
+  void initFromCameraParameters(Camera camera, int cameraIndex) {
     Camera.Parameters parameters = camera.getParameters();
+    this.cameraIndex = cameraIndex;
     WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
     Display display = manager.getDefaultDisplay();
     Point theScreenResolution = new Point();
     getDisplaySize(display, theScreenResolution);
     screenResolution = theScreenResolution;
     Log.i(TAG, "Screen resolution: " + screenResolution);
-    cameraResolution = findBestPreviewSizeValue(parameters, screenResolution);
+    initRotation(display, cameraIndex);
+    Log.i(TAG, "Preview rotation: " + previewRotation);
+    // Preview sizes are in the orientation of the sensor, so compare them with the screen in it.
+    screenResolutionInSensor = isPreviewTransposed() ?
+        new Point(screenResolution.y, screenResolution.x) : screenResolution;
+    if (capabilityCache == null) {
+      capabilityCache = new CameraCapabilityCache(context.getCacheDir(), Build.FINGERPRINT);
+    }
+    capabilities = readCachedCapabilities();
+    if (capabilities != null) {
+      cameraResolution = new Point(capabilities.previewWidth, capabilities.previewHeight);
+      Log.i(TAG, "Cached camera configuration: " + capabilities);
+      revalidateInBackground(parameters, capabilities);
+    } else {
+      cameraResolution = findBestPreviewSizeValue(parameters, screenResolutionInSensor);
+    }
     Log.i(TAG, "Camera resolution: " + cameraResolution);
   }
 
+  private CameraCapabilityCache.Capabilities readCachedCapabilities() {
+    try {
+      return capabilityCache.readQueued(cameraIndex, screenResolutionInSensor.x,
+          screenResolutionInSensor.y);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read cached camera configuration", e);
+      return null;
+    }
+  }
+
+  /**
+   * Chooses the configuration again from the parameters, which the camera doesn't use any more,
+   * and replaces the cached one if it has changed. The new one is used from the next launch.
+   */
+  private void revalidateInBackground(final Camera.Parameters parameters,
+                                      final CameraCapabilityCache.Capabilities cached) {
+    final Point screen = screenResolutionInSensor;
+    capabilityCache.revalidateLater(cameraIndex, screen.x, screen.y, cached,
+        new CameraCapabilityCache.Chooser() {
+          @Override
+          public CameraCapabilityCache.Capabilities choose() {
+            Point previewSize = findBestPreviewSizeValue(parameters, screen);
+            CameraCapabilityCache.Capabilities chosen =
+                findCapabilities(parameters, previewSize, cached.safeMode);
+            if (!chosen.equals(cached)) {
+              Log.i(TAG, "Cached camera configuration is stale; replacing it with " + chosen);
+            }
+            return chosen;
+          }
+        });
+  }
+
+  /**
+   * @return {@code true} if the camera is known to reject all but the minimal safe-mode
+   *         configuration, so that only it should be set.
+   */
+  boolean isSafeModeKnownToBeRequired() {
+    return capabilities != null && capabilities.safeMode;
+  }
+
+  /**
+   * Forgets the cached configuration, such as when the camera rejected it, so that it is chosen
+   * again from the parameters of the camera.
+   */
+  void forgetCachedCapabilities() {
+    if (capabilities != null) {
+      capabilities = null;
+      if (capabilityCache != null) {
+        capabilityCache.removeLater(cameraIndex);
+      }
+    }
+  }
+
+  private void initRotation(Display display, int cameraIndex) {
+    if (Build.VERSION.SDK_INT < 9 || cameraIndex == OpenCameraInterface.NO_CAMERA_INDEX) {
+      // The orientation of the sensor is unknown; assume it is that of a landscape display, as
+      // has always been done.
+      previewRotation = 0;
+      displayOrientation = 0;
+    } else {
+      initRotationFromCameraInfo(cameraIndex, display);
+    }
+  }
+
+  @TargetApi(9)
+  private void initRotationFromCameraInfo(int cameraIndex, Display display) {
+    int displayRotation;
+    switch (display.getRotation()) {
+      case Surface.ROTATION_90:
+        displayRotation = 90;
+        break;
+      case Surface.ROTATION_180:
+        displayRotation = 180;
+        break;
+      case Surface.ROTATION_270:
+        displayRotation = 270;
+        break;
+      default:
+        displayRotation = 0;
+        break;
+    }
+    Camera.CameraInfo info = new Camera.CameraInfo();
+    Camera.getCameraInfo(cameraIndex, info);
+    if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+      previewRotation = (info.orientation + displayRotation) % 360;
+      // The preview of a front camera is mirrored.
+      displayOrientation = (360 - previewRotation) % 360;
+    } else {
+      previewRotation = (info.orientation - displayRotation + 360) % 360;
+      displayOrientation = previewRotation;
+    }
+  }
+
     @TargetApi(13)
     private void getDisplaySize(Display display, Point size) {
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.HONEYCOMB_MR2) {
@@ -84,6 +217,7 @@ final class CameraConfigurationManager {
     }
 
   void setDesiredCameraParameters(Camera camera, boolean safeMode) {
+    configuredParameters = null;
     Camera.Parameters parameters = camera.getParameters();
 
     if (parameters == null) {
@@ -97,9 +231,65 @@ final class CameraConfigurationManager {
       Log.w(TAG, "In camera config safe mode -- most settings will not be honored");
     }
 
+    CameraCapabilityCache.Capabilities chosen = capabilities;
+    if (chosen == null || chosen.safeMode != safeMode) {
+      chosen = findCapabilities(parameters, cameraResolution, safeMode);
+    }
+
+    if (chosen.torchOffFlashMode != null) {
+      parameters.setFlashMode(chosen.torchOffFlashMode);
+    }
+    if (chosen.focusMode != null) {
+      parameters.setFocusMode(chosen.focusMode);
+    }
+
+    parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
+    camera.setParameters(parameters);
+    if (Build.VERSION.SDK_INT >= 9) {
+      setDisplayOrientation(camera);
+    }
+
+    Camera.Parameters afterParameters = camera.getParameters();
+    Camera.Size afterSize = afterParameters.getPreviewSize();
+    if (afterSize!= null && (cameraResolution.x != afterSize.width || cameraResolution.y != afterSize.height)) {
+      Log.w(TAG, "Camera said it supported preview size " + cameraResolution.x + 'x' + cameraResolution.y +
+                 ", but after setting it, preview size is " + afterSize.width + 'x' + afterSize.height);
+      cameraResolution.x = afterSize.width;
+      cameraResolution.y = afterSize.height;
+      // The size is not what was chosen, so the configuration is not worth keeping.
+      forgetCachedCapabilities();
+    } else if (chosen != capabilities) {
+      // The camera took it, so later launches can set it as it is.
+      capabilities = chosen;
+      capabilityCache.writeLater(cameraIndex, screenResolutionInSensor.x,
+          screenResolutionInSensor.y, chosen);
+    }
+    previewFormat = afterParameters.getPreviewFormat();
+    configuredParameters = afterParameters;
+  }
+
+  /**
+   * @return The parameters which the camera has after {@link #setDesiredCameraParameters}, or
+   *         {@code null} if it failed.
+   */
+  Camera.Parameters getConfiguredParameters() {
+    return configuredParameters;
+  }
+
+  /**
+   * Chooses the configuration from the values which the camera supports, as is done when there is
+   * no cached one.
+   */
+  private static CameraCapabilityCache.Capabilities findCapabilities(Camera.Parameters parameters,
+                                                                     Point previewSize,
+                                                                     boolean safeMode) {
     //SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
 
-    initializeTorch(parameters/*, prefs, safeMode*/);
+    List<String> flashModes = parameters.getSupportedFlashModes();
+    String torchOnFlashMode = findSettableValue(flashModes,
+        Arrays.asList(Camera.Parameters.FLASH_MODE_TORCH, Camera.Parameters.FLASH_MODE_ON));
+    String torchOffFlashMode = findSettableValue(flashModes,
+        Arrays.asList(Camera.Parameters.FLASH_MODE_OFF));
 
       List<String> fullFocusModes = new ArrayList<String>();
       if (Build.VERSION.SDK_INT >= 14) fullFocusModes.add(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
@@ -120,21 +310,14 @@ final class CameraConfigurationManager {
         fullFocusModes.add(Camera.Parameters.FOCUS_MODE_MACRO);
         focusMode = findSettableValue(parameters.getSupportedFocusModes(), secondFullFocusModes);
     }
-    if (focusMode != null) {
-      parameters.setFocusMode(focusMode);
-    }
 
-    parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
-    camera.setParameters(parameters);
+    return new CameraCapabilityCache.Capabilities(previewSize.x, previewSize.y, focusMode,
+        torchOnFlashMode, torchOffFlashMode, safeMode);
+  }
 
-    Camera.Parameters afterParameters = camera.getParameters();
-    Camera.Size afterSize = afterParameters.getPreviewSize();
-    if (afterSize!= null && (cameraResolution.x != afterSize.width || cameraResolution.y != afterSize.height)) {
-      Log.w(TAG, "Camera said it supported preview size " + cameraResolution.x + 'x' + cameraResolution.y +
-                 ", but after setting it, preview size is " + afterSize.width + 'x' + afterSize.height);
-      cameraResolution.x = afterSize.width;
-      cameraResolution.y = afterSize.height;
-    }
+  @TargetApi(8)
+  private void setDisplayOrientation(Camera camera) {
+    camera.setDisplayOrientation(displayOrientation);
   }
 
   Point getCameraResolution() {
@@ -145,44 +328,61 @@ final class CameraConfigurationManager {
     return screenResolution;
   }
 
-  boolean getTorchState(Camera camera) {
-    if (camera != null) {
-      Camera.Parameters parameters = camera.getParameters();
-      if (parameters != null) {
-        String flashMode = camera.getParameters().getFlashMode();
-        return flashMode != null &&
-            (Camera.Parameters.FLASH_MODE_ON.equals(flashMode) ||
-             Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode));
-      }
-    }
-    return false;
+  /**
+   * @return Clockwise rotation in degrees which makes preview frames upright on the display.
+   */
+  int getPreviewRotation() {
+    return previewRotation;
   }
 
-  void setTorch(Camera camera, boolean newSetting) {
-    Camera.Parameters parameters = camera.getParameters();
-    doSetTorch(parameters, newSetting);
-    camera.setParameters(parameters);
+  /**
+   * @return {@code true} if the width and height of preview frames are swapped on the display.
+   */
+  boolean isPreviewTransposed() {
+    return previewRotation == 90 || previewRotation == 270;
+  }
+
+  /**
+   * @return The number of bytes of one preview frame with the current preview size and format.
+   */
+  @TargetApi(8)
+  int getPreviewBufferSize() {
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(previewFormat);
+    if (bitsPerPixel <= 0) {
+      // Unknown format; assume NV21, the default.
+      bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
+    }
+    return cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
   }
 
-  private void initializeTorch(Camera.Parameters parameters) {
-    doSetTorch(parameters, false);
+  boolean getTorchState(CameraParameterController parameterController) {
+    String flashMode = parameterController.getFlashMode();
+    return flashMode != null &&
+        (Camera.Parameters.FLASH_MODE_ON.equals(flashMode) ||
+         Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode));
   }
 
-  private void doSetTorch(Camera.Parameters parameters, boolean newSetting) {
+  /**
+   * Merges the flash mode for the torch into the parameters, which are written by the controller.
+   */
+  void setTorch(CameraParameterController parameterController, boolean newSetting) {
     String flashMode;
-    if (newSetting) {
-      flashMode = findSettableValue(parameters.getSupportedFlashModes(),
+    CameraCapabilityCache.Capabilities theCapabilities = capabilities;
+    if (theCapabilities != null) {
+      flashMode = newSetting ?
+          theCapabilities.torchOnFlashMode : theCapabilities.torchOffFlashMode;
+    } else if (newSetting) {
+      flashMode = findSettableValue(parameterController.getSupportedFlashModes(),
               Arrays.asList(Camera.Parameters.FLASH_MODE_TORCH, Camera.Parameters.FLASH_MODE_ON));
     } else {
-      flashMode = findSettableValue(parameters.getSupportedFlashModes(),
+      flashMode = findSettableValue(parameterController.getSupportedFlashModes(),
               Arrays.asList(Camera.Parameters.FLASH_MODE_OFF));
     }
-    if (flashMode != null) {
-      parameters.setFlashMode(flashMode);
-    }
+    parameterController.setFlashMode(flashMode);
   }
 
-  private Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
+  private static Point findBestPreviewSizeValue(Camera.Parameters parameters,
+                                                Point screenResolution) {
 
     List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
     if (rawSupportedSizes == null) {
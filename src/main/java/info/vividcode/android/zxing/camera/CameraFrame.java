@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A preview frame delivered by a {@link FrameSource}. It is either an NV21 array, as the legacy
+ * camera API delivers, or the Y plane of an image as a {@link ByteBuffer} with its strides, as an
+ * {@code ImageReader} delivers without copying.
+ *
+ * Instances are owned and reused by the source. Whoever takes a frame must give it back with
+ * {@link FrameSource#releaseFrame(CameraFrame)}, and must not touch it afterwards.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class CameraFrame {
+
+  private byte[] data;
+  private ByteBuffer luminance;
+  private int rowStride;
+  private int pixelStride;
+  private int width;
+  private int height;
+  private long timestampNanos;
+  // The object of the source which holds the frame, e.g. an android.media.Image.
+  private Object owner;
+  // The generation of the mailbox in which the frame was posted.
+  private int generation;
+
+  /**
+   * Sets an NV21 frame.
+   *
+   * @return This object.
+   */
+  CameraFrame setData(byte[] data, int width, int height, long timestampNanos) {
+    this.data = data;
+    luminance = null;
+    rowStride = width;
+    pixelStride = 1;
+    this.width = width;
+    this.height = height;
+    this.timestampNanos = timestampNanos;
+    owner = null;
+    return this;
+  }
+
+  /**
+   * Sets a frame of which only the Y plane is given.
+   *
+   * @param owner The object of the source which holds the plane until the frame is released.
+   * @return This object.
+   */
+  CameraFrame setLuminance(ByteBuffer luminance, int rowStride, int pixelStride, int width,
+                           int height, long timestampNanos, Object owner) {
+    data = null;
+    this.luminance = luminance;
+    this.rowStride = rowStride;
+    this.pixelStride = pixelStride;
+    this.width = width;
+    this.height = height;
+    this.timestampNanos = timestampNanos;
+    this.owner = owner;
+    return this;
+  }
+
+  /**
+   * @return The NV21 frame, or {@code null} if only the Y plane is given.
+   * @see #getLuminance()
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * @return The Y plane, or {@code null} if the frame is given as an NV21 array. Its position is
+   *         not significant; whoever holds the frame may move it.
+   */
+  public ByteBuffer getLuminance() {
+    return luminance;
+  }
+
+  /**
+   * @return The number of bytes between the starts of two rows of the Y plane.
+   */
+  public int getRowStride() {
+    return rowStride;
+  }
+
+  /**
+   * @return The number of bytes between two pixels in a row of the Y plane.
+   */
+  public int getPixelStride() {
+    return pixelStride;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return The time at which the frame was delivered, as {@link System#nanoTime()}.
+   */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  void setGeneration(int generation) {
+    this.generation = generation;
+  }
+
+  /**
+   * @return The generation of the mailbox in which the frame was posted.
+   * @see PreviewFrameMailbox#discard()
+   */
+  public int getGeneration() {
+    return generation;
+  }
+
+  Object getOwner() {
+    return owner;
+  }
+
+}
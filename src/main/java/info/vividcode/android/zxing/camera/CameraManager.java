@@ -21,21 +21,20 @@
 package info.vividcode.android.zxing.camera;
 
 import android.content.Context;
-import android.graphics.Point;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import com.google.zxing.PlanarYUVLuminanceSource;
-import info.vividcode.android.zxing.camera.open.OpenCameraInterface;
+import info.vividcode.android.zxing.decode.FrameRotation;
 
 import java.io.IOException;
 
 /**
- * This object wraps the Camera service object and expects to be the only one talking to it. The
- * implementation encapsulates the steps needed to take preview-sized images, which are used for
- * both preview and decoding.
+ * This object wraps the camera, through a {@link FrameSource}, and expects to be the only one
+ * talking to it. The implementation encapsulates the steps needed to take preview-sized images,
+ * which are used for both preview and decoding.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -48,24 +47,47 @@ public final class CameraManager {
   private static final int MAX_FRAME_WIDTH = 1200; // = 5/8 * 1920
   private static final int MAX_FRAME_HEIGHT = 675; // = 5/8 * 1080
 
-  private final CameraConfigurationManager configManager;
-  private Camera camera;
-  private AutoFocusManager autoFocusManager;
+  private final FrameSource frameSource;
+  // Set once the frame source has opened, so that callers on the main thread needn't wait for it.
+  private volatile boolean opened;
+  private OpenTask openTask;
+  private long openRequestNanos;
   private Rect framingRect;
   private Rect framingRectInPreview;
   private boolean initialized;
-  private boolean previewing;
   private int requestedFramingRectWidth;
   private int requestedFramingRectHeight;
+  private final RegionOfInterestTracker regionOfInterestTracker = new RegionOfInterestTracker();
+
+  public CameraManager(Context context) {
+    this(new LegacyFrameSource(context));
+  }
+
   /**
-   * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
-   * clear the handler so it will only receive one message.
+   * @param frameSource The camera which preview frames come from.
    */
-  private final PreviewCallback previewCallback;
+  public CameraManager(FrameSource frameSource) {
+    this.frameSource = frameSource;
+  }
+
+  /**
+   * Receives the result of {@link CameraManager#openDriverAsync(OpenCallback)} on the main thread.
+   */
+  public interface OpenCallback {
+
+    /**
+     * Called when the camera has opened. The preview can be started once a surface is set with
+     * {@link CameraManager#setPreviewDisplay(SurfaceHolder)}.
+     */
+    void onDriverOpened();
+
+    /**
+     * Called when the camera failed to open.
+     *
+     * @param e An {@link IOException} or a {@link RuntimeException}.
+     */
+    void onDriverOpenFailed(Exception e);
 
-  public CameraManager(Context context) {
-    this.configManager = new CameraConfigurationManager(context);
-    previewCallback = new PreviewCallback(configManager);
   }
 
   /**
@@ -75,126 +97,221 @@ public final class CameraManager {
    * @throws IOException Indicates the camera driver failed to open.
    */
   public synchronized void openDriver(SurfaceHolder holder) throws IOException {
-    Camera theCamera = camera;
-    if (theCamera == null) {
-      theCamera = OpenCameraInterface.open();
-      if (theCamera == null) {
-        throw new IOException();
+    openRequestNanos = System.nanoTime();
+    frameSource.open();
+    onDriverOpened();
+    frameSource.setPreviewDisplay(holder);
+  }
+
+  /**
+   * Opens the camera driver and initializes the hardware parameters on a background thread, so
+   * that the layout and the surface can be made in the meantime. This must be called on the main
+   * thread, and the callback is called on it too, unless {@link #closeDriver()} is called first.
+   *
+   * @param callback The callback to tell the result to.
+   */
+  public void openDriverAsync(OpenCallback callback) {
+    OpenTask task;
+    synchronized (this) {
+      if (opened || openTask != null) {
+        return;
       }
-      camera = theCamera;
+      openRequestNanos = System.nanoTime();
+      task = new OpenTask(callback);
+      openTask = task;
     }
-    theCamera.setPreviewDisplay(holder);
+    task.thread.start();
+  }
 
+  /**
+   * Sets the surface which the camera will draw preview frames into. This must be called on the
+   * main thread after the camera has opened, before the preview starts.
+   *
+   * @param holder The surface object which the camera will draw preview frames into.
+   * @throws IOException Indicates the surface can't be used.
+   */
+  public synchronized void setPreviewDisplay(SurfaceHolder holder) throws IOException {
+    frameSource.setPreviewDisplay(holder);
+  }
+
+  private synchronized void onDriverOpened() {
+    opened = true;
     if (!initialized) {
       initialized = true;
-      configManager.initFromCameraParameters(theCamera);
       if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
         setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
         requestedFramingRectWidth = 0;
         requestedFramingRectHeight = 0;
       }
     }
+  }
 
-    Camera.Parameters parameters = theCamera.getParameters();
-    String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
-    try {
-      configManager.setDesiredCameraParameters(theCamera, false);
-    } catch (RuntimeException re) {
-      // Driver failed
-      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
-      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
-      // Reset:
-      if (parametersFlattened != null) {
-        parameters = theCamera.getParameters();
-        parameters.unflatten(parametersFlattened);
-        try {
-          theCamera.setParameters(parameters);
-          configManager.setDesiredCameraParameters(theCamera, true);
-        } catch (RuntimeException re2) {
-          // Well, darn. Give up
-          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
-        }
-      }
-    }
+  /**
+   * @return The value of {@link System#nanoTime()} when the camera was last asked to open, or 0 if
+   *         it has not been.
+   */
+  public synchronized long getOpenRequestNanos() {
+    return openRequestNanos;
+  }
 
+  public boolean isOpen() {
+    return opened;
   }
 
-  public synchronized boolean isOpen() {
-    return camera != null;
+  /**
+   * Closes the camera driver if still in use. If the camera is being opened, this waits for it
+   * and closes it, and the callback of {@link #openDriverAsync(OpenCallback)} is not called.
+   */
+  public void closeDriver() {
+    OpenTask task;
+    synchronized (this) {
+      task = openTask;
+      openTask = null;
+    }
+    if (task != null) {
+      // Not under the lock, which the opening thread takes when it finishes.
+      task.awaitOpened();
+    }
+    synchronized (this) {
+      opened = false;
+      if (frameSource.isOpen()) {
+        frameSource.close();
+        // Make sure to clear these each time we close the camera, so that any scanning rect
+        // requested by intent is forgotten.
+        framingRect = null;
+        framingRectInPreview = null;
+      }
+    }
   }
 
   /**
-   * Closes the camera driver if still in use.
+   * Opens the frame source on a thread of its own, and tells the result on the main thread.
    */
-  public synchronized void closeDriver() {
-    if (camera != null) {
-      camera.release();
-      camera = null;
-      // Make sure to clear these each time we close the camera, so that any scanning rect
-      // requested by intent is forgotten.
-      framingRect = null;
-      framingRectInPreview = null;
+  private final class OpenTask implements Runnable {
+
+    private final OpenCallback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Thread thread = new Thread(this, "CameraOpen");
+    // Read on the main thread after the post, which publishes it.
+    private Exception error;
+
+    OpenTask(OpenCallback callback) {
+      this.callback = callback;
     }
+
+    @Override
+    public void run() {
+      long start = System.nanoTime();
+      try {
+        frameSource.open();
+        onDriverOpened();
+        Log.i(TAG, "Camera opened in " + (System.nanoTime() - start) / 1000000L + " ms");
+      } catch (IOException e) {
+        error = e;
+      } catch (RuntimeException e) {
+        // Such as "Fail to connect to camera service".
+        error = e;
+      }
+      mainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          deliver();
+        }
+      });
+    }
+
+    private void deliver() {
+      synchronized (CameraManager.this) {
+        if (openTask != this) {
+          // Closed in the meantime.
+          return;
+        }
+        openTask = null;
+      }
+      if (error == null) {
+        callback.onDriverOpened();
+      } else {
+        callback.onDriverOpenFailed(error);
+      }
+    }
+
+    void awaitOpened() {
+      boolean interrupted = false;
+      while (thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
   }
 
   /**
    * Asks the camera hardware to begin drawing preview frames to the screen.
    */
   public synchronized void startPreview() {
-    Camera theCamera = camera;
-    if (theCamera != null && !previewing) {
-      theCamera.startPreview();
-      previewing = true;
-      autoFocusManager = new AutoFocusManager(camera);
-    }
+    frameSource.startPreview();
   }
 
   /**
    * Tells the camera to stop drawing preview frames.
    */
   public synchronized void stopPreview() {
-    if (autoFocusManager != null) {
-      autoFocusManager.stop();
-      autoFocusManager = null;
-    }
-    if (camera != null && previewing) {
-      camera.stopPreview();
-      previewCallback.setHandler(null, 0);
-      previewing = false;
-    }
+    frameSource.stopPreview();
+    regionOfInterestTracker.reset();
   }
 
   /**
    * Convenience method for {@link info.vividcode.android.zxing.CaptureActivity}
    */
   public synchronized void setTorch(boolean newSetting) {
-    if (newSetting != configManager.getTorchState(camera)) {
-      if (camera != null) {
-        if (autoFocusManager != null) {
-          autoFocusManager.stop();
-        }
-        configManager.setTorch(camera, newSetting);
-        if (autoFocusManager != null) {
-          autoFocusManager.start();
-        }
-      }
+    if (opened) {
+      frameSource.setTorch(newSetting);
     }
   }
 
   /**
-   * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
-   * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-   * respectively.
+   * Preview frames will be posted to the mailbox supplied, until {@link #cancelPreviewFrames()}
+   * is called or the preview stops. Some frame sources post only a single frame per call, so this
+   * must be called again for each frame. Whoever takes a frame from the mailbox must pass it to
+   * {@link #releasePreviewFrame(CameraFrame)} when it has finished with it.
    *
-   * @param handler The handler to send the message to.
-   * @param message The what field of the message to be sent.
+   * @param mailbox The mailbox to post frames to.
    */
-  public synchronized void requestPreviewFrame(Handler handler, int message) {
-    Camera theCamera = camera;
-    if (theCamera != null && previewing) {
-      previewCallback.setHandler(handler, message);
-      theCamera.setOneShotPreviewCallback(previewCallback);
-    }
+  public synchronized void requestPreviewFrame(PreviewFrameMailbox mailbox) {
+    frameSource.requestFrames(mailbox);
+  }
+
+  /**
+   * Stops posting preview frames requested by {@link #requestPreviewFrame(PreviewFrameMailbox)}.
+   */
+  public synchronized void cancelPreviewFrames() {
+    frameSource.cancelFrames();
+  }
+
+  /**
+   * Sets how many preview frames may be out at a time. This should be at least the number of
+   * frames held by decoders at a time, plus one.
+   *
+   * @param count The number of preview buffers.
+   */
+  public synchronized void setPreviewBufferCount(int count) {
+    frameSource.setFrameBufferCount(count);
+  }
+
+  /**
+   * Gives back a preview frame delivered through {@link #requestPreviewFrame(PreviewFrameMailbox)},
+   * so that its buffer can be reused for a later frame. The frame must not be touched afterwards.
+   *
+   * @param frame The preview frame which is no longer used.
+   */
+  public void releasePreviewFrame(CameraFrame frame) {
+    frameSource.releaseFrame(frame);
   }
 
   /**
@@ -206,20 +323,21 @@ public final class CameraManager {
    */
   public synchronized Rect getFramingRect() {
     if (framingRect == null) {
-      if (camera == null) {
+      if (!opened) {
         return null;
       }
-      Point screenResolution = configManager.getScreenResolution();
-      if (screenResolution == null) {
+      int screenWidth = frameSource.getScreenWidth();
+      int screenHeight = frameSource.getScreenHeight();
+      if (screenWidth <= 0 || screenHeight <= 0) {
         // Called early, before init even finished
         return null;
       }
 
-      int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
-      int height = findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
+      int width = findDesiredDimensionInRange(screenWidth, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
+      int height = findDesiredDimensionInRange(screenHeight, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
 
-      int leftOffset = (screenResolution.x - width) / 2;
-      int topOffset = (screenResolution.y - height) / 2;
+      int leftOffset = (screenWidth - width) / 2;
+      int topOffset = (screenHeight - height) / 2;
       framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
       Log.d(TAG, "Calculated framing rect: " + framingRect);
     }
@@ -247,17 +365,29 @@ public final class CameraManager {
       if (framingRect == null) {
         return null;
       }
-      Rect rect = new Rect(framingRect);
-      Point cameraResolution = configManager.getCameraResolution();
-      Point screenResolution = configManager.getScreenResolution();
-      if (cameraResolution == null || screenResolution == null) {
+      int frameWidth = frameSource.getFrameWidth();
+      int frameHeight = frameSource.getFrameHeight();
+      int screenWidth = frameSource.getScreenWidth();
+      int screenHeight = frameSource.getScreenHeight();
+      if (frameWidth <= 0 || frameHeight <= 0 || screenWidth <= 0 || screenHeight <= 0) {
         // Called early, before init even finished
         return null;
       }
-      rect.left = rect.left * cameraResolution.x / screenResolution.x;
-      rect.right = rect.right * cameraResolution.x / screenResolution.x;
-      rect.top = rect.top * cameraResolution.y / screenResolution.y;
-      rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
+      // The framing rect is on the display, on which preview frames may be rotated.
+      int rotation = frameSource.getPreviewRotation();
+      boolean transposed = rotation == 90 || rotation == 270;
+      int previewWidth = transposed ? frameHeight : frameWidth;
+      int previewHeight = transposed ? frameWidth : frameHeight;
+      int left = framingRect.left * previewWidth / screenWidth;
+      int right = framingRect.right * previewWidth / screenWidth;
+      int top = framingRect.top * previewHeight / screenHeight;
+      int bottom = framingRect.bottom * previewHeight / screenHeight;
+      float x1 = FrameRotation.toFrameX(left, top, frameWidth, frameHeight, rotation);
+      float y1 = FrameRotation.toFrameY(left, top, frameWidth, frameHeight, rotation);
+      float x2 = FrameRotation.toFrameX(right, bottom, frameWidth, frameHeight, rotation);
+      float y2 = FrameRotation.toFrameY(right, bottom, frameWidth, frameHeight, rotation);
+      Rect rect = new Rect((int) Math.min(x1, x2), (int) Math.min(y1, y2),
+                           (int) Math.max(x1, x2), (int) Math.max(y1, y2));
       framingRectInPreview = rect;
     }
     return framingRectInPreview;
@@ -272,15 +402,16 @@ public final class CameraManager {
    */
   public synchronized void setManualFramingRect(int width, int height) {
     if (initialized) {
-      Point screenResolution = configManager.getScreenResolution();
-      if (width > screenResolution.x) {
-        width = screenResolution.x;
+      int screenWidth = frameSource.getScreenWidth();
+      int screenHeight = frameSource.getScreenHeight();
+      if (width > screenWidth) {
+        width = screenWidth;
       }
-      if (height > screenResolution.y) {
-        height = screenResolution.y;
+      if (height > screenHeight) {
+        height = screenHeight;
       }
-      int leftOffset = (screenResolution.x - width) / 2;
-      int topOffset = (screenResolution.y - height) / 2;
+      int leftOffset = (screenWidth - width) / 2;
+      int topOffset = (screenHeight - height) / 2;
       framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
       Log.d(TAG, "Calculated manual framing rect: " + framingRect);
       framingRectInPreview = null;
@@ -309,4 +440,19 @@ public final class CameraManager {
                                         rect.width(), rect.height(), false);
   }
 
+  /**
+   * @return The clockwise rotation in degrees from preview frames to the display.
+   */
+  public int getPreviewRotation() {
+    return frameSource.getPreviewRotation();
+  }
+
+  /**
+   * @return The tracker of the region where a barcode seems to be, which decoders report candidate
+   *         points and results to.
+   */
+  public RegionOfInterestTracker getRegionOfInterestTracker() {
+    return regionOfInterestTracker;
+  }
+
 }
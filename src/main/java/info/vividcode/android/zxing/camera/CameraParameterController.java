@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.hardware.Camera;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Keeps a snapshot of the parameters of a camera, which is read instead of the camera, and merges
+ * changes to them into it. Each {@link Camera#getParameters()} and
+ * {@link Camera#setParameters(Camera.Parameters)} is a call into the camera service and a parse of
+ * the whole parameter string, so changes are written with a single {@code setParameters} when
+ * {@link #applyPendingChanges()} is called, which is once per preview frame, and only if a value
+ * has actually changed.
+ *
+ * @author NOBUOKA Yu
+ */
+final class CameraParameterController {
+
+  private static final String TAG = CameraParameterController.class.getSimpleName();
+
+  private final Camera camera;
+  // What the camera has been told, with the pending changes merged in.
+  private final Camera.Parameters parameters;
+  private boolean pendingChanges;
+  private boolean closed;
+
+  /**
+   * @param camera The camera.
+   * @param parameters The parameters which the camera was last configured with, or {@code null}
+   *                   to read them from the camera.
+   */
+  CameraParameterController(Camera camera, Camera.Parameters parameters) {
+    this.camera = camera;
+    this.parameters = parameters != null ? parameters : camera.getParameters();
+  }
+
+  synchronized String getFlashMode() {
+    return parameters.getFlashMode();
+  }
+
+  synchronized List<String> getSupportedFlashModes() {
+    return parameters.getSupportedFlashModes();
+  }
+
+  synchronized String getFocusMode() {
+    return parameters.getFocusMode();
+  }
+
+  synchronized void setFlashMode(String flashMode) {
+    if (flashMode != null && !flashMode.equals(parameters.getFlashMode())) {
+      parameters.setFlashMode(flashMode);
+      pendingChanges = true;
+    }
+  }
+
+  /**
+   * Writes the changes made since the last call to the camera, if any. Auto focus is left running;
+   * stopping and restarting it around each change made the focus converge again from scratch.
+   *
+   * @return Whether the parameters were written.
+   */
+  synchronized boolean applyPendingChanges() {
+    if (!pendingChanges || closed) {
+      return false;
+    }
+    pendingChanges = false;
+    try {
+      camera.setParameters(parameters);
+    } catch (RuntimeException re) {
+      // The snapshot no longer tells what the camera has, so read it again.
+      Log.w(TAG, "Camera rejected parameters", re);
+      parameters.unflatten(camera.getParameters().flatten());
+    }
+    return true;
+  }
+
+  /**
+   * Drops the pending changes; nothing is written to the camera from now on. Called before the
+   * camera is released.
+   */
+  synchronized void close() {
+    closed = true;
+    pendingChanges = false;
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.view.SurfaceHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link FrameSource} without a camera, which delivers given NV21 frames one after another
+ * each time {@link #deliverNextFrame()} is called. This is for tests of the code which decodes
+ * preview frames.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FakeFrameSource implements FrameSource {
+
+  private final List<byte[]> frames;
+  private final int frameWidth;
+  private final int frameHeight;
+  private final int screenWidth;
+  private final int screenHeight;
+  private final int previewRotation;
+  private int nextFrameIndex;
+  private boolean open;
+  private boolean previewing;
+  private boolean torch;
+  private PreviewFrameMailbox mailbox;
+  private int outstandingFrames;
+  private int releasedFrames;
+
+  /**
+   * @param frames NV21 frames of {@code frameWidth} x {@code frameHeight}, which are delivered
+   *               in order, over and over.
+   * @param previewRotation Clockwise rotation in degrees which makes the frames upright on the
+   *                        screen.
+   */
+  public FakeFrameSource(List<byte[]> frames, int frameWidth, int frameHeight, int screenWidth,
+                         int screenHeight, int previewRotation) {
+    if (frames.isEmpty()) {
+      throw new IllegalArgumentException("No frames");
+    }
+    this.frames = new ArrayList<byte[]>(frames);
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.screenWidth = screenWidth;
+    this.screenHeight = screenHeight;
+    this.previewRotation = previewRotation;
+  }
+
+  /**
+   * Posts the next frame to the mailbox if frames have been requested.
+   *
+   * @return Whether a frame was posted.
+   */
+  public synchronized boolean deliverNextFrame() {
+    PreviewFrameMailbox theMailbox = mailbox;
+    if (!previewing || theMailbox == null) {
+      return false;
+    }
+    byte[] data = frames.get(nextFrameIndex);
+    nextFrameIndex = (nextFrameIndex + 1) % frames.size();
+    outstandingFrames++;
+    CameraFrame replaced =
+        theMailbox.post(new CameraFrame().setData(data, frameWidth, frameHeight, System.nanoTime()));
+    if (replaced != null) {
+      releaseFrame(replaced);
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized void open() {
+    open = true;
+  }
+
+  @Override
+  public void setPreviewDisplay(SurfaceHolder holder) {
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public synchronized void close() {
+    open = false;
+  }
+
+  @Override
+  public synchronized void startPreview() {
+    if (open) {
+      previewing = true;
+    }
+  }
+
+  @Override
+  public synchronized void stopPreview() {
+    previewing = false;
+    mailbox = null;
+  }
+
+  @Override
+  public synchronized void requestFrames(PreviewFrameMailbox mailbox) {
+    if (previewing) {
+      this.mailbox = mailbox;
+    }
+  }
+
+  @Override
+  public synchronized void cancelFrames() {
+    mailbox = null;
+  }
+
+  @Override
+  public synchronized void releaseFrame(CameraFrame frame) {
+    outstandingFrames--;
+    releasedFrames++;
+  }
+
+  @Override
+  public void setFrameBufferCount(int count) {
+  }
+
+  @Override
+  public synchronized void setTorch(boolean on) {
+    torch = on;
+  }
+
+  public synchronized boolean isTorchOn() {
+    return torch;
+  }
+
+  /**
+   * @return The number of frames delivered but not released yet, including one waiting in the
+   *         mailbox.
+   */
+  public synchronized int getOutstandingFrameCount() {
+    return outstandingFrames;
+  }
+
+  public synchronized int getReleasedFrameCount() {
+    return releasedFrames;
+  }
+
+  @Override
+  public int getFrameWidth() {
+    return open ? frameWidth : 0;
+  }
+
+  @Override
+  public int getFrameHeight() {
+    return open ? frameHeight : 0;
+  }
+
+  @Override
+  public int getScreenWidth() {
+    return open ? screenWidth : 0;
+  }
+
+  @Override
+  public int getScreenHeight() {
+    return open ? screenHeight : 0;
+  }
+
+  @Override
+  public int getPreviewRotation() {
+    return previewRotation;
+  }
+
+}
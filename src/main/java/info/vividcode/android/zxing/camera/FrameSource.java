@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * A camera which draws a preview and delivers preview frames to a {@link PreviewFrameMailbox}.
+ * {@link CameraManager} works out where to scan from the sizes and the rotation given here, and
+ * leaves the camera itself to an implementation of this.
+ *
+ * @author NOBUOKA Yu
+ * @see LegacyFrameSource
+ * @see Camera2FrameSource
+ * @see FakeFrameSource
+ */
+public interface FrameSource {
+
+  /**
+   * Opens the camera and chooses the preview size. This may take hundreds of milliseconds, and
+   * may be called on any thread; the other methods may block until it returns.
+   *
+   * @throws IOException Indicates the camera failed to open.
+   */
+  void open() throws IOException;
+
+  /**
+   * Sets the surface which the camera will draw the preview into. Called on the main thread once
+   * the camera is open and the surface exists, before the preview starts.
+   *
+   * @throws IOException Indicates the surface can't be used.
+   */
+  void setPreviewDisplay(SurfaceHolder holder) throws IOException;
+
+  boolean isOpen();
+
+  /**
+   * Closes the camera if still in use.
+   */
+  void close();
+
+  /**
+   * Starts drawing the preview. Frames are delivered only once they are requested.
+   */
+  void startPreview();
+
+  void stopPreview();
+
+  /**
+   * Frames will be posted to the mailbox supplied, until {@link #cancelFrames()} is called or the
+   * preview stops. Some sources post only a single frame per call, so this must be called again
+   * for each frame. A frame replaced in the mailbox without being taken is released by the source.
+   *
+   * @param mailbox The mailbox to post frames to.
+   */
+  void requestFrames(PreviewFrameMailbox mailbox);
+
+  void cancelFrames();
+
+  /**
+   * Gives back a frame which has been taken from the mailbox.
+   */
+  void releaseFrame(CameraFrame frame);
+
+  /**
+   * Sets how many frames may be out at a time, counting those queued in the camera. Takes effect
+   * when the preview starts.
+   */
+  void setFrameBufferCount(int count);
+
+  void setTorch(boolean on);
+
+  /**
+   * @return The width of preview frames, or 0 until the source is opened.
+   */
+  int getFrameWidth();
+
+  /**
+   * @return The height of preview frames, or 0 until the source is opened.
+   */
+  int getFrameHeight();
+
+  /**
+   * @return The width of the display which the preview is shown on, or 0 until the source is
+   *         opened.
+   */
+  int getScreenWidth();
+
+  /**
+   * @return The height of the display which the preview is shown on, or 0 until the source is
+   *         opened.
+   */
+  int getScreenHeight();
+
+  /**
+   * @return Clockwise rotation in degrees which makes preview frames upright on the display.
+   */
+  int getPreviewRotation();
+
+}
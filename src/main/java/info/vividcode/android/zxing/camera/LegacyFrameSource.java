@@ -0,0 +1,260 @@
+/*
+ * This file is derived from ZXing project ( https://github.com/zxing/zxing )
+ * and is modified for android-lib-ZXingCaptureActivity project.
+ *
+ * Copyright (C) 2008 ZXing authors
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.hardware.Camera;
+import android.os.Build;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import info.vividcode.android.zxing.camera.open.OpenCameraInterface;
+
+import java.io.IOException;
+
+/**
+ * A {@link FrameSource} on {@link android.hardware.Camera}, which delivers NV21 frames into
+ * preallocated buffers, or with one-shot preview callbacks below API level 8.
+ *
+ * @author dswitkin@google.com (Daniel Switkin)
+ */
+public final class LegacyFrameSource implements FrameSource {
+
+  private static final String TAG = LegacyFrameSource.class.getSimpleName();
+
+  private final CameraConfigurationManager configManager;
+  private Camera camera;
+  private int cameraIndex = OpenCameraInterface.NO_CAMERA_INDEX;
+  private AutoFocusManager autoFocusManager;
+  private CameraParameterController parameterController;
+  private boolean initialized;
+  private boolean previewing;
+  /**
+   * Preview frames are delivered here, which we pass on to the registered mailbox.
+   */
+  private final PreviewCallback previewCallback;
+  /**
+   * Preallocated buffers which preview frames are written into, or {@code null} if the platform
+   * can't deliver preview frames into buffers (API level < 8). In the latter case one-shot preview
+   * callbacks are used and the framework allocates a new array for each frame.
+   */
+  private final PreviewBufferPool bufferPool;
+
+  public LegacyFrameSource(Context context) {
+    this.configManager = new CameraConfigurationManager(context);
+    bufferPool = Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO ? new PreviewBufferPool() : null;
+    previewCallback = new PreviewCallback(configManager, bufferPool);
+  }
+
+  @Override
+  public synchronized void open() throws IOException {
+    Camera theCamera = camera;
+    if (theCamera == null) {
+      cameraIndex = OpenCameraInterface.findCameraIndex();
+      theCamera = OpenCameraInterface.open(cameraIndex);
+      if (theCamera == null) {
+        throw new IOException();
+      }
+      camera = theCamera;
+    }
+
+    if (!initialized) {
+      initialized = true;
+      configManager.initFromCameraParameters(theCamera, cameraIndex);
+    }
+
+    Camera.Parameters parameters = theCamera.getParameters();
+    String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
+    try {
+      // Don't try the full configuration again if the camera is known to reject it.
+      configManager.setDesiredCameraParameters(theCamera,
+          configManager.isSafeModeKnownToBeRequired());
+    } catch (RuntimeException re) {
+      // Driver failed
+      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
+      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
+      configManager.forgetCachedCapabilities();
+      // Reset:
+      if (parametersFlattened != null) {
+        parameters = theCamera.getParameters();
+        parameters.unflatten(parametersFlattened);
+        try {
+          theCamera.setParameters(parameters);
+          configManager.setDesiredCameraParameters(theCamera, true);
+        } catch (RuntimeException re2) {
+          // Well, darn. Give up
+          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+        }
+      }
+    }
+
+    parameterController =
+        new CameraParameterController(theCamera, configManager.getConfiguredParameters());
+    previewCallback.setParameterController(parameterController);
+
+    if (bufferPool != null) {
+      // The preview size may have been changed by the configuration above.
+      bufferPool.resize(configManager.getPreviewBufferSize());
+    }
+  }
+
+  @Override
+  public synchronized void setPreviewDisplay(SurfaceHolder holder) throws IOException {
+    if (camera != null) {
+      camera.setPreviewDisplay(holder);
+    }
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return camera != null;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (parameterController != null) {
+      previewCallback.setParameterController(null);
+      parameterController.close();
+      parameterController = null;
+    }
+    if (camera != null) {
+      camera.release();
+      camera = null;
+    }
+  }
+
+  @Override
+  public synchronized void startPreview() {
+    Camera theCamera = camera;
+    if (theCamera != null && !previewing) {
+      if (bufferPool != null) {
+        bufferPool.fill(theCamera);
+        theCamera.setPreviewCallbackWithBuffer(previewCallback);
+      }
+      theCamera.startPreview();
+      previewing = true;
+      autoFocusManager = new AutoFocusManager(camera, parameterController.getFocusMode());
+    }
+  }
+
+  @Override
+  public synchronized void stopPreview() {
+    if (autoFocusManager != null) {
+      autoFocusManager.stop();
+      autoFocusManager = null;
+    }
+    if (camera != null && previewing) {
+      if (bufferPool != null) {
+        // This also clears the buffer queue of the camera.
+        camera.setPreviewCallbackWithBuffer(null);
+      }
+      camera.stopPreview();
+      previewCallback.setMailbox(null);
+      if (bufferPool != null) {
+        bufferPool.drain();
+      }
+      previewing = false;
+    }
+  }
+
+  /**
+   * With one-shot preview callbacks (API level < 8) only a single frame is posted per call.
+   */
+  @Override
+  public synchronized void requestFrames(PreviewFrameMailbox mailbox) {
+    Camera theCamera = camera;
+    if (theCamera != null && previewing) {
+      previewCallback.setMailbox(mailbox);
+      if (bufferPool == null) {
+        theCamera.setOneShotPreviewCallback(previewCallback);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void cancelFrames() {
+    previewCallback.setMailbox(null);
+  }
+
+  @Override
+  public synchronized void releaseFrame(CameraFrame frame) {
+    if (bufferPool != null) {
+      bufferPool.recycle(frame.getData(), previewing ? camera : null);
+    }
+  }
+
+  /**
+   * Has no effect with one-shot preview callbacks.
+   */
+  @Override
+  public synchronized void setFrameBufferCount(int count) {
+    if (bufferPool != null) {
+      bufferPool.setMaxBuffers(count);
+    }
+  }
+
+  /**
+   * While previewing, the torch is switched with the next preview frame, together with any other
+   * change to the parameters.
+   */
+  @Override
+  public synchronized void setTorch(boolean on) {
+    CameraParameterController theParameterController = parameterController;
+    if (theParameterController != null &&
+        on != configManager.getTorchState(theParameterController)) {
+      configManager.setTorch(theParameterController, on);
+      if (!previewing) {
+        // No frame comes to write it.
+        theParameterController.applyPendingChanges();
+      }
+    }
+  }
+
+  @Override
+  public int getFrameWidth() {
+    Point cameraResolution = configManager.getCameraResolution();
+    return cameraResolution == null ? 0 : cameraResolution.x;
+  }
+
+  @Override
+  public int getFrameHeight() {
+    Point cameraResolution = configManager.getCameraResolution();
+    return cameraResolution == null ? 0 : cameraResolution.y;
+  }
+
+  @Override
+  public int getScreenWidth() {
+    Point screenResolution = configManager.getScreenResolution();
+    return screenResolution == null ? 0 : screenResolution.x;
+  }
+
+  @Override
+  public int getScreenHeight() {
+    Point screenResolution = configManager.getScreenResolution();
+    return screenResolution == null ? 0 : screenResolution.y;
+  }
+
+  @Override
+  public int getPreviewRotation() {
+    return configManager.getPreviewRotation();
+  }
+
+}
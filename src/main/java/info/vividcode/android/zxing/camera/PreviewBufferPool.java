@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.annotation.TargetApi;
+import android.hardware.Camera;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a small ring of preallocated preview buffers and lends them to the camera through
+ * {@link Camera#addCallbackBuffer(byte[])}, so that the framework does not have to allocate a new
+ * array for every preview frame.
+ *
+ * Buffers whose length does not match the current preview size are never handed to the camera
+ * again; they are simply dropped when they come back.
+ *
+ * @author NOBUOKA Yu
+ */
+@TargetApi(8)
+final class PreviewBufferPool {
+
+  private static final String TAG = PreviewBufferPool.class.getSimpleName();
+
+  private static final int DEFAULT_BUFFER_COUNT = 3;
+
+  private int maxBuffers;
+  private final List<byte[]> freeBuffers;
+  // The frame which wraps each buffer of the current size, so that no frame is allocated per delivery.
+  private final Map<byte[],CameraFrame> frames;
+  private int bufferSize;
+  // Buffers of the current size which exist, wherever they are (free, queued or being decoded).
+  private int allocatedBuffers;
+  // Buffers which are currently queued in the camera.
+  private int queuedBuffers;
+
+  PreviewBufferPool() {
+    this(DEFAULT_BUFFER_COUNT);
+  }
+
+  PreviewBufferPool(int maxBuffers) {
+    this.maxBuffers = maxBuffers;
+    freeBuffers = new ArrayList<byte[]>(maxBuffers);
+    frames = new IdentityHashMap<byte[],CameraFrame>();
+  }
+
+  /**
+   * Changes the number of buffers. Takes effect at the next {@link #fill(Camera)}; surplus
+   * buffers are not taken back from the camera.
+   */
+  synchronized void setMaxBuffers(int newMaxBuffers) {
+    maxBuffers = newMaxBuffers;
+  }
+
+  /**
+   * Changes the size of the buffers. Buffers of the previous size are forgotten.
+   *
+   * @param newBufferSize The number of bytes of one preview frame.
+   */
+  synchronized void resize(int newBufferSize) {
+    if (newBufferSize == bufferSize) {
+      return;
+    }
+    Log.i(TAG, "Preview buffer size: " + bufferSize + " -> " + newBufferSize);
+    bufferSize = newBufferSize;
+    freeBuffers.clear();
+    frames.clear();
+    allocatedBuffers = 0;
+    queuedBuffers = 0;
+  }
+
+  /**
+   * Allocates missing buffers and queues all free buffers to the camera.
+   */
+  synchronized void fill(Camera camera) {
+    if (bufferSize <= 0) {
+      return;
+    }
+    while (allocatedBuffers < maxBuffers) {
+      freeBuffers.add(new byte[bufferSize]);
+      allocatedBuffers++;
+    }
+    for (byte[] buffer : freeBuffers) {
+      camera.addCallbackBuffer(buffer);
+      queuedBuffers++;
+    }
+    freeBuffers.clear();
+  }
+
+  /**
+   * Must be called when the camera has delivered {@code buffer} to the preview callback.
+   */
+  synchronized void onDequeued(byte[] buffer) {
+    if (buffer != null && buffer.length == bufferSize && queuedBuffers > 0) {
+      queuedBuffers--;
+    }
+  }
+
+  /**
+   * @return The frame which wraps {@code buffer}, which is created at the first delivery of the
+   *         buffer. A new frame is returned each time for a stale buffer.
+   */
+  synchronized CameraFrame frameOf(byte[] buffer) {
+    CameraFrame frame = frames.get(buffer);
+    if (frame == null) {
+      frame = new CameraFrame();
+      if (buffer.length == bufferSize) {
+        frames.put(buffer, frame);
+      }
+    }
+    return frame;
+  }
+
+  /**
+   * Must be called after the camera has discarded its queue, that is, when the preview stops.
+   */
+  synchronized void drain() {
+    allocatedBuffers -= queuedBuffers;
+    queuedBuffers = 0;
+    // Forget the frames of the buffers which are gone. Frames of the others are created again.
+    frames.clear();
+  }
+
+  /**
+   * Gives a buffer back to the pool. It is queued to {@code camera} right away if the camera is
+   * given, or kept until the next {@link #fill(Camera)} otherwise.
+   *
+   * @param buffer The buffer to give back.
+   * @param camera The camera which is previewing, or {@code null}.
+   */
+  synchronized void recycle(byte[] buffer, Camera camera) {
+    if (buffer == null || buffer.length != bufferSize) {
+      // Stale buffer from before the preview size was changed.
+      return;
+    }
+    if (camera != null) {
+      camera.addCallbackBuffer(buffer);
+      queuedBuffers++;
+    } else {
+      freeBuffers.add(buffer);
+    }
+  }
+
+}
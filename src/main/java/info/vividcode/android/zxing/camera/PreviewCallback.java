@@ -22,8 +22,6 @@ package info.vividcode.android.zxing.camera;
 
 import android.graphics.Point;
 import android.hardware.Camera;
-import android.os.Handler;
-import android.os.Message;
 import android.util.Log;
 
 final class PreviewCallback implements Camera.PreviewCallback {
@@ -31,29 +29,52 @@ final class PreviewCallback implements Camera.PreviewCallback {
   private static final String TAG = PreviewCallback.class.getSimpleName();
 
   private final CameraConfigurationManager configManager;
-  private Handler previewHandler;
-  private int previewMessage;
+  // null unless preview frames are delivered into buffers of the pool.
+  private final PreviewBufferPool bufferPool;
+  // Written by the thread which requests frames, read by the thread which delivers them.
+  private volatile PreviewFrameMailbox mailbox;
+  // Changes to the parameters are written at most once per frame, here.
+  private volatile CameraParameterController parameterController;
 
-  PreviewCallback(CameraConfigurationManager configManager) {
+  PreviewCallback(CameraConfigurationManager configManager, PreviewBufferPool bufferPool) {
     this.configManager = configManager;
+    this.bufferPool = bufferPool;
   }
 
-  void setHandler(Handler previewHandler, int previewMessage) {
-    this.previewHandler = previewHandler;
-    this.previewMessage = previewMessage;
+  void setMailbox(PreviewFrameMailbox mailbox) {
+    this.mailbox = mailbox;
+  }
+
+  void setParameterController(CameraParameterController parameterController) {
+    this.parameterController = parameterController;
   }
 
   @Override
   public void onPreviewFrame(byte[] data, Camera camera) {
+    if (bufferPool != null) {
+      bufferPool.onDequeued(data);
+    }
+    CameraParameterController theParameterController = parameterController;
+    if (theParameterController != null) {
+      theParameterController.applyPendingChanges();
+    }
     Point cameraResolution = configManager.getCameraResolution();
-    Handler thePreviewHandler = previewHandler;
-    if (cameraResolution != null && thePreviewHandler != null) {
-      Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
-          cameraResolution.y, data);
-      message.sendToTarget();
-      previewHandler = null;
+    PreviewFrameMailbox theMailbox = mailbox;
+    if (cameraResolution != null && theMailbox != null) {
+      CameraFrame frame = bufferPool != null ? bufferPool.frameOf(data) : new CameraFrame();
+      frame.setData(data, cameraResolution.x, cameraResolution.y, System.nanoTime());
+      CameraFrame replaced = theMailbox.post(frame);
+      if (replaced != null && bufferPool != null) {
+        // The decoders didn't keep up; the replaced frame will never be decoded.
+        bufferPool.recycle(replaced.getData(), camera);
+      }
     } else {
-      Log.d(TAG, "Got preview callback, but no handler or resolution available");
+      if (bufferPool != null) {
+        // Nobody wants this frame; hand the buffer straight back to the camera.
+        bufferPool.recycle(data, camera);
+      } else {
+        Log.d(TAG, "Got preview callback, but no mailbox or resolution available");
+      }
     }
   }
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-slot mailbox through which preview frames are handed from the camera to the decode
+ * threads. A newly posted frame replaces a frame which has not been taken yet, so decoders always
+ * work on the freshest image. Neither posting nor taking takes a lock or allocates.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class PreviewFrameMailbox {
+
+  private final AtomicReference<CameraFrame> slot;
+  // Threads parked in take(), indexed by waiter index; null entries are not waiting.
+  private final AtomicReferenceArray<Thread> waiters;
+  private final AtomicInteger postedFrames;
+  private final AtomicInteger droppedFrames;
+  private volatile long firstPostNanos;
+  // Only advanced by discard(), which is called on one thread.
+  private volatile int generation;
+  private volatile boolean closed;
+
+  /**
+   * @param waiterCount The number of threads which take frames from this mailbox.
+   */
+  public PreviewFrameMailbox(int waiterCount) {
+    slot = new AtomicReference<CameraFrame>();
+    waiters = new AtomicReferenceArray<Thread>(waiterCount);
+    postedFrames = new AtomicInteger();
+    droppedFrames = new AtomicInteger();
+  }
+
+  /**
+   * Posts a frame, and wakes up a waiting thread if any.
+   *
+   * @param frame The preview frame.
+   * @return The frame which was replaced without being taken, or {@code null}. The caller owns it.
+   */
+  CameraFrame post(CameraFrame frame) {
+    // Stamped before the frame can be taken, so that a frame posted before a discard is stale.
+    frame.setGeneration(generation);
+    if (postedFrames.incrementAndGet() == 1) {
+      firstPostNanos = System.nanoTime();
+    }
+    CameraFrame replaced = slot.getAndSet(frame);
+    if (replaced != null) {
+      droppedFrames.incrementAndGet();
+    }
+    for (int i = 0; i < waiters.length(); i++) {
+      Thread waiter = waiters.get(i);
+      if (waiter != null && waiters.compareAndSet(i, waiter, null)) {
+        LockSupport.unpark(waiter);
+        break;
+      }
+    }
+    return replaced;
+  }
+
+  /**
+   * Takes the latest frame, waiting until one is posted.
+   *
+   * @param waiterIndex Index which is unique to the calling thread, less than the waiter count.
+   * @return The preview frame, or {@code null} if this mailbox has been closed.
+   */
+  public CameraFrame take(int waiterIndex) {
+    Thread current = Thread.currentThread();
+    while (!closed) {
+      CameraFrame frame = slot.getAndSet(null);
+      if (frame != null) {
+        return frame;
+      }
+      waiters.set(waiterIndex, current);
+      // A frame may have been posted before we were registered as a waiter.
+      if (slot.get() == null && !closed) {
+        LockSupport.park(this);
+      }
+      waiters.set(waiterIndex, null);
+    }
+    return null;
+  }
+
+  /**
+   * Removes the frame which has not been taken yet.
+   *
+   * @return The removed frame, or {@code null}. The caller owns it.
+   */
+  public CameraFrame clear() {
+    return slot.getAndSet(null);
+  }
+
+  /**
+   * Starts a new generation, so that the frames posted before, which may be being decoded now,
+   * are stale, and removes the frame which has not been taken yet.
+   *
+   * @return The removed frame, or {@code null}. The caller owns it.
+   */
+  public CameraFrame discard() {
+    generation++;
+    return slot.getAndSet(null);
+  }
+
+  /**
+   * @return The current generation, which frames posted from now on are stamped with.
+   * @see CameraFrame#getGeneration()
+   */
+  public int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Wakes up all waiting threads; {@link #take(int)} returns {@code null} from now on.
+   */
+  public void close() {
+    closed = true;
+    for (int i = 0; i < waiters.length(); i++) {
+      Thread waiter = waiters.getAndSet(i, null);
+      if (waiter != null) {
+        LockSupport.unpark(waiter);
+      }
+    }
+  }
+
+  /**
+   * @return The number of frames which the camera has delivered to this mailbox.
+   */
+  public int getPostedFrameCount() {
+    return postedFrames.get();
+  }
+
+  /**
+   * @return The value of {@link System#nanoTime()} when the first frame was posted, or 0 if no
+   *         frame has been posted.
+   */
+  public long getFirstPostNanos() {
+    return firstPostNanos;
+  }
+
+  /**
+   * @return The number of frames which were replaced by newer ones before being decoded.
+   */
+  public int getDroppedFrameCount() {
+    return droppedFrames.get();
+  }
+
+}
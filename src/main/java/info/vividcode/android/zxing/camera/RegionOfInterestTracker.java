@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.camera;
+
+import android.graphics.Rect;
+import com.google.zxing.ResultPoint;
+import info.vividcode.android.zxing.decode.ReusableYUVLuminanceSource;
+
+/**
+ * Tracks where in the preview a barcode seems to be, from the candidate points reported by the
+ * decoder and the points of the last result. While a region is tracked, only a padded box around
+ * those points is decoded instead of the whole framing rect.
+ *
+ * A region is used for a few frames only; new points extend it but don't make it last longer, so
+ * that a code which sticks out of the region is soon looked for in the whole framing rect again.
+ * All coordinates are in preview frame pixels. Decode threads share one instance.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class RegionOfInterestTracker {
+
+  private static final int FRAMES_PER_REGION = 5;
+  private static final int MIN_PADDING = 24;
+  private static final int MIN_REGION_SIZE = 96;
+  // Region sizes are rounded up to this, so that luminance sources of the same size are reused.
+  private static final int REGION_SIZE_STEP = 32;
+  // A region which is not much smaller than the framing rect is not worth it.
+  private static final float MAX_REGION_AREA_RATIO = 0.75f;
+
+  private boolean tracking;
+  private float minX;
+  private float minY;
+  private float maxX;
+  private float maxY;
+  private int remainingFrames;
+
+  /**
+   * Adds a point where a part of a barcode may be. A new region is started if none is tracked.
+   */
+  public synchronized void addCandidatePoint(float x, float y) {
+    if (!tracking) {
+      tracking = true;
+      minX = maxX = x;
+      minY = maxY = y;
+      remainingFrames = FRAMES_PER_REGION;
+    } else {
+      minX = Math.min(minX, x);
+      maxX = Math.max(maxX, x);
+      minY = Math.min(minY, y);
+      maxY = Math.max(maxY, y);
+    }
+  }
+
+  /**
+   * Starts a new region around the points of a decoded barcode.
+   *
+   * @param points The points of the result, relative to the source it was decoded from.
+   * @param source The source of the crop of the preview frame which was decoded.
+   */
+  public synchronized void addResultPoints(ResultPoint[] points,
+                                           ReusableYUVLuminanceSource source) {
+    if (points == null || points.length == 0) {
+      return;
+    }
+    tracking = false;
+    for (ResultPoint point : points) {
+      if (point != null) {
+        float x = point.getX();
+        float y = point.getY();
+        addCandidatePoint(source.toFrameX(x, y), source.toFrameY(x, y));
+      }
+    }
+  }
+
+  /**
+   * Gives the region to decode in the next frame. Each call uses up one frame of the region.
+   *
+   * @param bounds The framing rect in the preview frame; the region is kept within it.
+   * @param region Set to the region if one is returned.
+   * @return {@code true} if {@code region} has been set, or {@code false} if the whole
+   *         {@code bounds} should be decoded.
+   */
+  public synchronized boolean nextRegion(Rect bounds, Rect region) {
+    if (!tracking) {
+      return false;
+    }
+    if (remainingFrames <= 0) {
+      tracking = false;
+      return false;
+    }
+    remainingFrames--;
+
+    float boxWidth = maxX - minX;
+    float boxHeight = maxY - minY;
+    int padding = Math.max(MIN_PADDING, (int) (Math.max(boxWidth, boxHeight) / 2));
+    int width = roundUpRegionSize(boxWidth + 2 * padding);
+    int height = roundUpRegionSize(boxHeight + 2 * padding);
+    if (width > bounds.width() || height > bounds.height() ||
+        width * height > MAX_REGION_AREA_RATIO * bounds.width() * bounds.height()) {
+      return false;
+    }
+    int left = clamp((int) ((minX + maxX) / 2) - width / 2, bounds.left, bounds.right - width);
+    int top = clamp((int) ((minY + maxY) / 2) - height / 2, bounds.top, bounds.bottom - height);
+    region.set(left, top, left + width, top + height);
+    return true;
+  }
+
+  /**
+   * Forgets the tracked region.
+   */
+  public synchronized void reset() {
+    tracking = false;
+  }
+
+  private static int roundUpRegionSize(float size) {
+    int s = Math.max(MIN_REGION_SIZE, (int) Math.ceil(size));
+    return (s + REGION_SIZE_STEP - 1) / REGION_SIZE_STEP * REGION_SIZE_STEP;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return value < min ? min : value > max ? max : value;
+  }
+
+}
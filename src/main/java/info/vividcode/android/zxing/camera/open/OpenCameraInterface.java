@@ -32,23 +32,50 @@ public final class OpenCameraInterface {
   private OpenCameraInterface() {
   }
 
+  /**
+   * Value of {@link #findCameraIndex()} if the platform can't tell cameras apart (API level < 9).
+   */
+  public static final int NO_CAMERA_INDEX = -1;
+
   /**
    * Opens a rear-facing camera with {@link Camera#open(int)}, if one exists, or opens camera 0.
    */
   public static Camera open() {
+    return open(findCameraIndex());
+  }
+
+  /**
+   * Opens the camera of the given index.
+   *
+   * @param index Index from {@link #findCameraIndex()}.
+   * @return The camera, or {@code null} if there is no camera.
+   */
+  public static Camera open(int index) {
+    if (index == NO_CAMERA_INDEX) {
+      return Build.VERSION.SDK_INT >= 9 ? null : Camera.open();
+    }
+    Log.i(TAG, "Opening camera #" + index);
+    return openCamera(index);
+  }
+
+  /**
+   * @return The index of a rear-facing camera if one exists, or 0 otherwise. On API level < 9,
+   *         and if there is no camera at all, {@link #NO_CAMERA_INDEX} is returned.
+   */
+  public static int findCameraIndex() {
       if (Build.VERSION.SDK_INT >= 9) {
-          return openRearFacingCameraOrCamera0OrNull();
+          return findRearFacingCameraOrCamera0Index();
       } else {
-          return Camera.open();
+          return NO_CAMERA_INDEX;
       }
   }
 
   @TargetApi(9)
-  private static Camera openRearFacingCameraOrCamera0OrNull() {
+  private static int findRearFacingCameraOrCamera0Index() {
     int numCameras = Camera.getNumberOfCameras();
     if (numCameras == 0) {
       Log.w(TAG, "No cameras!");
-      return null;
+      return NO_CAMERA_INDEX;
     }
 
     int index = 0;
@@ -60,17 +87,18 @@ public final class OpenCameraInterface {
       }
       index++;
     }
-    
-    Camera camera;
+
     if (index < numCameras) {
-      Log.i(TAG, "Opening camera #" + index);
-      camera = Camera.open(index);
+      return index;
     } else {
-      Log.i(TAG, "No camera facing back; returning camera #0");
-      camera = Camera.open(0);
+      Log.i(TAG, "No camera facing back; using camera #0");
+      return 0;
     }
+  }
 
-    return camera;
+  @TargetApi(9)
+  private static Camera openCamera(int index) {
+    return Camera.open(index);
   }
 
 }
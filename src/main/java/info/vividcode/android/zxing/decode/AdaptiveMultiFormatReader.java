@@ -0,0 +1,223 @@
+/*
+ * This file is derived from ZXing project ( https://github.com/zxing/zxing )
+ * and is modified for android-lib-ZXingCaptureActivity project.
+ *
+ * Copyright (C) 2007 ZXing authors
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A replacement of {@link com.google.zxing.MultiFormatReader} which learns from what is decoded.
+ * Readers of the formats which have been decoded recently are tried first, and readers which have
+ * rarely hit are tried only on every Nth frame. Until something is decoded, readers are tried in
+ * the same order as {@code MultiFormatReader} does. Frames are counted by {@link #beginFrame()},
+ * so that all the images decoded from a frame, such as the levels of a pyramid, are read by the
+ * same readers.
+ *
+ * Like {@code MultiFormatReader}, an instance is meant to be used by a single thread. Hit rates
+ * are kept in a {@link FormatHitRates} which may be shared by several instances.
+ *
+ * @author srowen@google.com (Sean Owen)
+ * @author dswitkin@google.com (Daniel Switkin)
+ * @author NOBUOKA Yu
+ */
+public final class AdaptiveMultiFormatReader {
+
+  public static final int DEFAULT_DEMOTED_READER_INTERVAL = 4;
+
+  private final Map<DecodeHintType,?> hints;
+  private final FormatHitRates hitRates;
+  private final int demotedReaderInterval;
+  private final ReaderSlot[] slots;
+  private final AdaptiveOneDReader oneDReader;
+  private float[] arrangedScores;
+  private int frameCount;
+  // Whether rarely hit readers are tried on the current frame; all are tried until a frame begins.
+  private boolean includeDemoted = true;
+
+  /**
+   * @param hints Hints as given to {@code MultiFormatReader#setHints(Map)}.
+   * @param hitRates Hit rates to learn from and to record to.
+   * @param demotedReaderInterval Rarely hit readers are tried once in this number of frames.
+   */
+  public AdaptiveMultiFormatReader(Map<DecodeHintType,?> hints, FormatHitRates hitRates,
+                                   int demotedReaderInterval) {
+    if (demotedReaderInterval < 1) {
+      throw new IllegalArgumentException(
+          "demotedReaderInterval must be positive: " + demotedReaderInterval);
+    }
+    this.hints = hints;
+    this.hitRates = hitRates;
+    this.demotedReaderInterval = demotedReaderInterval;
+
+    boolean tryHarder = hints != null && hints.containsKey(DecodeHintType.TRY_HARDER);
+    @SuppressWarnings("unchecked")
+    Collection<BarcodeFormat> formats = hints == null ? null :
+        (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    List<ReaderSlot> slots = new ArrayList<ReaderSlot>();
+    AdaptiveOneDReader oneDReader = null;
+    if (formats != null) {
+      boolean addOneDReader =
+          formats.contains(BarcodeFormat.UPC_A) ||
+          formats.contains(BarcodeFormat.UPC_E) ||
+          formats.contains(BarcodeFormat.EAN_13) ||
+          formats.contains(BarcodeFormat.EAN_8) ||
+          formats.contains(BarcodeFormat.CODABAR) ||
+          formats.contains(BarcodeFormat.CODE_39) ||
+          formats.contains(BarcodeFormat.CODE_93) ||
+          formats.contains(BarcodeFormat.CODE_128) ||
+          formats.contains(BarcodeFormat.ITF) ||
+          formats.contains(BarcodeFormat.RSS_14) ||
+          formats.contains(BarcodeFormat.RSS_EXPANDED);
+      if (addOneDReader) {
+        oneDReader = new AdaptiveOneDReader(hints);
+      }
+      // Put 1D readers upfront in "normal" mode
+      if (oneDReader != null && !tryHarder) {
+        slots.add(new ReaderSlot(oneDReader, oneDReader.getFormats(), slots.size()));
+      }
+      if (formats.contains(BarcodeFormat.QR_CODE)) {
+        add(slots, new QRCodeReader(), BarcodeFormat.QR_CODE);
+      }
+      if (formats.contains(BarcodeFormat.DATA_MATRIX)) {
+        add(slots, new DataMatrixReader(), BarcodeFormat.DATA_MATRIX);
+      }
+      if (formats.contains(BarcodeFormat.AZTEC)) {
+        add(slots, new AztecReader(), BarcodeFormat.AZTEC);
+      }
+      if (formats.contains(BarcodeFormat.PDF_417)) {
+        add(slots, new PDF417Reader(), BarcodeFormat.PDF_417);
+      }
+      if (formats.contains(BarcodeFormat.MAXICODE)) {
+        add(slots, new MaxiCodeReader(), BarcodeFormat.MAXICODE);
+      }
+      // At end in "try harder" mode
+      if (oneDReader != null && tryHarder) {
+        slots.add(new ReaderSlot(oneDReader, oneDReader.getFormats(), slots.size()));
+      }
+    }
+    if (slots.isEmpty()) {
+      oneDReader = new AdaptiveOneDReader(hints);
+      if (!tryHarder) {
+        slots.add(new ReaderSlot(oneDReader, oneDReader.getFormats(), slots.size()));
+      }
+      add(slots, new QRCodeReader(), BarcodeFormat.QR_CODE);
+      add(slots, new DataMatrixReader(), BarcodeFormat.DATA_MATRIX);
+      add(slots, new AztecReader(), BarcodeFormat.AZTEC);
+      add(slots, new PDF417Reader(), BarcodeFormat.PDF_417);
+      add(slots, new MaxiCodeReader(), BarcodeFormat.MAXICODE);
+      if (tryHarder) {
+        slots.add(new ReaderSlot(oneDReader, oneDReader.getFormats(), slots.size()));
+      }
+    }
+    this.slots = slots.toArray(new ReaderSlot[slots.size()]);
+    this.oneDReader = oneDReader;
+  }
+
+  private static void add(List<ReaderSlot> slots, com.google.zxing.Reader reader,
+                          BarcodeFormat format) {
+    slots.add(new ReaderSlot(reader, new BarcodeFormat[] { format }, slots.size()));
+  }
+
+  /**
+   * Starts a new frame, deciding whether rarely hit readers are tried on the images decoded until
+   * the next call.
+   */
+  public void beginFrame() {
+    includeDemoted = frameCount++ % demotedReaderInterval == 0;
+  }
+
+  /**
+   * Decodes an image, trying the readers in the learned order. A successful decode is recorded to
+   * the hit rates.
+   *
+   * @param image The pixel data to decode
+   * @return The contents of the image
+   * @throws NotFoundException Any errors which occurred
+   */
+  public Result decodeWithState(BinaryBitmap image) throws NotFoundException {
+    float[] scores = hitRates.getScores();
+    if (scores != arrangedScores) {
+      ReaderSlot.arrange(slots, scores);
+      if (oneDReader != null) {
+        oneDReader.arrange(scores);
+      }
+      arrangedScores = scores;
+    }
+    boolean includeDemoted = this.includeDemoted;
+    if (oneDReader != null) {
+      oneDReader.setIncludeDemoted(includeDemoted);
+    }
+
+    for (ReaderSlot slot : slots) {
+      if (slot.demoted && !includeDemoted) {
+        continue;
+      }
+      try {
+        Result result = slot.reader.decode(image, hints);
+        hitRates.recordHit(result.getBarcodeFormat());
+        return result;
+      } catch (ReaderException re) {
+        // continue
+      }
+    }
+
+    throw NotFoundException.getNotFoundInstance();
+  }
+
+  public void reset() {
+    for (ReaderSlot slot : slots) {
+      slot.reader.reset();
+    }
+  }
+
+  /**
+   * For diagnostics.
+   *
+   * @return The formats in the order their readers are tried now. Formats of the 1D readers are
+   *         listed where the 1D readers as a whole are tried.
+   */
+  public List<BarcodeFormat> getReaderOrder() {
+    List<BarcodeFormat> order = new ArrayList<BarcodeFormat>();
+    for (ReaderSlot slot : slots) {
+      if (slot.reader == oneDReader) {
+        oneDReader.appendReaderOrder(order);
+      } else {
+        order.add(slot.formats[0]);
+      }
+    }
+    return order;
+  }
+
+}
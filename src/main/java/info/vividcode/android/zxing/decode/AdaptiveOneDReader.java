@@ -0,0 +1,180 @@
+/*
+ * This file is derived from ZXing project ( https://github.com/zxing/zxing )
+ * and is modified for android-lib-ZXingCaptureActivity project.
+ *
+ * Copyright (C) 2008 ZXing authors
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.CodaBarReader;
+import com.google.zxing.oned.Code128Reader;
+import com.google.zxing.oned.Code39Reader;
+import com.google.zxing.oned.Code93Reader;
+import com.google.zxing.oned.ITFReader;
+import com.google.zxing.oned.MultiFormatUPCEANReader;
+import com.google.zxing.oned.OneDReader;
+import com.google.zxing.oned.rss.RSS14Reader;
+import com.google.zxing.oned.rss.expanded.RSSExpandedReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link com.google.zxing.oned.MultiFormatOneDReader} which tries its readers in the order
+ * learned by {@link AdaptiveMultiFormatReader}. Rows are still sampled only once for all readers.
+ *
+ * @author dswitkin@google.com (Daniel Switkin)
+ * @author NOBUOKA Yu
+ */
+final class AdaptiveOneDReader extends OneDReader {
+
+  private static final BarcodeFormat[] UPC_EAN_FORMATS = {
+      BarcodeFormat.EAN_13, BarcodeFormat.UPC_A, BarcodeFormat.EAN_8, BarcodeFormat.UPC_E,
+  };
+
+  private final ReaderSlot[] slots;
+  private final BarcodeFormat[] formats;
+  private boolean includeDemoted = true;
+
+  AdaptiveOneDReader(Map<DecodeHintType,?> hints) {
+    @SuppressWarnings("unchecked")
+    Collection<BarcodeFormat> possibleFormats = hints == null ? null :
+        (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    boolean useCode39CheckDigit = hints != null &&
+        hints.get(DecodeHintType.ASSUME_CODE_39_CHECK_DIGIT) != null;
+    List<ReaderSlot> slots = new ArrayList<ReaderSlot>();
+    if (possibleFormats != null) {
+      List<BarcodeFormat> upcEanFormats = new ArrayList<BarcodeFormat>();
+      for (BarcodeFormat format : UPC_EAN_FORMATS) {
+        if (possibleFormats.contains(format)) {
+          upcEanFormats.add(format);
+        }
+      }
+      if (!upcEanFormats.isEmpty()) {
+        add(slots, new MultiFormatUPCEANReader(hints),
+            upcEanFormats.toArray(new BarcodeFormat[upcEanFormats.size()]));
+      }
+      if (possibleFormats.contains(BarcodeFormat.CODE_39)) {
+        add(slots, new Code39Reader(useCode39CheckDigit), BarcodeFormat.CODE_39);
+      }
+      if (possibleFormats.contains(BarcodeFormat.CODE_93)) {
+        add(slots, new Code93Reader(), BarcodeFormat.CODE_93);
+      }
+      if (possibleFormats.contains(BarcodeFormat.CODE_128)) {
+        add(slots, new Code128Reader(), BarcodeFormat.CODE_128);
+      }
+      if (possibleFormats.contains(BarcodeFormat.ITF)) {
+        add(slots, new ITFReader(), BarcodeFormat.ITF);
+      }
+      if (possibleFormats.contains(BarcodeFormat.CODABAR)) {
+        add(slots, new CodaBarReader(), BarcodeFormat.CODABAR);
+      }
+      if (possibleFormats.contains(BarcodeFormat.RSS_14)) {
+        add(slots, new RSS14Reader(), BarcodeFormat.RSS_14);
+      }
+      if (possibleFormats.contains(BarcodeFormat.RSS_EXPANDED)) {
+        add(slots, new RSSExpandedReader(), BarcodeFormat.RSS_EXPANDED);
+      }
+    }
+    if (slots.isEmpty()) {
+      add(slots, new MultiFormatUPCEANReader(hints), UPC_EAN_FORMATS);
+      add(slots, new Code39Reader(), BarcodeFormat.CODE_39);
+      add(slots, new CodaBarReader(), BarcodeFormat.CODABAR);
+      add(slots, new Code93Reader(), BarcodeFormat.CODE_93);
+      add(slots, new Code128Reader(), BarcodeFormat.CODE_128);
+      add(slots, new ITFReader(), BarcodeFormat.ITF);
+      add(slots, new RSS14Reader(), BarcodeFormat.RSS_14);
+      add(slots, new RSSExpandedReader(), BarcodeFormat.RSS_EXPANDED);
+    }
+    this.slots = slots.toArray(new ReaderSlot[slots.size()]);
+
+    List<BarcodeFormat> formats = new ArrayList<BarcodeFormat>();
+    for (ReaderSlot slot : this.slots) {
+      for (BarcodeFormat format : slot.formats) {
+        formats.add(format);
+      }
+    }
+    this.formats = formats.toArray(new BarcodeFormat[formats.size()]);
+  }
+
+  private static void add(List<ReaderSlot> slots, OneDReader reader, BarcodeFormat... formats) {
+    slots.add(new ReaderSlot(reader, formats, slots.size()));
+  }
+
+  /**
+   * @return All formats this reader decodes.
+   */
+  BarcodeFormat[] getFormats() {
+    return formats;
+  }
+
+  void arrange(float[] scores) {
+    ReaderSlot.arrange(slots, scores);
+  }
+
+  /**
+   * @param includeDemoted {@code true} if demoted readers are also tried for the next frame.
+   */
+  void setIncludeDemoted(boolean includeDemoted) {
+    this.includeDemoted = includeDemoted;
+  }
+
+  /**
+   * Appends the formats of the readers in the order they are tried.
+   */
+  void appendReaderOrder(List<BarcodeFormat> order) {
+    for (ReaderSlot slot : slots) {
+      for (BarcodeFormat format : slot.formats) {
+        order.add(format);
+      }
+    }
+  }
+
+  @Override
+  public Result decodeRow(int rowNumber,
+                          BitArray row,
+                          Map<DecodeHintType,?> hints) throws NotFoundException {
+    for (ReaderSlot slot : slots) {
+      if (slot.demoted && !includeDemoted) {
+        continue;
+      }
+      try {
+        return ((OneDReader) slot.reader).decodeRow(rowNumber, row, hints);
+      } catch (ReaderException re) {
+        // continue
+      }
+    }
+
+    throw NotFoundException.getNotFoundInstance();
+  }
+
+  @Override
+  public void reset() {
+    for (ReaderSlot slot : slots) {
+      slot.reader.reset();
+    }
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the luminance of a crop of a Y plane in a {@link ByteBuffer}, which may be direct, and of
+ * which rows may be padded and pixels may be interleaved with other planes, as the planes of an
+ * {@code android.media.Image} are. Only the rows of the crop are read, each with a single bulk get
+ * into an array which is allocated once and reused.
+ *
+ * The crop is not rotated. {@link DecodeEngine} reads it once with {@link #getMatrix()}, and
+ * decodes the crop-sized array with a {@link ReusableYUVLuminanceSource}, which rotates it.
+ *
+ * The position and the limit of the buffer are moved while reading, so the buffer must not be
+ * read by another thread at the same time.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class ByteBufferLuminanceSource extends LuminanceSource {
+
+  private ByteBuffer plane;
+  private int rowStride;
+  private int pixelStride;
+  private int left;
+  private int top;
+  private byte[] row;
+  private byte[] matrix;
+  private boolean matrixValid;
+  // A row of the crop with its interleaved bytes, if the pixel stride is more than one.
+  private byte[] stridedRow;
+
+  /**
+   * Creates a source of the given crop size. It must be pointed at a plane with
+   * {@link #reset(ByteBuffer, int, int, int, int, int, int)} before it is used.
+   *
+   * @param cropWidth The width of the crop in the plane.
+   * @param cropHeight The height of the crop in the plane.
+   */
+  public ByteBufferLuminanceSource(int cropWidth, int cropHeight) {
+    super(cropWidth, cropHeight);
+  }
+
+  /**
+   * Re-points this source at a plane. The crop size is fixed; use
+   * {@link #isReusableFor(int, int)} to check it.
+   *
+   * @param plane The Y plane. Pixel (x, y) is at {@code y * rowStride + x * pixelStride} from the
+   *              start of the buffer; its position is not significant.
+   * @param rowStride The number of bytes between the starts of two rows.
+   * @param pixelStride The number of bytes between two pixels in a row.
+   * @param dataWidth The width of the plane.
+   * @param dataHeight The height of the plane.
+   * @param left The left of the crop in the plane.
+   * @param top The top of the crop in the plane.
+   * @return This object.
+   */
+  public ByteBufferLuminanceSource reset(ByteBuffer plane, int rowStride, int pixelStride,
+                                         int dataWidth, int dataHeight, int left, int top) {
+    if (left < 0 || top < 0 ||
+        left + getWidth() > dataWidth || top + getHeight() > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    if (pixelStride < 1 || rowStride < (dataWidth - 1) * pixelStride + 1) {
+      throw new IllegalArgumentException("Strides are too small for the width.");
+    }
+    this.plane = plane;
+    this.rowStride = rowStride;
+    this.pixelStride = pixelStride;
+    this.left = left;
+    this.top = top;
+    matrixValid = false;
+    return this;
+  }
+
+  /**
+   * @return {@code true} if this source can be re-pointed at a crop of the given size in the
+   *         plane.
+   */
+  public boolean isReusableFor(int cropWidth, int cropHeight) {
+    return getWidth() == cropWidth && getHeight() == cropHeight;
+  }
+
+  private void copyRow(int y, byte[] dest, int offset) {
+    ByteBuffer thePlane = plane;
+    int width = getWidth();
+    int limit = thePlane.limit();
+    int start = (top + y) * rowStride + left * pixelStride;
+    if (pixelStride == 1) {
+      thePlane.limit(start + width).position(start);
+      thePlane.get(dest, offset, width);
+    } else {
+      int length = (width - 1) * pixelStride + 1;
+      if (stridedRow == null || stridedRow.length < length) {
+        stridedRow = new byte[length];
+      }
+      thePlane.limit(start + length).position(start);
+      thePlane.get(stridedRow, 0, length);
+      byte[] strided = stridedRow;
+      for (int x = 0, i = 0; x < width; x++, i += pixelStride) {
+        dest[offset + x] = strided[i];
+      }
+    }
+    thePlane.limit(limit);
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      if (this.row == null) {
+        this.row = new byte[width];
+      }
+      row = this.row;
+    }
+    if (matrixValid) {
+      System.arraycopy(matrix, y * width, row, 0, width);
+    } else {
+      copyRow(y, row, 0);
+    }
+    return row;
+  }
+
+  /**
+   * @return The crop in an array of its size, which is owned by this object and overwritten after
+   *         {@link #reset}.
+   */
+  @Override
+  public byte[] getMatrix() {
+    if (!matrixValid) {
+      int width = getWidth();
+      int height = getHeight();
+      if (matrix == null) {
+        matrix = new byte[width * height];
+      }
+      for (int y = 0; y < height; y++) {
+        copyRow(y, matrix, y * width);
+      }
+      matrixValid = true;
+    }
+    return matrix;
+  }
+
+}
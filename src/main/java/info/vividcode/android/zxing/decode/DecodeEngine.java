@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decodes preview frames: skips frames which are unchanged, moving or of low quality, crops the
+ * framing rect or the region of interest, downsamples it first in pyramid decode mode, binarizes
+ * it and reads it, reusing the same objects from one frame to the next. Nothing here depends on
+ * Android, so it runs on a plain JVM as well.
+ *
+ * Each instance is confined to one thread. The engines of a scanning session share a
+ * {@link DecodeSession}, so frames can be decoded on several threads in parallel.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class DecodeEngine {
+
+  public enum Outcome {
+    /** The frame was skipped without being read. */
+    SKIPPED,
+    /** The frame was read, but no barcode was found. */
+    NOT_FOUND,
+    /** A barcode was found. */
+    FOUND,
+  }
+
+  /**
+   * Told where each crop which is about to be read lies, so that candidate points which the
+   * readers report through {@link DecodeHintType#NEED_RESULT_POINT_CALLBACK} can be placed in the
+   * frame.
+   */
+  public interface CropListener {
+
+    /**
+     * @param source The source of the crop. A downsampled crop covers the same rectangle.
+     * @param cropScale The number of frame pixels per pixel of the crop, which is more than one if
+     *                  the crop has been downsampled.
+     */
+    void onCrop(ReusableYUVLuminanceSource source, int cropScale);
+
+  }
+
+  private final AdaptiveMultiFormatReader multiFormatReader;
+  private final FrameQualityGate frameQualityGate;
+  private final DecodeLatencies latencies;
+  private final FrameChangeDetector changeDetector;
+  private final boolean pyramidDecodeMode;
+  private final CropListener cropListener;
+  // Non-null in multiple result mode.
+  private final ParallelMultipleBarcodeReader multipleBarcodeReader;
+  // Sources for the whole framing rect, for the region and for the coarse pyramid level, each
+  // with its binarizer.
+  private ReusableYUVLuminanceSource framingRectSource;
+  private ReusableHybridBinarizer framingRectBinarizer;
+  private ReusableYUVLuminanceSource regionSource;
+  private ReusableHybridBinarizer regionBinarizer;
+  private DownsampledYUVLuminanceSource coarseSource;
+  private ReusableHybridBinarizer coarseBinarizer;
+  // Frames given as a Y plane: the framing rect is read out of the plane once, into the matrix of
+  // this source, and everything after works on that crop-sized array as on an NV21 frame.
+  private ByteBufferLuminanceSource planeSource;
+  // The outcome of the last frame.
+  private ReusableYUVLuminanceSource source;
+  private Result result;
+  private Result[] results;
+
+  /**
+   * @param session The session which this engine decodes frames of.
+   * @param hints Hints for the readers.
+   * @param cropListener A listener of crops, or {@code null}.
+   */
+  public DecodeEngine(DecodeSession session, Map<DecodeHintType,?> hints,
+                      CropListener cropListener) {
+    multiFormatReader = new AdaptiveMultiFormatReader(hints, session.getFormatHitRates(),
+        AdaptiveMultiFormatReader.DEFAULT_DEMOTED_READER_INTERVAL);
+    frameQualityGate = session.getFrameQualityGate();
+    latencies = session.getDecodeLatencies();
+    changeDetector = new FrameChangeDetector(session.getUnchangedFrameThreshold(),
+        session.getMotionThreshold());
+    pyramidDecodeMode = session.isPyramidDecodeMode();
+    this.cropListener = cropListener;
+    ExecutorService subRegionExecutor = session.getSubRegionExecutor();
+    multipleBarcodeReader = subRegionExecutor == null ? null :
+        new ParallelMultipleBarcodeReader(subRegionExecutor, hints);
+  }
+
+  /**
+   * Decodes a frame. The results are kept until the next call.
+   *
+   * @return Whether a barcode was found.
+   * @see #getResult()
+   * @see #getResults()
+   * @see #getSource()
+   */
+  public Outcome decode(PreviewFrame frame) {
+    source = null;
+    result = null;
+    results = null;
+    byte[] data = frame.getData();
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    // The place of the data in the frame; not zero if the data is a crop of the frame.
+    int dataLeft = 0;
+    int dataTop = 0;
+    // The copy of a Y plane is counted as part of building the luminance source.
+    long copyNanos = 0L;
+    if (data == null) {
+      long copyStart = System.nanoTime();
+      data = readFramingRect(frame);
+      copyNanos = System.nanoTime() - copyStart;
+      width = frame.getCropWidth();
+      height = frame.getCropHeight();
+      dataLeft = frame.getLeft();
+      dataTop = frame.getTop();
+    }
+    // Frames of a static scene which has failed, and frames blurred by motion are skipped.
+    if (changeDetector.check(data, width, frame.getLeft() - dataLeft, frame.getTop() - dataTop,
+        frame.getCropWidth(), frame.getCropHeight()) != FrameChangeDetector.Verdict.DECODE) {
+      return Outcome.SKIPPED;
+    }
+    long sourceStart = System.nanoTime();
+    ReusableHybridBinarizer binarizer;
+    // Decode only around the candidates of previous frames if there are any. Not in multiple
+    // result mode, as the other barcodes would be out of the region.
+    boolean inRegion = frame.hasRegion() && multipleBarcodeReader == null;
+    if (inRegion) {
+      regionSource = sourceFor(regionSource, frame.getRegionWidth(), frame.getRegionHeight(),
+          frame.getRotation());
+      source = regionSource.reset(data, width, height, frame.getRegionLeft() - dataLeft,
+          frame.getRegionTop() - dataTop, dataLeft, dataTop);
+      binarizer = regionBinarizer = binarizerFor(regionBinarizer, source);
+    } else {
+      framingRectSource = sourceFor(framingRectSource, frame.getCropWidth(),
+          frame.getCropHeight(), frame.getRotation());
+      source = framingRectSource.reset(data, width, height, frame.getLeft() - dataLeft,
+          frame.getTop() - dataTop, dataLeft, dataTop);
+      binarizer = framingRectBinarizer = binarizerFor(framingRectBinarizer, source);
+    }
+    latencies.record(DecodeLatencies.Stage.LUMINANCE_SOURCE,
+        copyNanos + System.nanoTime() - sourceStart);
+    // Blurry or flat frames are not worth binarizing; they are treated as failed.
+    if (!frameQualityGate.accept(data, width, source.getLeft() - dataLeft,
+        source.getTop() - dataTop, source.getCropWidth(), source.getCropHeight())) {
+      return Outcome.SKIPPED;
+    }
+    // The coarse and the full resolution pass try the same readers.
+    multiFormatReader.beginFrame();
+    // A region is small already, so only the whole framing rect is downsampled.
+    if (pyramidDecodeMode && !inRegion) {
+      result = decodeCoarse(data, width, height, dataLeft, dataTop);
+    }
+    if (result == null) {
+      if (cropListener != null) {
+        cropListener.onCrop(source, 1);
+      }
+      result = decode(binarizer);
+      if (result != null && pyramidDecodeMode) {
+        result = PyramidLevel.attach(result, 0);
+      }
+    }
+    if (result == null) {
+      changeDetector.onDecodeFailed();
+      return Outcome.NOT_FOUND;
+    }
+    changeDetector.onDecodeSucceeded();
+    if (multipleBarcodeReader != null) {
+      // Sub-regions are searched at the full resolution, even if the first was found coarse.
+      results = multipleBarcodeReader.decodeAround(new BinaryBitmap(binarizer), result);
+    }
+    return Outcome.FOUND;
+  }
+
+  /**
+   * Reads the framing rect of a frame given as a Y plane, one row at a time with bulk gets.
+   *
+   * @return The framing rect, unrotated, in an array of its size which is reused for the next
+   *         frame.
+   */
+  private byte[] readFramingRect(PreviewFrame frame) {
+    int cropWidth = frame.getCropWidth();
+    int cropHeight = frame.getCropHeight();
+    if (planeSource == null || !planeSource.isReusableFor(cropWidth, cropHeight)) {
+      planeSource = new ByteBufferLuminanceSource(cropWidth, cropHeight);
+    }
+    return planeSource.reset(frame.getPlane(), frame.getRowStride(), frame.getPixelStride(),
+        frame.getWidth(), frame.getHeight(), frame.getLeft(), frame.getTop()).getMatrix();
+  }
+
+  /**
+   * Decodes the crop of {@link #source} downsampled to the coarsest pyramid level which is still
+   * decodable.
+   *
+   * @return The result scaled up to the full resolution, or {@code null} if nothing is found.
+   */
+  private Result decodeCoarse(byte[] data, int width, int height, int dataLeft, int dataTop) {
+    int cropWidth = source.getCropWidth();
+    int cropHeight = source.getCropHeight();
+    int rotation = source.getRotation();
+    int level = DownsampledYUVLuminanceSource.coarsestLevelFor(cropWidth, cropHeight);
+    if (level == 0) {
+      return null;
+    }
+    if (coarseSource == null ||
+        !coarseSource.isReusableFor(cropWidth, cropHeight, level, rotation)) {
+      coarseSource = new DownsampledYUVLuminanceSource(cropWidth, cropHeight, level, rotation);
+    }
+    coarseSource.reset(data, width, height, source.getLeft() - dataLeft,
+        source.getTop() - dataTop);
+    coarseBinarizer = binarizerFor(coarseBinarizer, coarseSource);
+    if (cropListener != null) {
+      cropListener.onCrop(source, 1 << level);
+    }
+    Result coarseResult = decode(coarseBinarizer);
+    return coarseResult == null ? null : PyramidLevel.attach(coarseResult, level);
+  }
+
+  private Result decode(ReusableHybridBinarizer binarizer) {
+    long start = System.nanoTime();
+    long binarizationStart = binarizer.getBinarizationNanos();
+    try {
+      return multiFormatReader.decodeWithState(new BinaryBitmap(binarizer));
+    } catch (ReaderException re) {
+      return null;
+    } finally {
+      multiFormatReader.reset();
+      // Binarization is done lazily by the readers, so it is taken out of their time.
+      long binarization = binarizer.getBinarizationNanos() - binarizationStart;
+      latencies.record(DecodeLatencies.Stage.BINARIZATION, binarization);
+      latencies.record(DecodeLatencies.Stage.READER, System.nanoTime() - start - binarization);
+    }
+  }
+
+  /**
+   * @return The result of the last frame, or {@code null} if none was found.
+   */
+  public Result getResult() {
+    return result;
+  }
+
+  /**
+   * @return All results of the last frame in multiple result mode, the first of which is
+   *         {@link #getResult()}, or {@code null} if none was found or the mode is disabled.
+   */
+  public Result[] getResults() {
+    return results;
+  }
+
+  /**
+   * @return The source of the crop of the last frame which was read, or {@code null} if the frame
+   *         was skipped before being cropped. The points of the result are relative to it. It is
+   *         pointed at the next frame by the next call.
+   */
+  public ReusableYUVLuminanceSource getSource() {
+    return source;
+  }
+
+  private static ReusableYUVLuminanceSource sourceFor(ReusableYUVLuminanceSource source,
+                                                      int cropWidth, int cropHeight,
+                                                      int rotation) {
+    if (source != null && source.isReusableFor(cropWidth, cropHeight, rotation)) {
+      return source;
+    }
+    return new ReusableYUVLuminanceSource(cropWidth, cropHeight, rotation);
+  }
+
+  /**
+   * @return {@code binarizer} reset for the new frame if it is for {@code source}, or a new one.
+   */
+  private static ReusableHybridBinarizer binarizerFor(ReusableHybridBinarizer binarizer,
+                                                      LuminanceSource source) {
+    if (binarizer != null && binarizer.getLuminanceSource() == source) {
+      binarizer.reset();
+      return binarizer;
+    }
+    return new ReusableHybridBinarizer(source);
+  }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+/**
+ * Latency histograms of the stages of the decode pipeline in a scanning session. All decode
+ * threads and the main thread record into one instance.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class DecodeLatencies {
+
+  public enum Stage {
+    /** A decode thread waiting for a preview frame. */
+    FRAME_WAIT,
+    /** Building or re-pointing the luminance source of a frame. */
+    LUMINANCE_SOURCE,
+    /** Binarization during a decode attempt. */
+    BINARIZATION,
+    /** A decode attempt by the readers, excluding binarization. */
+    READER,
+    /** Rendering the thumbnail of a decoded frame. */
+    THUMBNAIL,
+    /** Passing the outcome of a frame from a decode thread to the main thread. */
+    MAIN_THREAD_HOP,
+  }
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  public DecodeLatencies() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  public void record(Stage stage, long nanos) {
+    histograms[stage.ordinal()].record(nanos);
+  }
+
+  public LatencyHistogram getHistogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Stage stage : Stage.values()) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(stage).append(": ").append(getHistogram(stage));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The settings and the state of a scanning session which all {@link DecodeEngine}s of the session
+ * share: which formats have been hit, how sharp recent frames were, and the latencies of the
+ * stages.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class DecodeSession {
+
+  private final boolean pyramidDecodeMode;
+  private final float unchangedFrameThreshold;
+  private final float motionThreshold;
+  private final FormatHitRates formatHitRates = new FormatHitRates();
+  private final FrameQualityGate frameQualityGate = new FrameQualityGate();
+  private final DecodeLatencies decodeLatencies;
+  private final ExecutorService subRegionExecutor;
+
+  /**
+   * @param pyramidDecodeMode Whether frames are decoded downsampled first.
+   * @param unchangedFrameThreshold See {@link FrameChangeDetector}.
+   * @param motionThreshold See {@link FrameChangeDetector}.
+   * @param decodeLatencies The latencies to record into.
+   * @param subRegionExecutor The executor on which sub-regions are searched for more barcodes, or
+   *                          {@code null} if only one barcode is returned per frame.
+   */
+  public DecodeSession(boolean pyramidDecodeMode, float unchangedFrameThreshold,
+                       float motionThreshold, DecodeLatencies decodeLatencies,
+                       ExecutorService subRegionExecutor) {
+    this.pyramidDecodeMode = pyramidDecodeMode;
+    this.unchangedFrameThreshold = unchangedFrameThreshold;
+    this.motionThreshold = motionThreshold;
+    this.decodeLatencies = decodeLatencies;
+    this.subRegionExecutor = subRegionExecutor;
+  }
+
+  public boolean isPyramidDecodeMode() {
+    return pyramidDecodeMode;
+  }
+
+  public float getUnchangedFrameThreshold() {
+    return unchangedFrameThreshold;
+  }
+
+  public float getMotionThreshold() {
+    return motionThreshold;
+  }
+
+  /**
+   * @return Hit rates of the formats decoded in this session.
+   */
+  public FormatHitRates getFormatHitRates() {
+    return formatHitRates;
+  }
+
+  /**
+   * @return The gate which frames pass before they are decoded.
+   */
+  public FrameQualityGate getFrameQualityGate() {
+    return frameQualityGate;
+  }
+
+  public DecodeLatencies getDecodeLatencies() {
+    return decodeLatencies;
+  }
+
+  /**
+   * @return The executor on which sub-regions are searched, or {@code null} if only one barcode
+   *         is returned per frame.
+   */
+  public ExecutorService getSubRegionExecutor() {
+    return subRegionExecutor;
+  }
+
+}
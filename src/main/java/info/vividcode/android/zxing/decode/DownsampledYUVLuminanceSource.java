@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A luminance source of a crop of a YUV frame, downsampled by a power of two. Each pixel is the
+ * mean of a square block of the frame, so large barcodes survive while the decoder has a fraction
+ * of the pixels to process.
+ *
+ * Like {@link ReusableYUVLuminanceSource}, it may be rotated, it is re-pointed at each frame with
+ * {@link #reset(byte[], int, int, int, int)}, and the matrix is computed once per frame into an
+ * array owned by this object.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class DownsampledYUVLuminanceSource extends LuminanceSource {
+
+  /**
+   * The coarsest level which is used. Level {@code n} is downsampled by {@code 2^n}.
+   */
+  public static final int MAX_LEVEL = 2;
+  // The shorter side of a downsampled image must not be smaller than this.
+  private static final int MIN_DIMENSION = 80;
+
+  private final int level;
+  private final int rotation;
+  // The size of the downsampled crop before rotation.
+  private final int scaledCropWidth;
+  private final int scaledCropHeight;
+  private byte[] yuvData;
+  private int dataWidth;
+  private int left;
+  private int top;
+  private final byte[] matrix;
+  private boolean matrixValid;
+
+  /**
+   * @param cropWidth The width of the crop in the frame, before downsampling.
+   * @param cropHeight The height of the crop in the frame, before downsampling.
+   * @param level The pyramid level; the crop is downsampled by {@code 2^level}.
+   * @param rotation Clockwise rotation of the crop in degrees; 0, 90, 180 or 270.
+   */
+  public DownsampledYUVLuminanceSource(int cropWidth, int cropHeight, int level, int rotation) {
+    super(FrameRotation.isTransposed(rotation) ? cropHeight >> level : cropWidth >> level,
+          FrameRotation.isTransposed(rotation) ? cropWidth >> level : cropHeight >> level);
+    FrameRotation.checkRotation(rotation);
+    this.level = level;
+    this.rotation = rotation;
+    scaledCropWidth = cropWidth >> level;
+    scaledCropHeight = cropHeight >> level;
+    matrix = new byte[getWidth() * getHeight()];
+  }
+
+  /**
+   * @return The coarsest level at which a crop of the given size is still decodable, or zero if it
+   *         should not be downsampled.
+   */
+  public static int coarsestLevelFor(int width, int height) {
+    int shorter = Math.min(width, height);
+    int level = MAX_LEVEL;
+    while (level > 0 && (shorter >> level) < MIN_DIMENSION) {
+      level--;
+    }
+    return level;
+  }
+
+  /**
+   * @return {@code true} if this source can be re-pointed at a crop of the given size in the
+   *         frame, level and rotation.
+   */
+  public boolean isReusableFor(int cropWidth, int cropHeight, int level, int rotation) {
+    return this.level == level && this.rotation == rotation &&
+        scaledCropWidth == cropWidth >> level && scaledCropHeight == cropHeight >> level;
+  }
+
+  /**
+   * @return The pyramid level of this source.
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Re-points this source at a frame.
+   *
+   * @param yuvData The YUV (NV21) frame. Only the Y plane is read.
+   * @param dataWidth The width of the frame.
+   * @param dataHeight The height of the frame.
+   * @param left The left of the crop in the frame.
+   * @param top The top of the crop in the frame.
+   * @return This object.
+   */
+  public DownsampledYUVLuminanceSource reset(byte[] yuvData, int dataWidth, int dataHeight,
+                                             int left, int top) {
+    if (left < 0 || top < 0 || left + (scaledCropWidth << level) > dataWidth ||
+        top + (scaledCropHeight << level) > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    this.yuvData = yuvData;
+    this.dataWidth = dataWidth;
+    this.left = left;
+    this.top = top;
+    matrixValid = false;
+    return this;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    System.arraycopy(getMatrix(), y * width, row, 0, width);
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    if (!matrixValid) {
+      int width = getWidth();
+      int height = getHeight();
+      int scale = 1 << level;
+      int shift = level * 2;
+      byte[] yuv = yuvData;
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          // The block in the frame of which this pixel is the mean.
+          int blockX;
+          int blockY;
+          switch (rotation) {
+            case 90:
+              blockX = y;
+              blockY = scaledCropHeight - 1 - x;
+              break;
+            case 180:
+              blockX = scaledCropWidth - 1 - x;
+              blockY = scaledCropHeight - 1 - y;
+              break;
+            case 270:
+              blockX = scaledCropWidth - 1 - y;
+              blockY = x;
+              break;
+            default:
+              blockX = x;
+              blockY = y;
+              break;
+          }
+          int blockOffset = (top + (blockY << level)) * dataWidth + left + (blockX << level);
+          int sum = 0;
+          for (int yy = 0; yy < scale; yy++, blockOffset += dataWidth) {
+            for (int xx = 0; xx < scale; xx++) {
+              sum += yuv[blockOffset + xx] & 0xFF;
+            }
+          }
+          matrix[y * width + x] = (byte) (sum >> shift);
+        }
+      }
+      matrixValid = true;
+    }
+    return matrix;
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Recent decode hit rates of each {@link BarcodeFormat} within a scanning session. Older hits
+ * decay every time a new one is recorded, so the rates follow what the user is scanning now.
+ *
+ * One instance is shared by the {@link AdaptiveMultiFormatReader}s of all decode workers. Hits are
+ * recorded under a lock, but they are rare; readers only read an immutable snapshot.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FormatHitRates {
+
+  private static final float DECAY = 0.9f;
+  private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+  private final float[] scores = new float[FORMATS.length];
+  private volatile float[] snapshot = new float[FORMATS.length];
+
+  /**
+   * Records that a barcode of the given format has been decoded.
+   */
+  public synchronized void recordHit(BarcodeFormat format) {
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] *= DECAY;
+    }
+    scores[format.ordinal()] += 1.0f;
+    snapshot = scores.clone();
+  }
+
+  /**
+   * @return The current scores indexed by {@link BarcodeFormat#ordinal()}. The array must not be
+   *         modified; a new array is returned once a hit is recorded.
+   */
+  float[] getScores() {
+    return snapshot;
+  }
+
+  /**
+   * @return The formats which have been decoded in this session, most frequent first.
+   */
+  public List<BarcodeFormat> getFormatOrder() {
+    final float[] scores = snapshot;
+    List<BarcodeFormat> order = new ArrayList<BarcodeFormat>();
+    for (BarcodeFormat format : FORMATS) {
+      if (scores[format.ordinal()] > 0.0f) {
+        order.add(format);
+      }
+    }
+    Collections.sort(order, new Comparator<BarcodeFormat>() {
+      @Override
+      public int compare(BarcodeFormat a, BarcodeFormat b) {
+        return Float.compare(scores[b.ordinal()], scores[a.ordinal()]);
+      }
+    });
+    return order;
+  }
+
+}
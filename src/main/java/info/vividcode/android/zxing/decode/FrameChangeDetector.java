@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+/**
+ * Compares each frame with earlier ones through a tiny signature: the mean luminance of each cell
+ * of a {@value #GRID_SIZE}x{@value #GRID_SIZE} grid over the crop. A frame which is almost the same
+ * as one that has already failed to decode is skipped, as it would fail again; a frame which
+ * differs a lot from the previous one is blurred by motion, so it is deferred.
+ *
+ * Differences are the mean absolute difference of the cells, from 0 to 255. Only a few frames in a
+ * row are skipped, so that the decoder looks at the scene again from time to time.
+ *
+ * An instance is meant to be used by a single decode thread.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FrameChangeDetector {
+
+  public enum Verdict {
+    /** The frame should be decoded. */
+    DECODE,
+    /** The frame is almost the same as one which has failed to decode. */
+    UNCHANGED,
+    /** The frame has changed too much from the previous one. */
+    MOVING,
+  }
+
+  public static final float DEFAULT_UNCHANGED_THRESHOLD = 2.0f;
+  public static final float DEFAULT_MOTION_THRESHOLD = 40.0f;
+
+  private static final int GRID_SIZE = 16;
+  private static final int SAMPLES_PER_CELL_SIDE = 4;
+  private static final int MAX_CONSECUTIVE_SKIPS = 10;
+
+  private final float unchangedThreshold;
+  private final float motionThreshold;
+  private int[] signature = new int[GRID_SIZE * GRID_SIZE];
+  private int[] previousSignature = new int[GRID_SIZE * GRID_SIZE];
+  private final int[] failedSignature = new int[GRID_SIZE * GRID_SIZE];
+  private boolean hasPrevious;
+  private boolean hasFailed;
+  private int consecutiveSkips;
+
+  /**
+   * @param unchangedThreshold Frames which differ less than this from the last frame which failed
+   *                           to decode are skipped. Zero disables the check.
+   * @param motionThreshold Frames which differ more than this from the previous frame are
+   *                        deferred. Zero disables the check.
+   */
+  public FrameChangeDetector(float unchangedThreshold, float motionThreshold) {
+    this.unchangedThreshold = unchangedThreshold;
+    this.motionThreshold = motionThreshold;
+  }
+
+  /**
+   * Computes the signature of a frame and decides what to do with it. Call
+   * {@link #onDecodeFailed()} or {@link #onDecodeSucceeded()} after a frame has been decoded.
+   *
+   * @param yuv The YUV (NV21) frame. Only the Y plane is read.
+   * @param dataWidth The width of the frame.
+   * @param left The left of the crop in the frame.
+   * @param top The top of the crop in the frame.
+   * @param width The width of the crop.
+   * @param height The height of the crop.
+   */
+  public Verdict check(byte[] yuv, int dataWidth, int left, int top, int width, int height) {
+    int[] swap = previousSignature;
+    previousSignature = signature;
+    signature = swap;
+    computeSignature(yuv, dataWidth, left, top, width, height, signature);
+
+    Verdict verdict = Verdict.DECODE;
+    if (consecutiveSkips < MAX_CONSECUTIVE_SKIPS) {
+      if (hasFailed && difference(signature, failedSignature) < unchangedThreshold) {
+        verdict = Verdict.UNCHANGED;
+      } else if (hasPrevious && motionThreshold > 0.0f &&
+          difference(signature, previousSignature) > motionThreshold) {
+        verdict = Verdict.MOVING;
+      }
+    }
+    hasPrevious = true;
+    consecutiveSkips = verdict == Verdict.DECODE ? 0 : consecutiveSkips + 1;
+    return verdict;
+  }
+
+  /**
+   * Remembers the frame last checked as one which doesn't decode.
+   */
+  public void onDecodeFailed() {
+    System.arraycopy(signature, 0, failedSignature, 0, signature.length);
+    hasFailed = true;
+  }
+
+  /**
+   * Forgets the frame which has failed to decode.
+   */
+  public void onDecodeSucceeded() {
+    hasFailed = false;
+  }
+
+  private static void computeSignature(byte[] yuv, int dataWidth, int left, int top,
+                                       int width, int height, int[] signature) {
+    int cellWidth = width / GRID_SIZE;
+    int cellHeight = height / GRID_SIZE;
+    int stepX = Math.max(1, cellWidth / SAMPLES_PER_CELL_SIDE);
+    int stepY = Math.max(1, cellHeight / SAMPLES_PER_CELL_SIDE);
+    for (int cellY = 0; cellY < GRID_SIZE; cellY++) {
+      for (int cellX = 0; cellX < GRID_SIZE; cellX++) {
+        int sum = 0;
+        int count = 0;
+        for (int y = cellY * cellHeight; y < (cellY + 1) * cellHeight; y += stepY) {
+          int offset = (top + y) * dataWidth + left;
+          for (int x = cellX * cellWidth; x < (cellX + 1) * cellWidth; x += stepX) {
+            sum += yuv[offset + x] & 0xFF;
+            count++;
+          }
+        }
+        signature[cellY * GRID_SIZE + cellX] = count == 0 ? 0 : sum / count;
+      }
+    }
+  }
+
+  private static float difference(int[] a, int[] b) {
+    int sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += Math.abs(a[i] - b[i]);
+    }
+    return (float) sum / a.length;
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cheap check of a frame before it is binarized, which lets frames that are too blurry or too flat
+ * to contain a readable barcode be skipped, e.g. while the camera is hunting for focus.
+ *
+ * Sharpness is the mean difference between neighbouring pixels, and contrast is the range of
+ * luminance, both sampled on a sparse grid of the Y plane. A frame is skipped if its contrast is
+ * very low, or if it is much less sharp than recent frames. The threshold follows the recent
+ * average, so a scene which is simply soft is still decoded, and a frame is never skipped more
+ * than a few times in a row.
+ *
+ * Decode threads share one instance.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FrameQualityGate {
+
+  private static final int SAMPLE_STEP = 4;
+  private static final int MIN_CONTRAST = 32;
+  // A frame less sharp than this ratio of the recent average is skipped.
+  private static final float SHARPNESS_THRESHOLD_RATIO = 0.6f;
+  private static final float AVERAGE_WEIGHT = 0.1f;
+  private static final int MAX_CONSECUTIVE_SKIPS = 4;
+
+  private final AtomicInteger skippedFrames = new AtomicInteger();
+  private final AtomicInteger passedFrames = new AtomicInteger();
+  private float averageSharpness;
+  private int consecutiveSkips;
+
+  /**
+   * Scores a crop of a frame and decides whether it is worth decoding.
+   *
+   * @param yuv The YUV (NV21) frame. Only the Y plane is read.
+   * @param dataWidth The width of the frame.
+   * @param left The left of the crop in the frame.
+   * @param top The top of the crop in the frame.
+   * @param width The width of the crop.
+   * @param height The height of the crop.
+   * @return {@code true} if the frame should be decoded.
+   */
+  public boolean accept(byte[] yuv, int dataWidth, int left, int top, int width, int height) {
+    int gradientSum = 0;
+    int samples = 0;
+    int min = 0xFF;
+    int max = 0;
+    for (int y = 0; y < height - 1; y += SAMPLE_STEP) {
+      int offset = (top + y) * dataWidth + left;
+      for (int x = 0; x < width - 1; x += SAMPLE_STEP) {
+        int pixel = yuv[offset + x] & 0xFF;
+        int right = yuv[offset + x + 1] & 0xFF;
+        int below = yuv[offset + x + dataWidth] & 0xFF;
+        gradientSum += Math.abs(right - pixel) + Math.abs(below - pixel);
+        samples++;
+        if (pixel < min) {
+          min = pixel;
+        }
+        if (pixel > max) {
+          max = pixel;
+        }
+      }
+    }
+    float sharpness = samples == 0 ? 0.0f : (float) gradientSum / samples;
+    int contrast = max - min;
+
+    boolean accepted;
+    synchronized (this) {
+      accepted = consecutiveSkips >= MAX_CONSECUTIVE_SKIPS ||
+          (contrast >= MIN_CONTRAST && sharpness >= SHARPNESS_THRESHOLD_RATIO * averageSharpness);
+      if (averageSharpness == 0.0f) {
+        averageSharpness = sharpness;
+      } else {
+        averageSharpness += AVERAGE_WEIGHT * (sharpness - averageSharpness);
+      }
+      consecutiveSkips = accepted ? 0 : consecutiveSkips + 1;
+    }
+    (accepted ? passedFrames : skippedFrames).incrementAndGet();
+    return accepted;
+  }
+
+  /**
+   * @return The number of frames which have been skipped.
+   */
+  public int getSkippedFrameCount() {
+    return skippedFrames.get();
+  }
+
+  /**
+   * @return The number of frames which have been passed on to be decoded.
+   */
+  public int getDecodedFrameCount() {
+    return passedFrames.get();
+  }
+
+}
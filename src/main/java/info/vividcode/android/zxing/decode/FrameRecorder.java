@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends preview frames to a file in the format which {@link FrameRecording} reads, so that a
+ * scanning session can be replayed off the device. Only the Y plane of a frame is written, as
+ * nothing else is decoded.
+ *
+ * Frames are copied into a few buffers and written on a thread of this recorder, so that decode
+ * threads don't wait for the disk. A frame is dropped if all buffers are waiting to be written.
+ * Any number of threads can record frames.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FrameRecorder implements Closeable {
+
+  public static final int DEFAULT_BUFFER_COUNT = 4;
+
+  // Posted by close() after the frames which are waiting.
+  private static final PendingFrame END_OF_FRAMES = new PendingFrame();
+
+  private final FileOutputStream stream;
+  private final FileChannel channel;
+  private final BlockingQueue<PendingFrame> freeFrames;
+  private final BlockingQueue<PendingFrame> pendingFrames;
+  private final Thread writerThread;
+  private final AtomicInteger recordedFrames = new AtomicInteger();
+  private final AtomicInteger droppedFrames = new AtomicInteger();
+  private volatile boolean closed;
+  private volatile IOException writeError;
+
+  /**
+   * Opens {@code file} to append frames to it. The header of the format is written if the file is
+   * empty.
+   *
+   * @param file The file to record into.
+   * @param bufferCount The number of frames which can wait to be written.
+   * @throws IOException If the file can't be opened or the header can't be written.
+   */
+  public FrameRecorder(File file, int bufferCount) throws IOException {
+    if (bufferCount < 1) {
+      throw new IllegalArgumentException("bufferCount must be positive: " + bufferCount);
+    }
+    stream = new FileOutputStream(file, true);
+    channel = stream.getChannel();
+    try {
+      if (channel.size() == 0L) {
+        ByteBuffer header = ByteBuffer.allocate(FrameRecording.FILE_HEADER_SIZE);
+        header.putInt(FrameRecording.MAGIC).putInt(FrameRecording.VERSION).flip();
+        writeFully(header);
+      }
+    } catch (IOException e) {
+      stream.close();
+      throw e;
+    }
+    freeFrames = new ArrayBlockingQueue<PendingFrame>(bufferCount);
+    pendingFrames = new ArrayBlockingQueue<PendingFrame>(bufferCount + 1);
+    for (int i = 0; i < bufferCount; i++) {
+      freeFrames.add(new PendingFrame());
+    }
+    writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeFrames();
+      }
+    }, "FrameRecorder");
+    writerThread.start();
+  }
+
+  /**
+   * Copies the Y plane of a frame to be written. Returns immediately.
+   *
+   * @param yuv The YUV (NV21) frame. Only the Y plane is read.
+   * @param width The width of the frame.
+   * @param height The height of the frame.
+   * @param timestampNanos The time at which the frame was taken, as {@link System#nanoTime()}.
+   * @param left The left of the framing rect in the frame.
+   * @param top The top of the framing rect in the frame.
+   * @param cropWidth The width of the framing rect in the frame.
+   * @param cropHeight The height of the framing rect in the frame.
+   * @param rotation The rotation in degrees by which the frame is read, as
+   *                 {@link ReusableYUVLuminanceSource} takes.
+   * @return {@code false} if the frame was dropped, or this recorder has been closed.
+   */
+  public boolean record(byte[] yuv, int width, int height, long timestampNanos,
+                        int left, int top, int cropWidth, int cropHeight, int rotation) {
+    PendingFrame frame = obtainFrame(width, height);
+    if (frame == null) {
+      return false;
+    }
+    frame.luminance.put(yuv, 0, width * height);
+    post(frame, width, height, timestampNanos, left, top, cropWidth, cropHeight, rotation);
+    return true;
+  }
+
+  /**
+   * Copies a frame given as a Y plane to be written, one row at a time. Returns immediately.
+   *
+   * @param plane The Y plane. Pixel (x, y) is at {@code y * rowStride + x * pixelStride} from the
+   *              start of the buffer. Its position and limit are moved.
+   * @param rowStride The number of bytes between the starts of two rows.
+   * @param pixelStride The number of bytes between two pixels in a row.
+   * @return {@code false} if the frame was dropped, or this recorder has been closed.
+   * @see #record(byte[], int, int, long, int, int, int, int, int)
+   */
+  public boolean record(ByteBuffer plane, int rowStride, int pixelStride, int width, int height,
+                        long timestampNanos, int left, int top, int cropWidth, int cropHeight,
+                        int rotation) {
+    PendingFrame frame = obtainFrame(width, height);
+    if (frame == null) {
+      return false;
+    }
+    int limit = plane.limit();
+    for (int y = 0; y < height; y++) {
+      int rowStart = y * rowStride;
+      if (pixelStride == 1) {
+        plane.limit(rowStart + width).position(rowStart);
+        frame.luminance.put(plane);
+      } else {
+        // Only the Y plane of a planar image is recorded, which is never interleaved in practice.
+        for (int x = 0; x < width; x++) {
+          frame.luminance.put(plane.get(rowStart + x * pixelStride));
+        }
+      }
+    }
+    plane.limit(limit);
+    post(frame, width, height, timestampNanos, left, top, cropWidth, cropHeight, rotation);
+    return true;
+  }
+
+  /**
+   * @return A free frame with a cleared buffer for the Y plane, or {@code null} if there is none
+   *         or this recorder has been closed.
+   */
+  private PendingFrame obtainFrame(int width, int height) {
+    if (closed) {
+      return null;
+    }
+    PendingFrame frame = freeFrames.poll();
+    if (frame == null) {
+      droppedFrames.incrementAndGet();
+      return null;
+    }
+    int size = width * height;
+    if (frame.luminance == null || frame.luminance.capacity() != size) {
+      frame.luminance = ByteBuffer.allocate(size);
+    }
+    frame.luminance.clear();
+    return frame;
+  }
+
+  private void post(PendingFrame frame, int width, int height, long timestampNanos,
+                    int left, int top, int cropWidth, int cropHeight, int rotation) {
+    frame.luminance.flip();
+    frame.header.clear();
+    frame.header.putInt(width).putInt(height).putLong(timestampNanos)
+        .putInt(left).putInt(top).putInt(cropWidth).putInt(cropHeight).putInt(rotation)
+        .flip();
+    pendingFrames.add(frame);
+  }
+
+  private void writeFrames() {
+    ByteBuffer[] buffers = new ByteBuffer[2];
+    while (true) {
+      PendingFrame frame;
+      try {
+        frame = pendingFrames.take();
+      } catch (InterruptedException e) {
+        continue;
+      }
+      if (frame == END_OF_FRAMES) {
+        return;
+      }
+      if (writeError == null) {
+        buffers[0] = frame.header;
+        buffers[1] = frame.luminance;
+        try {
+          while (frame.luminance.hasRemaining()) {
+            channel.write(buffers);
+          }
+          recordedFrames.incrementAndGet();
+        } catch (IOException e) {
+          // Frames after a partly written one would not be readable.
+          writeError = e;
+        }
+      }
+      freeFrames.add(frame);
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * @return The number of frames which have been written.
+   */
+  public int getRecordedFrameCount() {
+    return recordedFrames.get();
+  }
+
+  /**
+   * @return The number of frames which were dropped as the disk didn't keep up.
+   */
+  public int getDroppedFrameCount() {
+    return droppedFrames.get();
+  }
+
+  /**
+   * Writes the frames which are waiting, and closes the file.
+   *
+   * @throws IOException If a frame couldn't be written, or the file couldn't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    // Not interrupted, as an interrupt while writing would close the channel.
+    pendingFrames.add(END_OF_FRAMES);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    stream.close();
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  private static final class PendingFrame {
+    final ByteBuffer header = ByteBuffer.allocate(FrameRecording.FRAME_HEADER_SIZE);
+    ByteBuffer luminance;
+  }
+
+}
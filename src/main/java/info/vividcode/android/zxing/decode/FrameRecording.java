@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames which {@link FrameRecorder} has written, one after another, from a memory
+ * mapping of the file. The file is mapped in windows, so that recordings larger than the address
+ * space of a mapping can be read.
+ *
+ * The file starts with a magic number and a version, and each frame is a header followed by its
+ * Y plane. All numbers are big-endian.
+ *
+ * <pre>
+ * int width, int height, long timestampNanos,
+ * int left, int top, int cropWidth, int cropHeight, int rotation,
+ * byte[width * height] luminance
+ * </pre>
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FrameRecording implements Closeable {
+
+  static final int MAGIC = 0x5a584652; // "ZXFR"
+  static final int VERSION = 1;
+  static final int FILE_HEADER_SIZE = 8;
+  static final int FRAME_HEADER_SIZE = 36;
+
+  private static final long MAX_WINDOW_SIZE = 64L * 1024L * 1024L;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long fileSize;
+  private MappedByteBuffer window;
+  private long windowPosition;
+  // The position of the next frame in the file.
+  private long position;
+  private int frameIndex = -1;
+  private int width;
+  private int height;
+  private long timestampNanos;
+  private int left;
+  private int top;
+  private int cropWidth;
+  private int cropHeight;
+  private int rotation;
+
+  /**
+   * @throws IOException If the file can't be read, or is not a recording.
+   */
+  public FrameRecording(File recordingFile) throws IOException {
+    file = new RandomAccessFile(recordingFile, "r");
+    channel = file.getChannel();
+    try {
+      fileSize = channel.size();
+      if (fileSize < FILE_HEADER_SIZE) {
+        throw new IOException("Not a frame recording: " + recordingFile);
+      }
+      map(0L, FILE_HEADER_SIZE);
+      int magic = window.getInt();
+      int version = window.getInt();
+      if (magic != MAGIC) {
+        throw new IOException("Not a frame recording: " + recordingFile);
+      }
+      if (version != VERSION) {
+        throw new IOException("Unsupported version of frame recording: " + version);
+      }
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+    position = FILE_HEADER_SIZE;
+  }
+
+  /**
+   * Advances to the next frame. A frame which was cut short, as happens when the app is killed
+   * while recording, is treated as the end.
+   *
+   * @return {@code false} if there are no more frames.
+   * @throws IOException If the file can't be mapped.
+   */
+  public boolean next() throws IOException {
+    if (position + FRAME_HEADER_SIZE > fileSize) {
+      return false;
+    }
+    map(position, FRAME_HEADER_SIZE);
+    int frameWidth = window.getInt();
+    int frameHeight = window.getInt();
+    long frameSize = (long) frameWidth * frameHeight;
+    if (frameWidth <= 0 || frameHeight <= 0 ||
+        position + FRAME_HEADER_SIZE + frameSize > fileSize) {
+      return false;
+    }
+    width = frameWidth;
+    height = frameHeight;
+    timestampNanos = window.getLong();
+    left = window.getInt();
+    top = window.getInt();
+    cropWidth = window.getInt();
+    cropHeight = window.getInt();
+    rotation = window.getInt();
+    position += FRAME_HEADER_SIZE + frameSize;
+    frameIndex++;
+    return true;
+  }
+
+  /**
+   * Copies the Y plane of the current frame with a bulk get from the mapping.
+   *
+   * @param buffer A buffer to reuse, or {@code null}.
+   * @return {@code buffer} if it is large enough, or a new array, which holds the Y plane from the
+   *         start. It is an NV21 frame as far as the decoders are concerned.
+   * @throws IOException If the file can't be mapped.
+   */
+  public byte[] getLuminance(byte[] buffer) throws IOException {
+    int size = width * height;
+    if (buffer == null || buffer.length < size) {
+      buffer = new byte[size];
+    }
+    long frameStart = position - size;
+    int copied = 0;
+    while (copied < size) {
+      map(frameStart + copied, Math.min(size - copied, MAX_WINDOW_SIZE));
+      int length = Math.min(size - copied, window.remaining());
+      window.get(buffer, copied, length);
+      copied += length;
+    }
+    return buffer;
+  }
+
+  /**
+   * Gives the Y plane of the current frame as it is in the mapping, without copying it.
+   *
+   * @return A buffer of which the Y plane fills from the start to the limit, with a row stride of
+   *         the width. It stays valid after moving to another frame.
+   * @throws IOException If the file can't be mapped.
+   */
+  public ByteBuffer getLuminanceBuffer() throws IOException {
+    int size = width * height;
+    map(position - size, size);
+    ByteBuffer plane = window.slice();
+    plane.limit(size);
+    return plane;
+  }
+
+  /**
+   * Positions {@link #window} at {@code start}, with at least {@code length} bytes remaining,
+   * mapping a new window only if the current one doesn't cover them.
+   */
+  private void map(long start, long length) throws IOException {
+    if (window == null || start < windowPosition ||
+        start + length > windowPosition + window.capacity()) {
+      windowPosition = start;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+          Math.min(fileSize - start, Math.max(length, MAX_WINDOW_SIZE)));
+    }
+    window.position((int) (start - windowPosition));
+  }
+
+  /**
+   * @return The index of the current frame from 0.
+   */
+  public int getFrameIndex() {
+    return frameIndex;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return The time at which the frame was taken, as {@link System#nanoTime()} on the device.
+   */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /**
+   * @return The left of the framing rect in the frame.
+   */
+  public int getLeft() {
+    return left;
+  }
+
+  /**
+   * @return The top of the framing rect in the frame.
+   */
+  public int getTop() {
+    return top;
+  }
+
+  /**
+   * @return The width of the framing rect in the frame.
+   */
+  public int getCropWidth() {
+    return cropWidth;
+  }
+
+  /**
+   * @return The height of the framing rect in the frame.
+   */
+  public int getCropHeight() {
+    return cropHeight;
+  }
+
+  /**
+   * @return The rotation in degrees by which the frame was read.
+   */
+  public int getRotation() {
+    return rotation;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    file.close();
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Feeds the frames of a {@link FrameRecording} through a {@link DecodeEngine}, as a decode thread
+ * of {@code CaptureActivity} does, one frame after another on the calling thread, so that a
+ * scanning session can be profiled and tested on a plain JVM. Frames are decoded at the recorded
+ * framing rect and rotation. Nothing depends on timing, so a replay gives the same results every
+ * time.
+ *
+ * The region of interest which the activity tracks is not replayed; each frame is decoded in the
+ * whole framing rect.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FrameReplayer {
+
+  /**
+   * Receives the outcome of each frame of a replay.
+   */
+  public interface Listener {
+
+    /**
+     * @param recording The recording, positioned at the frame.
+     * @param result The result, or {@code null} if the frame was skipped or nothing was found.
+     */
+    void onFrame(FrameRecording recording, Result result);
+
+  }
+
+  private final DecodeSession session;
+  private final DecodeEngine engine;
+  private final PreviewFrame frame = new PreviewFrame();
+
+  /**
+   * @param hints Hints as given to the readers of the activity.
+   * @param pyramidDecodeMode Whether frames are decoded downsampled first, as in the pyramid
+   *                          decode mode of the activity.
+   */
+  public FrameReplayer(Map<DecodeHintType,?> hints, boolean pyramidDecodeMode) {
+    session = new DecodeSession(pyramidDecodeMode, FrameChangeDetector.DEFAULT_UNCHANGED_THRESHOLD,
+        FrameChangeDetector.DEFAULT_MOTION_THRESHOLD, new DecodeLatencies(), null);
+    engine = new DecodeEngine(session, hints, null);
+  }
+
+  /**
+   * Replays the remaining frames of {@code recording}.
+   *
+   * @param listener A listener of each frame, or {@code null}.
+   * @return The number of frames in which a barcode was found.
+   * @throws IOException If the recording can't be read.
+   */
+  public int replay(FrameRecording recording, Listener listener) throws IOException {
+    int found = 0;
+    while (recording.next()) {
+      // Read from the mapping as the frames of an ImageReader are, so only the framing rect is
+      // copied.
+      int width = recording.getWidth();
+      frame.set(recording.getLuminanceBuffer(), width, 1, width, recording.getHeight())
+          .setFramingRect(recording.getLeft(), recording.getTop(), recording.getCropWidth(),
+              recording.getCropHeight())
+          .setRotation(recording.getRotation());
+      Result result = null;
+      if (engine.decode(frame) == DecodeEngine.Outcome.FOUND) {
+        result = engine.getResult();
+        found++;
+      }
+      if (listener != null) {
+        listener.onFrame(recording, result);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return The latencies of the stages of the frames replayed so far.
+   */
+  public DecodeLatencies getDecodeLatencies() {
+    return session.getDecodeLatencies();
+  }
+
+  /**
+   * @return The gate which replayed frames have passed, with its counts of skipped frames.
+   */
+  public FrameQualityGate getFrameQualityGate() {
+    return session.getFrameQualityGate();
+  }
+
+}
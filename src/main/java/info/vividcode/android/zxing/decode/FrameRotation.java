@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+/**
+ * Conversion of coordinates between a rectangle of a camera frame and the same rectangle rotated
+ * clockwise by 0, 90, 180 or 270 degrees so that it is upright on the display.
+ *
+ * Coordinates are relative to the rectangle. {@code width} and {@code height} are the size of the
+ * rectangle in the frame, before rotation.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class FrameRotation {
+
+  private FrameRotation() {
+  }
+
+  /**
+   * @throws IllegalArgumentException if {@code rotation} is not one of 0, 90, 180 and 270.
+   */
+  public static void checkRotation(int rotation) {
+    if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+      throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+    }
+  }
+
+  /**
+   * @return {@code true} if the rotation swaps width and height.
+   */
+  public static boolean isTransposed(int rotation) {
+    return rotation == 90 || rotation == 270;
+  }
+
+  /**
+   * @return The x coordinate in the frame of a point in the rotated rectangle.
+   */
+  public static float toFrameX(float x, float y, int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return y;
+      case 180:
+        return width - x;
+      case 270:
+        return width - y;
+      default:
+        return x;
+    }
+  }
+
+  /**
+   * @return The y coordinate in the frame of a point in the rotated rectangle.
+   */
+  public static float toFrameY(float x, float y, int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return height - x;
+      case 180:
+        return height - y;
+      case 270:
+        return x;
+      default:
+        return y;
+    }
+  }
+
+  /**
+   * @return The x coordinate in the rotated rectangle of a point in the frame.
+   */
+  public static float fromFrameX(float x, float y, int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return height - y;
+      case 180:
+        return width - x;
+      case 270:
+        return y;
+      default:
+        return x;
+    }
+  }
+
+  /**
+   * @return The y coordinate in the rotated rectangle of a point in the frame.
+   */
+  public static float fromFrameY(float x, float y, int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return x;
+      case 180:
+        return height - y;
+      case 270:
+        return width - x;
+      default:
+        return y;
+    }
+  }
+
+}
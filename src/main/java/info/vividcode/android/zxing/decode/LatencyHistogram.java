@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with fixed, log-linear buckets: each power of two from
+ * {@value #MIN_TRACKED_NANOS} ns to about 17 seconds is split into {@value #SUB_BUCKETS} buckets,
+ * so percentiles are within about 12% of the true value. Shorter durations share the first
+ * bucket, and longer ones the last.
+ *
+ * Recording is lock-free and allocation-free, so any number of threads may record and read at
+ * once. A reader may see a recording half done; percentiles are estimates anyway.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class LatencyHistogram {
+
+  private static final int MIN_TRACKED_NANOS = 1 << 10;
+  private static final int MIN_EXPONENT = 10;
+  private static final int MAX_EXPONENT = 34;
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Below the minimum, then each sub-bucket of each power of two, then above the maximum.
+  private static final int BUCKET_COUNT = 1 + (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records a duration. Negative durations are counted as zero.
+   */
+  public void record(long nanos) {
+    if (nanos < 0L) {
+      nanos = 0L;
+    }
+    counts.incrementAndGet(bucketOf(nanos));
+    totalNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxNanos.get())) {
+      if (maxNanos.compareAndSet(max, nanos)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * @return The number of recorded durations.
+   */
+  public long getCount() {
+    long count = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @return The longest recorded duration in nanoseconds, or zero if none is recorded.
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return The mean of recorded durations in nanoseconds, or zero if none is recorded.
+   */
+  public long getMeanNanos() {
+    long count = getCount();
+    return count == 0L ? 0L : totalNanos.get() / count;
+  }
+
+  /**
+   * Estimates a percentile, such as 50 for the median or 99. The estimate is the upper bound of
+   * the bucket of the percentile, but no more than the longest recorded duration.
+   *
+   * @param percentile The percentile, more than 0 and up to 100.
+   * @return The estimate in nanoseconds, or zero if none is recorded.
+   */
+  public long getPercentileNanos(double percentile) {
+    if (!(percentile > 0.0 && percentile <= 100.0)) {
+      throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+    }
+    long[] snapshot = new long[BUCKET_COUNT];
+    long count = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0L) {
+      return 0L;
+    }
+    long rank = (long) Math.ceil(percentile / 100.0 * count);
+    long seen = 0L;
+    int bucket = BUCKET_COUNT - 1;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        bucket = i;
+        break;
+      }
+    }
+    return Math.min(upperBoundOf(bucket), maxNanos.get());
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() +
+        " p50=" + getPercentileNanos(50.0) / 1000L + "us" +
+        " p95=" + getPercentileNanos(95.0) / 1000L + "us" +
+        " p99=" + getPercentileNanos(99.0) / 1000L + "us" +
+        " max=" + getMaxNanos() / 1000L + "us";
+  }
+
+  static int bucketOf(long nanos) {
+    if (nanos < MIN_TRACKED_NANOS) {
+      return 0;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent >= MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (nanos >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(int bucket) {
+    if (bucket == 0) {
+      return MIN_TRACKED_NANOS;
+    }
+    if (bucket == BUCKET_COUNT - 1) {
+      return Long.MAX_VALUE;
+    }
+    int exponent = MIN_EXPONENT + (bucket - 1) / SUB_BUCKETS;
+    int subBucket = (bucket - 1) % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+  }
+
+}
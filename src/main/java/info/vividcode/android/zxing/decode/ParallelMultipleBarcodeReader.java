@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Finds the other barcodes in an image in which one has been found, in the way of ZXing's
+ * {@code GenericMultipleBarcodeReader}: the regions left of, above, right of and below a barcode
+ * are searched for another one, recursively. Unlike it, the searches of the sub-regions run
+ * concurrently on an executor, which is shared and bounds the number of threads.
+ *
+ * The image must support cropping, and must not change until {@link #decodeAround} returns. Points
+ * of the results are relative to the whole image.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class ParallelMultipleBarcodeReader {
+
+  private static final int MIN_DIMENSION_TO_RECUR = 100;
+  private static final int MAX_DEPTH = 4;
+
+  private final ExecutorService executor;
+  private final ThreadLocal<MultiFormatReader> readers;
+
+  /**
+   * @param executor The executor which the searches of sub-regions run on.
+   * @param hints Hints for decoding sub-regions. A result point callback is not passed on, as the
+   *              points of a sub-region are relative to it.
+   */
+  public ParallelMultipleBarcodeReader(ExecutorService executor, Map<DecodeHintType,?> hints) {
+    this.executor = executor;
+    final Map<DecodeHintType,Object> subRegionHints =
+        new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+    if (hints != null) {
+      subRegionHints.putAll(hints);
+    }
+    subRegionHints.remove(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+    readers = new ThreadLocal<MultiFormatReader>() {
+      @Override
+      protected MultiFormatReader initialValue() {
+        MultiFormatReader reader = new MultiFormatReader();
+        reader.setHints(subRegionHints);
+        return reader;
+      }
+    };
+  }
+
+  /**
+   * Searches around a barcode for more, and waits for all the searches to finish.
+   *
+   * @param image The image in which {@code first} has been found.
+   * @param first The barcode found in the whole image.
+   * @return The barcodes found, of which {@code first} is the first. Barcodes of the same text are
+   *         reported once.
+   */
+  public Result[] decodeAround(BinaryBitmap image, Result first) {
+    Search search = new Search();
+    search.add(first, 0, 0);
+    search.recur(image, first, 0, 0, 0);
+    try {
+      Future<?> future;
+      // Each search queues its sub-searches before it completes, so the queue is empty only when
+      // all are done.
+      while ((future = search.pending.poll()) != null) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    synchronized (search) {
+      return search.results.toArray(new Result[search.results.size()]);
+    }
+  }
+
+  private final class Search {
+
+    private final List<Result> results = new ArrayList<Result>();
+    private final BlockingQueue<Future<?>> pending = new LinkedBlockingQueue<Future<?>>();
+
+    synchronized void add(Result result, int xOffset, int yOffset) {
+      for (Result existing : results) {
+        if (existing.getText().equals(result.getText())) {
+          return;
+        }
+      }
+      results.add(translateResultPoints(result, xOffset, yOffset));
+    }
+
+    void recur(BinaryBitmap image, Result result, int xOffset, int yOffset, int depth) {
+      if (depth >= MAX_DEPTH) {
+        return;
+      }
+      ResultPoint[] resultPoints = result.getResultPoints();
+      if (resultPoints == null || resultPoints.length == 0) {
+        return;
+      }
+      int width = image.getWidth();
+      int height = image.getHeight();
+      float minX = width;
+      float minY = height;
+      float maxX = 0.0f;
+      float maxY = 0.0f;
+      for (ResultPoint point : resultPoints) {
+        if (point == null) {
+          continue;
+        }
+        float x = point.getX();
+        float y = point.getY();
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+      }
+
+      // Decode left of barcode
+      if (minX > MIN_DIMENSION_TO_RECUR) {
+        submit(image.crop(0, 0, (int) minX, height), xOffset, yOffset, depth + 1);
+      }
+      // Decode above barcode
+      if (minY > MIN_DIMENSION_TO_RECUR) {
+        submit(image.crop(0, 0, width, (int) minY), xOffset, yOffset, depth + 1);
+      }
+      // Decode right of barcode
+      if (maxX < width - MIN_DIMENSION_TO_RECUR) {
+        submit(image.crop((int) maxX, 0, width - (int) maxX, height),
+            xOffset + (int) maxX, yOffset, depth + 1);
+      }
+      // Decode below barcode
+      if (maxY < height - MIN_DIMENSION_TO_RECUR) {
+        submit(image.crop(0, (int) maxY, width, height - (int) maxY),
+            xOffset, yOffset + (int) maxY, depth + 1);
+      }
+    }
+
+    private void submit(final BinaryBitmap image, final int xOffset, final int yOffset,
+                        final int depth) {
+      FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+        @Override
+        public Void call() {
+          MultiFormatReader reader = readers.get();
+          Result result;
+          try {
+            result = reader.decodeWithState(image);
+          } catch (ReaderException re) {
+            return null;
+          } finally {
+            reader.reset();
+          }
+          add(result, xOffset, yOffset);
+          recur(image, result, xOffset, yOffset, depth);
+          return null;
+        }
+      });
+      pending.add(task);
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // The executor has been shut down while quitting; finish the search on this thread.
+        task.run();
+      }
+    }
+
+  }
+
+  private static Result translateResultPoints(Result result, int xOffset, int yOffset) {
+    ResultPoint[] oldResultPoints = result.getResultPoints();
+    if (oldResultPoints == null || (xOffset == 0 && yOffset == 0)) {
+      return result;
+    }
+    ResultPoint[] newResultPoints = new ResultPoint[oldResultPoints.length];
+    for (int i = 0; i < oldResultPoints.length; i++) {
+      ResultPoint oldPoint = oldResultPoints[i];
+      if (oldPoint != null) {
+        newResultPoints[i] = new ResultPoint(oldPoint.getX() + xOffset, oldPoint.getY() + yOffset);
+      }
+    }
+    Result newResult = new Result(result.getText(), result.getRawBytes(), newResultPoints,
+        result.getBarcodeFormat(), result.getTimestamp());
+    newResult.putAllMetadata(result.getResultMetadata());
+    return newResult;
+  }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A preview frame to be decoded by {@link DecodeEngine}, with where to look in it: the framing
+ * rect, the rotation by which it is read, and optionally a region of interest within the framing
+ * rect. All coordinates are in frame pixels. The frame is either an NV21 array or a Y plane in a
+ * {@link ByteBuffer} with its strides.
+ *
+ * An instance is meant to be reused from one frame to the next by the thread which fills it.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class PreviewFrame {
+
+  private byte[] data;
+  private ByteBuffer plane;
+  private int rowStride;
+  private int pixelStride;
+  private int width;
+  private int height;
+  private int left;
+  private int top;
+  private int cropWidth;
+  private int cropHeight;
+  private int rotation;
+  private boolean hasRegion;
+  private int regionLeft;
+  private int regionTop;
+  private int regionWidth;
+  private int regionHeight;
+
+  /**
+   * Points this object at a new frame, with the same framing rect and rotation, and no region.
+   *
+   * @param data The YUV (NV21) frame. Only the Y plane is read.
+   * @param width The width of the frame.
+   * @param height The height of the frame.
+   * @return This object.
+   */
+  public PreviewFrame set(byte[] data, int width, int height) {
+    this.data = data;
+    plane = null;
+    rowStride = width;
+    pixelStride = 1;
+    this.width = width;
+    this.height = height;
+    hasRegion = false;
+    return this;
+  }
+
+  /**
+   * Points this object at a new frame given as a Y plane, with the same framing rect and rotation,
+   * and no region. Only the framing rect is read from the plane.
+   *
+   * @param plane The Y plane. Pixel (x, y) is at {@code y * rowStride + x * pixelStride} from the
+   *              start of the buffer. Its position and limit are moved while the frame is decoded.
+   * @param rowStride The number of bytes between the starts of two rows.
+   * @param pixelStride The number of bytes between two pixels in a row.
+   * @param width The width of the frame.
+   * @param height The height of the frame.
+   * @return This object.
+   */
+  public PreviewFrame set(ByteBuffer plane, int rowStride, int pixelStride, int width,
+                          int height) {
+    data = null;
+    this.plane = plane;
+    this.rowStride = rowStride;
+    this.pixelStride = pixelStride;
+    this.width = width;
+    this.height = height;
+    hasRegion = false;
+    return this;
+  }
+
+  /**
+   * Sets the crop which is decoded unless a region is set.
+   *
+   * @return This object.
+   */
+  public PreviewFrame setFramingRect(int left, int top, int cropWidth, int cropHeight) {
+    this.left = left;
+    this.top = top;
+    this.cropWidth = cropWidth;
+    this.cropHeight = cropHeight;
+    return this;
+  }
+
+  /**
+   * @param rotation The clockwise rotation in degrees by which the frame is read, so that barcodes
+   *                 are upright as on the display.
+   * @return This object.
+   */
+  public PreviewFrame setRotation(int rotation) {
+    FrameRotation.checkRotation(rotation);
+    this.rotation = rotation;
+    return this;
+  }
+
+  /**
+   * Sets a region within the framing rect where a barcode seems to be. Only the region is decoded.
+   *
+   * @return This object.
+   */
+  public PreviewFrame setRegion(int left, int top, int width, int height) {
+    hasRegion = true;
+    regionLeft = left;
+    regionTop = top;
+    regionWidth = width;
+    regionHeight = height;
+    return this;
+  }
+
+  /**
+   * @return The NV21 frame, or {@code null} if the frame is given as a Y plane.
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * @return The Y plane, or {@code null} if the frame is given as an NV21 array.
+   */
+  public ByteBuffer getPlane() {
+    return plane;
+  }
+
+  public int getRowStride() {
+    return rowStride;
+  }
+
+  public int getPixelStride() {
+    return pixelStride;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getLeft() {
+    return left;
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  public int getCropWidth() {
+    return cropWidth;
+  }
+
+  public int getCropHeight() {
+    return cropHeight;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  public boolean hasRegion() {
+    return hasRegion;
+  }
+
+  public int getRegionLeft() {
+    return regionLeft;
+  }
+
+  public int getRegionTop() {
+    return regionTop;
+  }
+
+  public int getRegionWidth() {
+    return regionWidth;
+  }
+
+  public int getRegionHeight() {
+    return regionHeight;
+  }
+
+}
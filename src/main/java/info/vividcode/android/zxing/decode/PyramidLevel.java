@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+
+import java.util.Map;
+
+/**
+ * The pyramid level at which a barcode was decoded in pyramid decode mode. Level 0 is the full
+ * resolution, and level {@code n} is downsampled by {@code 2^n}. It is attached to a
+ * {@link Result} as {@link ResultMetadataType#OTHER}, as ZXing has no metadata type for it.
+ *
+ * @author NOBUOKA Yu
+ */
+public final class PyramidLevel {
+
+  private static final PyramidLevel[] LEVELS =
+      new PyramidLevel[DownsampledYUVLuminanceSource.MAX_LEVEL + 1];
+  static {
+    for (int i = 0; i < LEVELS.length; i++) {
+      LEVELS[i] = new PyramidLevel(i);
+    }
+  }
+
+  private final int level;
+
+  private PyramidLevel(int level) {
+    this.level = level;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  @Override
+  public String toString() {
+    return "PyramidLevel(" + level + ")";
+  }
+
+  /**
+   * @return The level attached to {@code result}, or {@code null} if it was not decoded in pyramid
+   *         decode mode.
+   */
+  public static PyramidLevel of(Result result) {
+    Map<ResultMetadataType,Object> metadata = result.getResultMetadata();
+    if (metadata == null) {
+      return null;
+    }
+    Object value = metadata.get(ResultMetadataType.OTHER);
+    return value instanceof PyramidLevel ? (PyramidLevel) value : null;
+  }
+
+  /**
+   * Attaches a level to a result decoded at that level. Points of a downsampled result are scaled
+   * up to the full resolution, so a new result is returned in that case.
+   *
+   * @return A result of the full resolution with the level attached.
+   */
+  public static Result attach(Result result, int level) {
+    if (level != 0) {
+      ResultPoint[] points = result.getResultPoints();
+      ResultPoint[] scaledPoints = null;
+      if (points != null) {
+        int scale = 1 << level;
+        scaledPoints = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+          ResultPoint point = points[i];
+          if (point != null) {
+            scaledPoints[i] = new ResultPoint(point.getX() * scale, point.getY() * scale);
+          }
+        }
+      }
+      Result scaled = new Result(result.getText(), result.getRawBytes(), scaledPoints,
+          result.getBarcodeFormat(), result.getTimestamp());
+      scaled.putAllMetadata(result.getResultMetadata());
+      result = scaled;
+    }
+    result.putMetadata(ResultMetadataType.OTHER, LEVELS[level]);
+    return result;
+  }
+
+}
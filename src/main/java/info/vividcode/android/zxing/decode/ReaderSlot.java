@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Reader;
+
+/**
+ * A reader together with the formats it decodes and its place in the learned order.
+ *
+ * @author NOBUOKA Yu
+ */
+final class ReaderSlot {
+
+  // A reader whose share of recent hits is below this is tried only every Nth frame.
+  private static final float RARE_HIT_SHARE = 0.05f;
+
+  final Reader reader;
+  final BarcodeFormat[] formats;
+  // The position in the order which ZXing's own readers use.
+  private final int defaultRank;
+  private float score;
+  boolean demoted;
+
+  ReaderSlot(Reader reader, BarcodeFormat[] formats, int defaultRank) {
+    this.reader = reader;
+    this.formats = formats;
+    this.defaultRank = defaultRank;
+  }
+
+  /**
+   * Sorts slots by their recent hits, most frequent first, and demotes rarely hit ones. Slots
+   * without any hits keep the default order, so nothing changes until something has been decoded.
+   * Sorted in place without allocation, as this runs on the decode path.
+   *
+   * @param scores Hit scores indexed by {@link BarcodeFormat#ordinal()}.
+   */
+  static void arrange(ReaderSlot[] slots, float[] scores) {
+    float total = 0.0f;
+    for (ReaderSlot slot : slots) {
+      float score = 0.0f;
+      for (BarcodeFormat format : slot.formats) {
+        score += scores[format.ordinal()];
+      }
+      slot.score = score;
+      total += score;
+    }
+    for (int i = 1; i < slots.length; i++) {
+      ReaderSlot slot = slots[i];
+      int j = i - 1;
+      while (j >= 0 && slot.precedes(slots[j])) {
+        slots[j + 1] = slots[j];
+        j--;
+      }
+      slots[j + 1] = slot;
+    }
+    for (ReaderSlot slot : slots) {
+      slot.demoted = total > 0.0f && slot.score < RARE_HIT_SHARE * total;
+    }
+  }
+
+  private boolean precedes(ReaderSlot other) {
+    return score > other.score || (score == other.score && defaultRank < other.defaultRank);
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * This file is derived from ZXing project ( https://github.com/zxing/zxing )
+ * and is modified for android-lib-ZXingCaptureActivity project.
+ *
+ * Copyright (C) 2009 ZXing authors
+ * Copyright (C) 2014 NOBUOKA Yu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package info.vividcode.android.zxing.decode;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A {@link com.google.zxing.PlanarYUVLuminanceSource} which can be re-pointed at another frame,
+ * so that one instance serves every frame of the same crop size. The row and matrix arrays are
+ * allocated once and reused, so a steady-state decode loop makes no garbage for luminance data.
+ *
+ * The crop may be rotated by 90, 180 or 270 degrees clockwise, e.g. when the display is in
+ * portrait orientation while the camera sensor is in landscape. Rows and the matrix are then read
+ * directly from the frame in rotated order, without rotating the frame.
+ *
+ * The data may itself be a crop of the frame, such as the framing rect copied out of a Y plane;
+ * {@link #getLeft()}, {@link #getTop()} and the points mapped into the frame then take its place in
+ * the frame into account.
+ *
+ * Arrays returned by {@link #getRow(int, byte[])} (when no array is given) and
+ * {@link #getMatrix()} are owned by this object and overwritten after {@link #reset}.
+ *
+ * @author dswitkin@google.com (Daniel Switkin)
+ * @author NOBUOKA Yu
+ */
+public final class ReusableYUVLuminanceSource extends LuminanceSource {
+
+  private static final int THUMBNAIL_SCALE_FACTOR = 2;
+
+  private final int cropWidth;
+  private final int cropHeight;
+  private final int rotation;
+  private byte[] yuvData;
+  private int dataWidth;
+  private int dataHeight;
+  // The crop in the data.
+  private int left;
+  private int top;
+  // The place of the data in the frame.
+  private int dataLeft;
+  private int dataTop;
+  private byte[] row;
+  private byte[] matrix;
+  private boolean matrixValid;
+
+  /**
+   * Creates a source of the given crop size, which is not rotated.
+   *
+   * @param width The width of the crop.
+   * @param height The height of the crop.
+   * @see #ReusableYUVLuminanceSource(int, int, int)
+   */
+  public ReusableYUVLuminanceSource(int width, int height) {
+    this(width, height, 0);
+  }
+
+  /**
+   * Creates a source of the given crop size. It must be pointed at a frame with
+   * {@link #reset(byte[], int, int, int, int)} before it is used.
+   *
+   * @param cropWidth The width of the crop in the frame.
+   * @param cropHeight The height of the crop in the frame.
+   * @param rotation Clockwise rotation of the crop in degrees; 0, 90, 180 or 270. The width and
+   *                 height of this source are swapped for 90 and 270.
+   */
+  public ReusableYUVLuminanceSource(int cropWidth, int cropHeight, int rotation) {
+    super(FrameRotation.isTransposed(rotation) ? cropHeight : cropWidth,
+          FrameRotation.isTransposed(rotation) ? cropWidth : cropHeight);
+    FrameRotation.checkRotation(rotation);
+    this.cropWidth = cropWidth;
+    this.cropHeight = cropHeight;
+    this.rotation = rotation;
+  }
+
+  /**
+   * Re-points this source at a frame. The crop size is fixed; use
+   * {@link #isReusableFor(int, int, int)} to check it.
+   *
+   * @param yuvData The YUV (NV21) frame. Only the Y plane is read.
+   * @param dataWidth The width of the frame.
+   * @param dataHeight The height of the frame.
+   * @param left The left of the crop in the frame.
+   * @param top The top of the crop in the frame.
+   * @return This object.
+   */
+  public ReusableYUVLuminanceSource reset(byte[] yuvData, int dataWidth, int dataHeight,
+                                          int left, int top) {
+    return reset(yuvData, dataWidth, dataHeight, left, top, 0, 0);
+  }
+
+  /**
+   * Re-points this source at data which is a crop of a frame.
+   *
+   * @param yuvData The data. Only the first {@code dataWidth * dataHeight} bytes are read.
+   * @param dataWidth The width of the data.
+   * @param dataHeight The height of the data.
+   * @param left The left of the crop in the data.
+   * @param top The top of the crop in the data.
+   * @param dataLeft The left of the data in the frame.
+   * @param dataTop The top of the data in the frame.
+   * @return This object.
+   */
+  public ReusableYUVLuminanceSource reset(byte[] yuvData, int dataWidth, int dataHeight,
+                                          int left, int top, int dataLeft, int dataTop) {
+    if (left < 0 || top < 0 ||
+        left + cropWidth > dataWidth || top + cropHeight > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    this.yuvData = yuvData;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.left = left;
+    this.top = top;
+    this.dataLeft = dataLeft;
+    this.dataTop = dataTop;
+    matrixValid = false;
+    return this;
+  }
+
+  /**
+   * @return {@code true} if this source can be re-pointed at a crop of the given size in the frame
+   *         and rotation.
+   */
+  public boolean isReusableFor(int cropWidth, int cropHeight, int rotation) {
+    return this.cropWidth == cropWidth && this.cropHeight == cropHeight &&
+        this.rotation == rotation;
+  }
+
+  /**
+   * @return The left of the crop in the frame.
+   */
+  public int getLeft() {
+    return dataLeft + left;
+  }
+
+  /**
+   * @return The top of the crop in the frame.
+   */
+  public int getTop() {
+    return dataTop + top;
+  }
+
+  /**
+   * @return The width of the crop in the frame.
+   */
+  public int getCropWidth() {
+    return cropWidth;
+  }
+
+  /**
+   * @return The height of the crop in the frame.
+   */
+  public int getCropHeight() {
+    return cropHeight;
+  }
+
+  /**
+   * @return The clockwise rotation of the crop in degrees.
+   */
+  public int getRotation() {
+    return rotation;
+  }
+
+  /**
+   * @return The x coordinate in the frame of a point in this source.
+   */
+  public float toFrameX(float x, float y) {
+    return getLeft() + FrameRotation.toFrameX(x, y, cropWidth, cropHeight, rotation);
+  }
+
+  /**
+   * @return The y coordinate in the frame of a point in this source.
+   */
+  public float toFrameY(float x, float y) {
+    return getTop() + FrameRotation.toFrameY(x, y, cropWidth, cropHeight, rotation);
+  }
+
+  // Index in the frame of pixel (0, y) of this source.
+  private int rowStart(int y) {
+    switch (rotation) {
+      case 90:
+        return (top + cropHeight - 1) * dataWidth + left + y;
+      case 180:
+        return (top + cropHeight - 1 - y) * dataWidth + left + cropWidth - 1;
+      case 270:
+        return top * dataWidth + left + cropWidth - 1 - y;
+      default:
+        return (top + y) * dataWidth + left;
+    }
+  }
+
+  // Difference of indices in the frame between neighbouring pixels of a row of this source.
+  private int pixelStep() {
+    switch (rotation) {
+      case 90:
+        return -dataWidth;
+      case 180:
+        return -1;
+      case 270:
+        return dataWidth;
+      default:
+        return 1;
+    }
+  }
+
+  private void copyRow(int y, byte[] row, int offset) {
+    int width = getWidth();
+    int index = rowStart(y);
+    int step = pixelStep();
+    if (step == 1) {
+      System.arraycopy(yuvData, index, row, offset, width);
+    } else {
+      byte[] yuv = yuvData;
+      for (int x = 0; x < width; x++, index += step) {
+        row[offset + x] = yuv[index];
+      }
+    }
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      if (this.row == null) {
+        this.row = new byte[width];
+      }
+      row = this.row;
+    }
+    copyRow(y, row, 0);
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    int width = getWidth();
+    int height = getHeight();
+
+    // If the caller asks for the entire underlying image, save the copy and give them the
+    // original data. The docs specifically warn that result.length must be ignored.
+    if (rotation == 0 && width == dataWidth && height == dataHeight) {
+      return yuvData;
+    }
+
+    if (matrix == null) {
+      matrix = new byte[width * height];
+    }
+    if (!matrixValid) {
+      // If the width matches the full width of the underlying data, perform a single copy.
+      if (rotation == 0 && width == dataWidth) {
+        System.arraycopy(yuvData, top * dataWidth + left, matrix, 0, width * height);
+      } else {
+        // Otherwise copy one cropped row at a time.
+        for (int y = 0; y < height; y++) {
+          copyRow(y, matrix, y * width);
+        }
+      }
+      matrixValid = true;
+    }
+    return matrix;
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    float x1 = FrameRotation.toFrameX(left, top, cropWidth, cropHeight, rotation);
+    float y1 = FrameRotation.toFrameY(left, top, cropWidth, cropHeight, rotation);
+    float x2 = FrameRotation.toFrameX(left + width, top + height, cropWidth, cropHeight, rotation);
+    float y2 = FrameRotation.toFrameY(left + width, top + height, cropWidth, cropHeight, rotation);
+    int frameLeft = (int) Math.min(x1, x2);
+    int frameTop = (int) Math.min(y1, y2);
+    return new ReusableYUVLuminanceSource(
+        (int) Math.abs(x2 - x1), (int) Math.abs(y2 - y1), rotation).reset(yuvData, dataWidth, dataHeight, this.left + frameLeft, this.top + frameTop,
+        dataLeft, dataTop);
+  }
+
+  /**
+   * Renders a greyscale thumbnail of half the size of this source, as {@code RGB_565} pixels.
+   *
+   * @param pixels The array to render into. It must have at least
+   *               {@code getThumbnailWidth() * getThumbnailHeight()} elements.
+   */
+  public void renderThumbnail(short[] pixels) {
+    int width = getThumbnailWidth();
+    int height = getThumbnailHeight();
+    byte[] yuv = yuvData;
+    int step = pixelStep() * THUMBNAIL_SCALE_FACTOR;
+
+    for (int y = 0; y < height; y++) {
+      int outputOffset = y * width;
+      int index = rowStart(y * THUMBNAIL_SCALE_FACTOR);
+      for (int x = 0; x < width; x++, index += step) {
+        int grey = yuv[index] & 0xff;
+        pixels[outputOffset + x] = (short) (((grey >> 3) << 11) | ((grey >> 2) << 5) | (grey >> 3));
+      }
+    }
+  }
+  /**
+   * @return width of image from {@link #renderThumbnail(short[])}
+   */
+  public int getThumbnailWidth() {
+    return getWidth() / THUMBNAIL_SCALE_FACTOR;
+  }
+
+  /**
+   * @return height of image from {@link #renderThumbnail(short[])}
+   */
+  public int getThumbnailHeight() {
+    return getHeight() / THUMBNAIL_SCALE_FACTOR;
+  }
+
+}